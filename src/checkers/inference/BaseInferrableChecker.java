@@ -97,4 +97,9 @@ public abstract class BaseInferrableChecker extends InferenceChecker implements
     public boolean isInsertMainModOfLocalVar() {
         return false;
     }
+
+    @Override
+    public void configureNormalization(ConstraintNormalizer normalizer, InferenceSolver solver) {
+        // The default passes suffice
+    }
 }
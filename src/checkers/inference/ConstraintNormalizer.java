@@ -3,68 +3,256 @@ package checkers.inference;
 import org.checkerframework.javacutil.ErrorReporter;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.logging.Logger;
 
+import checkers.inference.model.AnnotationLocation;
 import checkers.inference.model.BinaryConstraint;
 import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.ConstraintSink;
 import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.InMemoryConstraintSink;
 import checkers.inference.model.Slot;
 import checkers.inference.model.VariableSlot;
 
 /**
- * This class currently just removes ExistentialVariables from the set of constraints
- * and replaces them with ExistentialConstraints.  In the future, we may want to make
- * this an interface or make it customizable
+ * Normalizes the generated constraints before they are handed to a solver, by streaming them
+ * through an ordered list of NormalizationPasses.  By default there are two passes:  null slots
+ * are removed (or reported) and ExistentialVariables are replaced by ExistentialConstraints.
+ * InferrableCheckers may add passes of their own, see InferrableChecker.configureNormalization.
+ *
+ * ExistentialVariables have two encodings.  The linear encoding (the default) gives every
+ * ExistentialVariableSlot an effective variable that is defined once, so the output grows with
+ * the length of the existential chains.  The tree encoding enumerates every combination of the
+ * existential chains on both sides of a constraint; it is kept as a fallback.
+ *
+ * Constraints are not copied between passes; only the constraints left after the last pass are
+ * collected, into a ConstraintSink that may spill them to disk.  The time spent in each pass and
+ * the number of constraints it removed and added are logged.
  */
 public class ConstraintNormalizer {
 
+    private static final HackSite ACCEPT_HACK = HackSite.register("ConstraintNormalizer.accept");
+
     public final Logger logger = Logger.getLogger(ConstraintNormalizer.class.getName());
 
-    protected interface Normalizer {
-        boolean accept(Constraint constraint);
-    }
+    private final List<NormalizationPass> passes = new ArrayList<>();
 
     public ConstraintNormalizer() {
+        this(true);
+    }
 
+    /**
+     * @param linearExistentials use the linear encoding of ExistentialVariables rather than
+     *                           the tree encoding
+     */
+    public ConstraintNormalizer(boolean linearExistentials) {
+        passes.add(new NullSlotNormalizer());
+        if (linearExistentials) {
+            passes.add(new LinearExistentialNormalizer());
+        } else {
+            passes.add(new ExistentialVariableNormalizer());
+        }
     }
 
-    public Set<Constraint> normalize(Set<Constraint> constraints) {
-        Set<Constraint> filteredConstraints = new LinkedHashSet<>(constraints);
-        logger.info("-- Normalization : NULL SLOT --");
-        filteredConstraints = filter(filteredConstraints, new NullSlotNormalizer());
+    /**
+     * Append pass to the passes, it will see the constraints left by every existing pass.
+     */
+    public void addPass(NormalizationPass pass) {
+        passes.add(pass);
+    }
+
+    /**
+     * Insert pass at index in the passes.
+     */
+    public void addPass(int index, NormalizationPass pass) {
+        passes.add(index, pass);
+    }
 
-        logger.info("-- Normalization : EXISTENTIAl CONSTRAINT --");
-        ExistentialVariableNormalizer existentialNormalizer = new ExistentialVariableNormalizer();
-        filteredConstraints = filter(filteredConstraints, existentialNormalizer);
-        filteredConstraints.addAll(existentialNormalizer.getConstraints());
+    public List<NormalizationPass> getPasses() {
+        return Collections.unmodifiableList(passes);
+    }
 
-        return filteredConstraints;
+    public ConstraintSink normalize(Iterable<Constraint> constraints) {
+        return normalize(constraints, new InMemoryConstraintSink());
     }
 
-    private static Set<Constraint> filter(Set<Constraint> constraints, Normalizer normalizer) {
-        final Set<Constraint> normalizedConstraints = new HashSet<>(constraints.size());
+    /**
+     * Normalize constraints into normalizedConstraints, which drops duplicates.  Neither the
+     * input nor the output need to be in memory, see ConstraintSink.
+     *
+     * @return normalizedConstraints
+     */
+    public ConstraintSink normalize(Iterable<Constraint> constraints, ConstraintSink normalizedConstraints) {
+        final PassStatistics[] statistics = new PassStatistics[passes.size()];
+        for (int i = 0; i < statistics.length; i++) {
+            statistics[i] = new PassStatistics();
+        }
+
         for (final Constraint constraint : constraints) {
-            if (!normalizer.accept(constraint)) {
-                normalizedConstraints.add(constraint);
+            runPasses(constraint, 0, normalizedConstraints, statistics);
+        }
+
+        for (int i = 0; i < passes.size(); i++) {
+            final long start = System.nanoTime();
+            final Collection<Constraint> added = passes.get(i).finish();
+            statistics[i].nanos += System.nanoTime() - start;
+            statistics[i].added += added.size();
+
+            for (final Constraint constraint : added) {
+                runPasses(constraint, i + 1, normalizedConstraints, statistics);
             }
         }
 
+        for (int i = 0; i < passes.size(); i++) {
+            logger.info(String.format("-- Normalization : %s -- %d constraints in, %d removed, %d added, %d ms",
+                    passes.get(i).getName(), statistics[i].seen, statistics[i].removed, statistics[i].added,
+                    statistics[i].nanos / 1000000));
+        }
+
         return normalizedConstraints;
     }
 
-    private static class ExistentialVariableNormalizer implements Normalizer {
+    /**
+     * Hand constraint to the passes starting at firstPass, until one removes it.  If none does, it
+     * is added to normalizedConstraints.
+     */
+    private void runPasses(final Constraint constraint, int firstPass,
+                           final ConstraintSink normalizedConstraints, final PassStatistics[] statistics) {
+        for (int i = firstPass; i < passes.size(); i++) {
+            final PassStatistics passStatistics = statistics[i];
+            passStatistics.seen++;
+
+            final long start = System.nanoTime();
+            final boolean removed = passes.get(i).accept(constraint);
+            passStatistics.nanos += System.nanoTime() - start;
+
+            if (removed) {
+                passStatistics.removed++;
+                return;
+            }
+        }
+
+        normalizedConstraints.add(constraint);
+    }
+
+    private static class PassStatistics {
+        long seen;
+        long removed;
+        long added;
+        long nanos;
+    }
+
+    /**
+     * Replaces each ExistentialVariableSlot by an effective variable E, defined by:
+     * {@code
+     * (@E (@0 | @1)) becomes
+     * if (@0 exists) {
+     *     @E == @0
+     * } else {
+     *     @E == @1
+     * }
+     * }
+     * If @1 is itself an ExistentialVariableSlot, its own effective variable is used, so every
+     * slot of a chain is defined once, whatever the number of constraints it appears in.  Binary
+     * constraints on existential slots are rewritten to use the effective variables.
+     *
+     * Effective variables have no location and are not insertable.
+     */
+    private static class LinearExistentialNormalizer extends NormalizationPass {
+        private final Map<ExistentialVariableSlot, VariableSlot> effectiveSlots = new HashMap<>();
+        private final Set<Constraint> constraints = new LinkedHashSet<>();
+
+        LinearExistentialNormalizer() {
+            super("EXISTENTIAL CONSTRAINT");
+        }
+
+        @Override
+        public boolean accept(final Constraint constraint) {
+            if (!(constraint instanceof BinaryConstraint)) {
+                return false;
+            }
+
+            final BinaryConstraint binaryConstraint = (BinaryConstraint) constraint;
+            final Slot first = binaryConstraint.getFirst();
+            final Slot second = binaryConstraint.getSecond();
+            if (!(first instanceof ExistentialVariableSlot) && !(second instanceof ExistentialVariableSlot)) {
+                return false;
+            }
+
+            final Slot effectiveFirst = getEffectiveSlot(first);
+            final Slot effectiveSecond = getEffectiveSlot(second);
+            // Like the tree encoding, drop constraints between a slot and itself
+            if (!effectiveFirst.equals(effectiveSecond)) {
+                constraints.add(binaryConstraint.make(effectiveFirst, effectiveSecond));
+            }
+            return true;
+        }
+
+        @Override
+        public Collection<Constraint> finish() {
+            return constraints;
+        }
+
+        private Slot getEffectiveSlot(final Slot slot) {
+            if (!(slot instanceof ExistentialVariableSlot)) {
+                return slot;
+            }
+
+            // Define the chain from its innermost slot outward, so alternatives are defined first
+            final List<ExistentialVariableSlot> chain = new ArrayList<>();
+            Slot current = slot;
+            while (current instanceof ExistentialVariableSlot && !effectiveSlots.containsKey(current)) {
+                chain.add((ExistentialVariableSlot) current);
+                current = ((ExistentialVariableSlot) current).getAlternativeSlot();
+            }
+
+            final InferenceMain inferenceMain = InferenceMain.getInstance();
+            final SlotManager slotManager = inferenceMain.getSlotManager();
+            final ConstraintManager constraintManager = inferenceMain.getConstraintManager();
+
+            for (int i = chain.size() - 1; i >= 0; i--) {
+                final ExistentialVariableSlot existentialSlot = chain.get(i);
+                final VariableSlot potential = existentialSlot.getPotentialSlot();
+                final Slot alternative = getEffectiveSlot(existentialSlot.getAlternativeSlot());
+
+                final VariableSlot effective = slotManager.createVariableSlot(AnnotationLocation.MISSING_LOCATION);
+                effective.setInsertable(false);
+                effectiveSlots.put(existentialSlot, effective);
+
+                constraints.add(constraintManager.createExistentialConstraint(potential,
+                        Collections.<Constraint>singletonList(
+                                constraintManager.createEqualityConstraint(effective, potential)),
+                        Collections.<Constraint>singletonList(
+                                constraintManager.createEqualityConstraint(effective, alternative))));
+            }
+
+            return effectiveSlots.get(slot);
+        }
+    }
+
+    private static class ExistentialVariableNormalizer extends NormalizationPass {
         private ExistentialTree existentialTree = new ExistentialTree();
 
-        public Set<Constraint> getConstraints() {
+        ExistentialVariableNormalizer() {
+            super("EXISTENTIAL CONSTRAINT");
+        }
+
+        @Override
+        public Collection<Constraint> finish() {
             return existentialTree.toConstraints();
         }
 
@@ -337,13 +525,17 @@ public class ConstraintNormalizer {
         }
     }
 
-    private class NullSlotNormalizer implements Normalizer {
+    private static class NullSlotNormalizer extends NormalizationPass {
+
+        NullSlotNormalizer() {
+            super("NULL SLOT");
+        }
 
         @Override
         public boolean accept(Constraint constraint) {
             for (Slot slot : constraint.getSlots()) {
                 if (slot == null) {
-                    if (!InferenceMain.isHackMode()) {
+                    if (!InferenceMain.isHackMode(ACCEPT_HACK)) {
                         ErrorReporter.errorAbort("Null slot in constraint " + constraint.getClass().getName() + "\n"
                                                + constraint);
                     }
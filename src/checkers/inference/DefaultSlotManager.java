@@ -1,8 +1,16 @@
 package checkers.inference;
 
 import java.lang.annotation.Annotation;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -36,6 +44,11 @@ import checkers.inference.qual.VarAnnot;
  */
 public class DefaultSlotManager implements SlotManager {
 
+    private static final HackSite GET_VARIABLE_SLOT_HACK = HackSite.register("DefaultSlotManager.getVariableSlot");
+    private static final HackSite GET_SLOT_HACK = HackSite.register("DefaultSlotManager.getSlot");
+
+    private static final int INITIAL_CAPACITY = 1024;
+
     private final AnnotationMirror varAnnot;
 
     //this id starts at 1 because sin ome serializer's (CnfSerializer) 0 is used as line delimiters
@@ -43,13 +56,29 @@ public class DefaultSlotManager implements SlotManager {
     private int nextId = 1;
 
     /**
-     * A map for storing all the slots encountered by this slot manager. Key is
-     * an {@link Integer}, representing a slot id. Value is a
-     * {@link VariableSlot} that corresponds to this slot id. Note that
-     * ConstantSlots are also stored in this map, since ConstantSlot is subclass
+     * All the slots encountered by this slot manager, indexed by slot id.  Ids are dense, so
+     * every index from 1 up to nextId - 1 holds a slot and index 0 is unused.  Note that
+     * ConstantSlots are also stored in this array, since ConstantSlot is subclass
      * of VariableSlot.
      */
-    private final Map<Integer, VariableSlot> variables;
+    private VariableSlot[] variables = new VariableSlot[INITIAL_CAPACITY];
+
+    /** The @VarAnnot for each slot id, built the first time it is requested by getAnnotation */
+    private AnnotationMirror[] varAnnots = new AnnotationMirror[INITIAL_CAPACITY];
+
+    /**
+     * The slot of each @VarAnnot built by getAnnotation.  getSlot is mostly called with annotations
+     * built by this slot manager, this avoids reading the id from the annotation's values.
+     */
+    private final Map<AnnotationMirror, VariableSlot> varAnnotToSlot = new IdentityHashMap<>();
+
+    /** The ids of all slots for which isVariable() is true, in creation order */
+    private int[] variableIds = new int[INITIAL_CAPACITY];
+    private int numberOfVariables = 0;
+
+    /** The ids of all ConstantSlots, in creation order */
+    private int[] constantIds = new int[INITIAL_CAPACITY];
+    private int numberOfConstants = 0;
 
     /**
      * A map of {@link AnnotationMirror} to {@link Integer} for caching
@@ -82,6 +111,37 @@ public class DefaultSlotManager implements SlotManager {
      */
     private final Map<Pair<Slot, Slot>, Integer> combSlotPairCache;
 
+    /**
+     * A map from the sorted ids of the slots joined by a merge variable to the id of that
+     * CombVariableSlot, see createMergeVariableSlot.
+     */
+    private final Map<List<Integer>, Integer> mergeSlotCache;
+
+    /**
+     * The sorted ids of the slots joined by each merge variable, keyed by the merge variable's id.
+     */
+    private final Map<Integer, List<Integer>> mergeSlotOperands;
+
+    /**
+     * The ids of the slots directly merged to each slot, keyed by that slot's id.  The reverse of
+     * VariableSlot.getMergedToSlots, used to find the answers of isMergedTo that a new merge edge
+     * invalidates.
+     */
+    private final Map<Integer, Set<Integer>> mergedFromIds = new HashMap<>();
+
+    /**
+     * The ids of the slots isMergedTo found each slot to be transitively merged to, keyed by the
+     * slot's id.  Merge edges are never removed, so these answers stay valid.
+     */
+    private final Map<Integer, Set<Integer>> mergedToAnswers = new HashMap<>();
+
+    /**
+     * The ids of the slots isMergedTo found each slot not to be merged to, keyed by the slot's id.
+     * A new edge from slot s only extends the reachability of s and of the slots transitively merged
+     * to s, so addMergedToSlot drops the answers of those slots and keeps all the others.
+     */
+    private final Map<Integer, Set<Integer>> notMergedToAnswers = new HashMap<>();
+
     private final Set<Class<? extends Annotation>> realQualifiers;
     private final ProcessingEnvironment processingEnvironment;
 
@@ -91,7 +151,6 @@ public class DefaultSlotManager implements SlotManager {
         this.processingEnvironment = processingEnvironment;
         // sort the qualifiers so that they are always assigned the same varId
         this.realQualifiers = sortAnnotationClasses(realQualifiers);
-        variables = new LinkedHashMap<>();
 
         AnnotationBuilder builder = new AnnotationBuilder(processingEnvironment, VarAnnot.class);
         builder.setValue("value", -1 );
@@ -102,6 +161,8 @@ public class DefaultSlotManager implements SlotManager {
         locationCache = new LinkedHashMap<>();
         existentialSlotPairCache = new LinkedHashMap<>();
         combSlotPairCache = new LinkedHashMap<>();
+        mergeSlotCache = new LinkedHashMap<>();
+        mergeSlotOperands = new LinkedHashMap<>();
         if (storeConstants) {
             Set<? extends AnnotationMirror> mirrors = InferenceMain.getInstance().getRealTypeFactory().getQualifierHierarchy().getTypeQualifiers();
             for (AnnotationMirror am : mirrors) {
@@ -135,7 +196,25 @@ public class DefaultSlotManager implements SlotManager {
     }
 
     private void addToVariables(final VariableSlot slot) {
-        variables.put(slot.getId(), slot);
+        final int id = slot.getId();
+        if (id >= variables.length) {
+            variables = Arrays.copyOf(variables, Math.max(id + 1, variables.length * 2));
+        }
+        variables[id] = slot;
+
+        if (slot.isVariable()) {
+            variableIds = append(variableIds, numberOfVariables++, id);
+        } else {
+            constantIds = append(constantIds, numberOfConstants++, id);
+        }
+    }
+
+    private static int[] append(int[] ids, int index, int id) {
+        if (index == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+        }
+        ids[index] = id;
+        return ids;
     }
 
     /**
@@ -143,7 +222,10 @@ public class DefaultSlotManager implements SlotManager {
      */
     @Override
     public VariableSlot getVariable( int id ) {
-        return variables.get(id);
+        if (id <= 0 || id >= variables.length) {
+            return null;
+        }
+        return variables[id];
     }
 
     /**
@@ -153,11 +235,23 @@ public class DefaultSlotManager implements SlotManager {
     public AnnotationMirror getAnnotation( final Slot slot ) {
         final Class<?> slotClass = slot.getClass();
 
-        // We need to build the AnntotationBuilder each time because AnnotationBuilders are only allowed to build their annotations once
         if (slotClass.equals(VariableSlot.class) || slotClass.equals(ExistentialVariableSlot.class)
                 || slotClass.equals(RefinementVariableSlot.class) || slotClass.equals(CombVariableSlot.class)
                 || slotClass.equals(ConstantSlot.class)) {
-            return convertVariable((VariableSlot) slot, new AnnotationBuilder(processingEnvironment, VarAnnot.class));
+            final VariableSlot variable = (VariableSlot) slot;
+            final int id = variable.getId();
+            if (id >= varAnnots.length) {
+                varAnnots = Arrays.copyOf(varAnnots, Math.max(id + 1, varAnnots.length * 2));
+            }
+
+            AnnotationMirror varAnnot = varAnnots[id];
+            if (varAnnot == null) {
+                // We need to build the AnntotationBuilder each time because AnnotationBuilders are only allowed to build their annotations once
+                varAnnot = convertVariable(variable, new AnnotationBuilder(processingEnvironment, VarAnnot.class));
+                varAnnots[id] = varAnnot;
+                varAnnotToSlot.put(varAnnot, variable);
+            }
+            return varAnnot;
         }
 
         if (slotClass.equals(ConstantSlot.class)) {
@@ -189,7 +283,7 @@ public class DefaultSlotManager implements SlotManager {
 
         AnnotationMirror annot = atm.getAnnotationInHierarchy(this.varAnnot);
         if (annot == null) {
-            if (InferenceMain.isHackMode()) {
+            if (InferenceMain.isHackMode(GET_VARIABLE_SLOT_HACK)) {
                 return null;
             }
 
@@ -205,13 +299,18 @@ public class DefaultSlotManager implements SlotManager {
     @Override
     public Slot getSlot( final AnnotationMirror annotationMirror ) {
 
+        final VariableSlot cached = varAnnotToSlot.get(annotationMirror);
+        if (cached != null) {
+            return cached;
+        }
+
         final int id;
         if (InferenceQualifierHierarchy.isVarAnnot(annotationMirror)) {
             if (annotationMirror.getElementValues().isEmpty()) {
                 return null; //TODO: should we instead throw an exception?
             } else {
                 final AnnotationValue annoValue = annotationMirror.getElementValues().values().iterator().next();
-                id = Integer.valueOf( annoValue.toString() );
+                id = ((Number) annoValue.getValue()).intValue();
             }
 
             return getVariable( id );
@@ -232,7 +331,7 @@ public class DefaultSlotManager implements SlotManager {
             }
         }
 
-        if (InferenceMain.isHackMode()) {
+        if (InferenceMain.isHackMode(GET_SLOT_HACK)) {
             return createConstantSlot(InferenceMain.getInstance().getRealTypeFactory().
                     getQualifierHierarchy().getTopAnnotations().iterator().next());
         }
@@ -242,39 +341,78 @@ public class DefaultSlotManager implements SlotManager {
 
     /**
      * @inheritDoc
+     * The returned list is an unmodifiable view of the slots that exist when this method is called,
+     * no slots are copied.
      */
     @Override
     public List<Slot> getSlots() {
-        return new ArrayList<Slot>(this.variables.values());
+        final VariableSlot[] slots = variables;
+        final int size = nextId - 1;
+        return new AbstractList<Slot>() {
+            @Override
+            public Slot get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + index + " Size: " + size);
+                }
+                return slots[index + 1];
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
     }
 
-    // Sometimes, I miss scala.
     /**
      * @inheritDoc
+     * The returned list is an unmodifiable view of the variables that exist when this method is called,
+     * no slots are scanned or copied.
      */
     @Override
     public List<VariableSlot> getVariableSlots() {
-        List<VariableSlot> varSlots = new ArrayList<>();
-        for (Slot slot : variables.values()) {
-            if (slot.isVariable()) {
-                varSlots.add((VariableSlot) slot);
-            }
-        }
-        return varSlots;
+        return new SlotsById<VariableSlot>(variables, variableIds, numberOfVariables);
     }
 
     /**
      * @inheritDoc
+     * The returned list is an unmodifiable view of the constants that exist when this method is called,
+     * no slots are scanned or copied.
      */
     @Override
     public List<ConstantSlot> getConstantSlots() {
-        List<ConstantSlot> constants = new ArrayList<>();
-        for (Slot slot : variables.values()) {
-            if (!slot.isVariable()) {
-                constants.add((ConstantSlot) slot);
+        return new SlotsById<ConstantSlot>(variables, constantIds, numberOfConstants);
+    }
+
+    /**
+     * A list of the slots whose ids are the first size entries of ids.  Since slots are never
+     * removed and the arrays are only replaced when they grow, the view stays valid when more
+     * slots are created.
+     */
+    private static class SlotsById<S extends VariableSlot> extends AbstractList<S> {
+        private final VariableSlot[] slots;
+        private final int[] ids;
+        private final int size;
+
+        SlotsById(VariableSlot[] slots, int[] ids, int size) {
+            this.slots = slots;
+            this.ids = ids;
+            this.size = size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public S get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + " Size: " + size);
             }
+            return (S) slots[ids[index]];
+        }
+
+        @Override
+        public int size() {
+            return size;
         }
-        return constants;
     }
 
     @Override
@@ -347,6 +485,127 @@ public class DefaultSlotManager implements SlotManager {
         return combVariableSlot;
     }
 
+    @Override
+    public CombVariableSlot createMergeVariableSlot(Slot left, Slot right) {
+        final TreeSet<Integer> operands = new TreeSet<>();
+        addMergeOperands(left, operands);
+        addMergeOperands(right, operands);
+        final List<Integer> key = Collections.unmodifiableList(new ArrayList<>(operands));
+
+        CombVariableSlot mergeVariableSlot;
+        if (mergeSlotCache.containsKey(key)) {
+            int id = mergeSlotCache.get(key);
+            mergeVariableSlot = (CombVariableSlot) getVariable(id);
+        } else {
+            mergeVariableSlot = new CombVariableSlot(null, nextId(), left, right);
+            addToVariables(mergeVariableSlot);
+            mergeSlotCache.put(key, mergeVariableSlot.getId());
+            mergeSlotOperands.put(mergeVariableSlot.getId(), key);
+        }
+        return mergeVariableSlot;
+    }
+
+    @Override
+    public boolean isMergeVariable(CombVariableSlot slot) {
+        return mergeSlotOperands.containsKey(slot.getId());
+    }
+
+    @Override
+    public void addMergedToSlot(VariableSlot slot, CombVariableSlot mergedTo) {
+        if (!slot.addMergedToSlot(mergedTo)) {
+            return;
+        }
+        addToIndex(mergedFromIds, mergedTo.getId(), slot.getId());
+
+        if (notMergedToAnswers.isEmpty()) {
+            return;
+        }
+        final Set<Integer> visited = new HashSet<>();
+        final Deque<Integer> worklist = new ArrayDeque<>();
+        worklist.push(slot.getId());
+        while (!worklist.isEmpty()) {
+            final Integer id = worklist.pop();
+            if (visited.add(id)) {
+                notMergedToAnswers.remove(id);
+                final Set<Integer> mergedFrom = mergedFromIds.get(id);
+                if (mergedFrom != null) {
+                    worklist.addAll(mergedFrom);
+                }
+            }
+        }
+    }
+
+    /**
+     * Dataflow asks this for the same pairs of slots on every iteration of a loop, so the answers
+     * are memoized per slot, see mergedToAnswers and notMergedToAnswers.
+     */
+    @Override
+    public boolean isMergedTo(VariableSlot slot, VariableSlot other) {
+        if (slot.getMergedToSlots().isEmpty()) {
+            return false;
+        }
+        final int id = slot.getId();
+        final int otherId = other.getId();
+        if (isInIndex(mergedToAnswers, id, otherId)) {
+            return true;
+        }
+        if (isInIndex(notMergedToAnswers, id, otherId)) {
+            return false;
+        }
+
+        final boolean merged = searchMergedTo(slot, otherId);
+        addToIndex(merged ? mergedToAnswers : notMergedToAnswers, id, otherId);
+        return merged;
+    }
+
+    /**
+     * Search the merge graph from slot, visiting each slot once and stopping at slots whose
+     * answer is already memoized.
+     */
+    private boolean searchMergedTo(VariableSlot slot, int otherId) {
+        final Set<Integer> visited = new HashSet<>();
+        final Deque<VariableSlot> worklist = new ArrayDeque<VariableSlot>(slot.getMergedToSlots());
+        while (!worklist.isEmpty()) {
+            final VariableSlot next = worklist.pop();
+            final int id = next.getId();
+            if (id == otherId || isInIndex(mergedToAnswers, id, otherId)) {
+                return true;
+            }
+            if (visited.add(id) && !isInIndex(notMergedToAnswers, id, otherId)) {
+                worklist.addAll(next.getMergedToSlots());
+            }
+        }
+        return false;
+    }
+
+    private static void addToIndex(Map<Integer, Set<Integer>> index, int key, int value) {
+        Set<Integer> values = index.get(key);
+        if (values == null) {
+            values = new HashSet<>();
+            index.put(key, values);
+        }
+        values.add(value);
+    }
+
+    private static boolean isInIndex(Map<Integer, Set<Integer>> index, int key, int value) {
+        final Set<Integer> values = index.get(key);
+        return values != null && values.contains(value);
+    }
+
+    /**
+     * Add the ids of the slots joined by slot to operands, i.e. the operands of slot if it
+     * is a merge variable and the id of slot otherwise.
+     */
+    private void addMergeOperands(Slot slot, Set<Integer> operands) {
+        final int id = ((VariableSlot) slot).getId();
+        final List<Integer> mergedOperands = mergeSlotOperands.get(id);
+        if (mergedOperands != null) {
+            operands.addAll(mergedOperands);
+        } else {
+            operands.add(id);
+        }
+    }
+
     @Override
     public ExistentialVariableSlot createExistentialVariableSlot(VariableSlot potentialSlot, VariableSlot alternativeSlot) {
         ExistentialVariableSlot existentialVariableSlot;
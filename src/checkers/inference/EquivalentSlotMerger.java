@@ -0,0 +1,306 @@
+package checkers.inference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import checkers.inference.model.BinaryConstraint;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.model.VariableSlot;
+
+/**
+ * A NormalizationPass that replaces variables that must have the same value by a single
+ * representative variable.  Two variables must have the same value if they are equal
+ * (a == b) or if they are on a cycle of subtype constraints (a <: b <: c <: a).  Equality
+ * classes are found with union-find, then the strongly connected components of the subtype
+ * constraints between the classes are merged as well.  Each class is represented by its variable
+ * with the smallest id.
+ *
+ * Every constraint is rewritten in terms of the representatives, constraints that become
+ * trivial (rep == rep, rep <: rep) are dropped, and the solution is expanded back to the merged
+ * variables with expand.
+ *
+ * Only variables that appear exclusively in binary constraints are merged: variables of
+ * combine, preference and existential constraints are kept as they are.
+ *
+ * Rewritten constraints keep the location of the constraint they were rewritten from.
+ *
+ * Merging treats equalities and subtype cycles as hard constraints, so the pass is not used with
+ * a SoftConstraintSolver (see InferenceMain.solve).
+ */
+public class EquivalentSlotMerger extends NormalizationPass {
+
+    private static final Logger logger = Logger.getLogger(EquivalentSlotMerger.class.getName());
+
+    private final SlotManager slotManager;
+    private final ConstraintManager constraintManager;
+
+    private final List<Constraint> constraints = new ArrayList<>();
+
+    /** Ids of variables that cannot be merged, see class comment */
+    private final BitSet pinned = new BitSet();
+
+    /** Union-find parents, indexed by slot id.  A root is the representative of its class. */
+    private int[] parents = new int[0];
+
+    public EquivalentSlotMerger(SlotManager slotManager, ConstraintManager constraintManager) {
+        super("EQUIVALENT SLOTS");
+        this.slotManager = slotManager;
+        this.constraintManager = constraintManager;
+    }
+
+    @Override
+    public boolean accept(Constraint constraint) {
+        constraints.add(constraint);
+        if (!(constraint instanceof BinaryConstraint)) {
+            for (Slot slot : constraint.getSlots()) {
+                if (slot.isVariable()) {
+                    pinned.set(((VariableSlot) slot).getId());
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Collection<Constraint> finish() {
+        parents = new int[slotManager.getNumberOfSlots() + 1];
+        for (int id = 0; id < parents.length; id++) {
+            parents[id] = id;
+        }
+
+        for (Constraint constraint : constraints) {
+            if (constraint instanceof EqualityConstraint) {
+                final int[] ids = mergeableIds((BinaryConstraint) constraint);
+                if (ids != null) {
+                    union(ids[0], ids[1]);
+                }
+            }
+        }
+        mergeSubtypeCycles();
+
+        int merged = 0;
+        for (int id = 0; id < parents.length; id++) {
+            if (find(id) != id) {
+                merged++;
+            }
+        }
+        logger.info("Merged " + merged + " variables into equivalent variables");
+
+        final Set<Constraint> rewritten = new LinkedHashSet<>();
+        for (Constraint constraint : constraints) {
+            final Constraint rewrittenConstraint = rewrite(constraint);
+            if (rewrittenConstraint != null) {
+                rewritten.add(rewrittenConstraint);
+            }
+        }
+        constraints.clear();
+        return rewritten;
+    }
+
+    /**
+     * @return the solution for the original variables, where a merged variable gets the value of
+     * its representative
+     */
+    public InferenceSolution expand(final InferenceSolution solution) {
+        return new InferenceSolution() {
+            @Override
+            public boolean doesVariableExist(int varId) {
+                return solution.doesVariableExist(representative(varId));
+            }
+
+            @Override
+            public AnnotationMirror getAnnotation(int varId) {
+                return solution.getAnnotation(representative(varId));
+            }
+        };
+    }
+
+    /**
+     * @return the id of the variable that represents the variable with id varId
+     */
+    public int representative(int varId) {
+        if (varId < 0 || varId >= parents.length) {
+            return varId;
+        }
+        return find(varId);
+    }
+
+    /**
+     * @return the ids of the two slots of constraint if both are variables that may be merged
+     */
+    private int[] mergeableIds(BinaryConstraint constraint) {
+        final Slot first = constraint.getFirst();
+        final Slot second = constraint.getSecond();
+        if (!first.isVariable() || !second.isVariable()) {
+            return null;
+        }
+
+        final int firstId = ((VariableSlot) first).getId();
+        final int secondId = ((VariableSlot) second).getId();
+        if (pinned.get(firstId) || pinned.get(secondId)) {
+            return null;
+        }
+        return new int[] { firstId, secondId };
+    }
+
+    private int find(int id) {
+        int root = id;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        while (parents[id] != root) {
+            final int next = parents[id];
+            parents[id] = root;
+            id = next;
+        }
+        return root;
+    }
+
+    private void union(int id1, int id2) {
+        final int root1 = find(id1);
+        final int root2 = find(id2);
+        // The smallest id represents the class, so results do not depend on constraint order
+        if (root1 < root2) {
+            parents[root2] = root1;
+        } else if (root2 < root1) {
+            parents[root1] = root2;
+        }
+    }
+
+    /**
+     * Find the strongly connected components of the subtype constraints between equality classes
+     * (Tarjan's algorithm, iteratively) and merge the classes of each component.
+     */
+    private void mergeSubtypeCycles() {
+        final int size = parents.length;
+
+        // Adjacency lists of the subtype graph between class representatives, subtype -> supertype
+        final int[] edgeCount = new int[size + 1];
+        final List<int[]> edges = new ArrayList<>();
+        for (Constraint constraint : constraints) {
+            if (constraint instanceof SubtypeConstraint) {
+                final int[] ids = mergeableIds((BinaryConstraint) constraint);
+                if (ids != null) {
+                    final int from = find(ids[0]);
+                    final int to = find(ids[1]);
+                    if (from != to) {
+                        edges.add(new int[] { from, to });
+                        edgeCount[from + 1]++;
+                    }
+                }
+            }
+        }
+        if (edges.isEmpty()) {
+            return;
+        }
+
+        final int[] edgeStart = edgeCount;
+        for (int id = 0; id < size; id++) {
+            edgeStart[id + 1] += edgeStart[id];
+        }
+        final int[] targets = new int[edges.size()];
+        final int[] fill = Arrays.copyOf(edgeStart, size);
+        for (int[] edge : edges) {
+            targets[fill[edge[0]]++] = edge[1];
+        }
+
+        final int[] index = new int[size];
+        final int[] lowLink = new int[size];
+        Arrays.fill(index, -1);
+        final boolean[] onStack = new boolean[size];
+        final int[] componentStack = new int[size];
+        int componentStackSize = 0;
+        final int[] callStack = new int[size];
+        final int[] nextEdge = new int[size];
+        int nextIndex = 0;
+
+        for (int start = 0; start < size; start++) {
+            if (index[start] != -1 || edgeStart[start] == edgeStart[start + 1]) {
+                continue;
+            }
+
+            int callStackSize = 0;
+            callStack[callStackSize++] = start;
+            index[start] = lowLink[start] = nextIndex++;
+            nextEdge[start] = edgeStart[start];
+            componentStack[componentStackSize++] = start;
+            onStack[start] = true;
+
+            while (callStackSize > 0) {
+                final int node = callStack[callStackSize - 1];
+                if (nextEdge[node] < edgeStart[node + 1]) {
+                    final int target = targets[nextEdge[node]++];
+                    if (index[target] == -1) {
+                        index[target] = lowLink[target] = nextIndex++;
+                        nextEdge[target] = edgeStart[target];
+                        componentStack[componentStackSize++] = target;
+                        onStack[target] = true;
+                        callStack[callStackSize++] = target;
+                    } else if (onStack[target]) {
+                        lowLink[node] = Math.min(lowLink[node], index[target]);
+                    }
+                } else {
+                    callStackSize--;
+                    if (callStackSize > 0) {
+                        final int caller = callStack[callStackSize - 1];
+                        lowLink[caller] = Math.min(lowLink[caller], lowLink[node]);
+                    }
+
+                    if (lowLink[node] == index[node]) {
+                        int member;
+                        do {
+                            member = componentStack[--componentStackSize];
+                            onStack[member] = false;
+                            union(node, member);
+                        } while (member != node);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return constraint in terms of the representatives, or null if it became trivial
+     */
+    private Constraint rewrite(Constraint constraint) {
+        if (!(constraint instanceof BinaryConstraint)) {
+            return constraint;
+        }
+
+        final BinaryConstraint binaryConstraint = (BinaryConstraint) constraint;
+        final Slot first = representativeSlot(binaryConstraint.getFirst());
+        final Slot second = representativeSlot(binaryConstraint.getSecond());
+        if (first == binaryConstraint.getFirst() && second == binaryConstraint.getSecond()) {
+            return constraint;
+        }
+
+        if (first.equals(second)
+                && (constraint instanceof EqualityConstraint || constraint instanceof SubtypeConstraint)) {
+            return null;
+        }
+        return constraintManager.restoreBinaryConstraint(constraint.getClass(), first, second,
+                constraint.getLocation());
+    }
+
+    private Slot representativeSlot(Slot slot) {
+        if (!slot.isVariable()) {
+            return slot;
+        }
+
+        final int id = ((VariableSlot) slot).getId();
+        final int representative = representative(id);
+        return representative == id ? slot : slotManager.getVariable(representative);
+    }
+}
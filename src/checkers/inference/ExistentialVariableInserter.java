@@ -74,6 +74,10 @@ import checkers.inference.model.VariableSlot;
  * }
  */
 public class ExistentialVariableInserter {
+
+    private static final HackSite MATCH_AND_REPLACE_PRIMARY_HACK = HackSite.register("ExistentialVariableInserter.matchAndReplacePrimary");
+    private static final HackSite MATCH_AND_REPLACE_PRIMARY_HACK_2 = HackSite.register("ExistentialVariableInserter.matchAndReplacePrimary #2");
+    private static final HackSite MATCH_AND_REPLACE_PRIMARY_HACK_3 = HackSite.register("ExistentialVariableInserter.matchAndReplacePrimary #3");
     private final SlotManager slotManager;
     private final VariableAnnotator varAnnotator;
     private final ConstraintManager constraintMangaer;
@@ -132,7 +136,7 @@ public class ExistentialVariableInserter {
         }
 
         public void matchAndReplacePrimary(final AnnotatedTypeMirror typeUse, final AnnotatedTypeMirror declaration) {
-            if (InferenceMain.isHackMode(slotManager.getVariableSlot(typeUse) == null)) {
+            if (InferenceMain.isHackMode(MATCH_AND_REPLACE_PRIMARY_HACK, slotManager.getVariableSlot(typeUse) == null)) {
                 return;
             }
 
@@ -144,7 +148,7 @@ public class ExistentialVariableInserter {
                 final Slot declSlot = slotManager.getVariableSlot(declaration);
 
                 if (declSlot == null) {
-                    if (!InferenceMain.isHackMode()) {
+                    if (!InferenceMain.isHackMode(MATCH_AND_REPLACE_PRIMARY_HACK_2)) {
                         ErrorReporter.errorAbort("Missing variable slot for declaration:" + declaration);
                     } else {
                         return;
@@ -156,7 +160,7 @@ public class ExistentialVariableInserter {
                     final ExistentialVariableSlot existVar =
                             varAnnotator.getOrCreateExistentialVariable(typeUse, potentialVariable, varSlot);
 
-                } else if (!InferenceMain.isHackMode()) {
+                } else if (!InferenceMain.isHackMode(MATCH_AND_REPLACE_PRIMARY_HACK_3)) {
                         ErrorReporter.errorAbort("Unexpected constant slot in:" + declaration);
                 }
             }
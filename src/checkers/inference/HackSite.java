@@ -0,0 +1,121 @@
+package checkers.inference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A place in the code that works around a known problem when running with --hacks,
+ * see InferenceMain.isHackMode(HackSite, boolean).
+ *
+ * Sites are created once, as static fields of the class that contains the hack, and count how
+ * often the hack was used.  InferenceMain logs a summary of all sites at the end of the run.
+ * Building a stack trace for each use is too expensive for hacks on hot paths, so traces are
+ * only logged for every n-th use of a site when --hackTraceSampling n is given.
+ */
+public class HackSite {
+
+    private static final Logger logger = Logger.getLogger(HackSite.class.getName());
+
+    private static final List<HackSite> sites = new ArrayList<>();
+
+    /** Log a stack trace every sampleRate hits of a site, 0 means never. */
+    private static int sampleRate = 0;
+
+    private final String name;
+    private long hits = 0;
+
+    private HackSite(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param name a description of the hack, usually Class.method
+     */
+    public static HackSite register(String name) {
+        final HackSite site = new HackSite(name);
+        synchronized (sites) {
+            sites.add(site);
+        }
+        return site;
+    }
+
+    public static void setSampleRate(int sampleRate) {
+        HackSite.sampleRate = sampleRate;
+    }
+
+    /**
+     * Clear the hit counts of every site and stop sampling traces, called before each run in
+     * an InferenceDaemon.
+     */
+    static void reset() {
+        sampleRate = 0;
+        synchronized (sites) {
+            for (HackSite site : sites) {
+                site.hits = 0;
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Record a use of this hack.
+     */
+    void hit() {
+        hits++;
+        if (sampleRate > 0 && (hits - 1) % sampleRate == 0) {
+            logger.warning("Encountered hack: " + name + " (hit " + hits + ")\n" + stackTrace());
+        }
+    }
+
+    private static String stackTrace() {
+        final StringBuilder sb = new StringBuilder();
+        final StackTraceElement[] traces = Thread.currentThread().getStackTrace();
+        for (StackTraceElement trace : traces) {
+            // Skip the frames of Thread, HackSite and InferenceMain.isHackMode
+            if (trace.getClassName().equals(Thread.class.getName())
+                    || trace.getClassName().equals(HackSite.class.getName())
+                    || trace.getMethodName().equals("isHackMode")) {
+                continue;
+            }
+            sb.append("\tat ").append(trace).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return a description of every site that was hit, most frequently hit first
+     */
+    public static String summary() {
+        final List<HackSite> hitSites = new ArrayList<>();
+        synchronized (sites) {
+            for (HackSite site : sites) {
+                if (site.hits > 0) {
+                    hitSites.add(site);
+                }
+            }
+        }
+
+        Collections.sort(hitSites, new Comparator<HackSite>() {
+            @Override
+            public int compare(HackSite o1, HackSite o2) {
+                return Long.compare(o2.hits, o1.hits);
+            }
+        });
+
+        final StringBuilder sb = new StringBuilder("Hacks encountered:\n");
+        for (HackSite site : hitSites) {
+            sb.append(String.format("%12d  %s%n", site.hits, site.name));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,430 @@
+package checkers.inference;
+
+import org.checkerframework.javacutil.ErrorReporter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import annotations.io.ASTRecord;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.RefinementVariableSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.model.serialization.SlotTableDeserializer;
+import checkers.inference.model.serialization.SlotTableSerializer;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+
+/**
+ * An on-disk store of the slots and constraints generated for each compilation unit, used
+ * by --incrementalCache to avoid re-generating constraints for source files that have not changed.
+ *
+ * The store directory holds an index that maps each source file to the SHA-1 hash of its contents,
+ * the top-level classes it declares, and the source files whose declarations its constraints refer
+ * to.  For every unit there is also a slot table (see SlotTableSerializer) with the constraints
+ * added while InferenceAnnotatedTypeFactory's root was that unit, plus every slot those constraints
+ * refer to.
+ *
+ * On a rerun, a unit is revisited if its hash changed or if a unit it depends on, directly or
+ * transitively, is revisited.  Every other unit is skipped by InferenceChecker and its slot table
+ * is merged into the SlotManager and ConstraintManager after javac finishes, before normalization
+ * and solving.  Slots are unified by AnnotationLocation during the merge, so slots on declarations
+ * are shared between fresh and cached units.  Slots without a location are only shared within a
+ * unit.
+ */
+public class IncrementalStore {
+
+    public final Logger logger = Logger.getLogger(IncrementalStore.class.getName());
+
+    private static final String INDEX_FILE = "index.json";
+    private static final String UNITS_DIR = "units";
+
+    private static final String HASH_KEY = "hash";
+    private static final String CLASSES_KEY = "classes";
+    private static final String DEPENDENCIES_KEY = "dependencies";
+    private static final String SLOT_TABLE_VERSION_KEY = "slotTableVersion";
+
+    private final File storeDir;
+
+    /** Canonical source path -> the index entry for that unit, as of the previous run */
+    private final Map<String, UnitEntry> previousIndex = new HashMap<>();
+
+    /** Canonical source path -> the index entry for that unit in this run */
+    private final Map<String, UnitEntry> currentIndex = new LinkedHashMap<>();
+
+    /** Canonical paths of units whose cached slot tables are reused in this run */
+    private final Set<String> cachedUnits = new LinkedHashSet<>();
+
+    /** Canonical source path -> the constraints added while that unit was being visited */
+    private final Map<String, Set<Constraint>> unitConstraints = new LinkedHashMap<>();
+
+    private String currentUnit;
+
+    public IncrementalStore(File storeDir) {
+        this.storeDir = storeDir;
+    }
+
+    /**
+     * Read the index of the previous run and decide which of the given source files can be
+     * taken from the store.
+     */
+    public void open(String[] javaFiles) {
+        readIndex();
+
+        final Set<String> changed = new HashSet<>();
+        for (String javaFile : javaFiles) {
+            final String path = canonicalPath(new File(javaFile));
+            final UnitEntry previous = previousIndex.get(path);
+            final String hash = hashFile(new File(path));
+
+            if (previous == null || !previous.hash.equals(hash) || !unitFile(path).exists()) {
+                changed.add(path);
+                currentIndex.put(path, new UnitEntry(hash));
+            } else {
+                currentIndex.put(path, previous);
+            }
+        }
+
+        // A unit is revisited if it changed, if it depends on a unit that no longer exists, or if
+        // it depends, directly or through other units, on a unit that is revisited
+        final Set<String> revisited = new HashSet<>(changed);
+        final Deque<String> worklist = new ArrayDeque<>(changed);
+        final Map<String, List<String>> dependents = new HashMap<>();
+        for (Map.Entry<String, UnitEntry> entry : currentIndex.entrySet()) {
+            final String path = entry.getKey();
+            for (String dependency : entry.getValue().dependencies) {
+                if (!currentIndex.containsKey(dependency)) {
+                    if (revisited.add(path)) {
+                        worklist.add(path);
+                    }
+                    continue;
+                }
+
+                List<String> dependencyDependents = dependents.get(dependency);
+                if (dependencyDependents == null) {
+                    dependencyDependents = new ArrayList<>();
+                    dependents.put(dependency, dependencyDependents);
+                }
+                dependencyDependents.add(path);
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            final List<String> unitDependents = dependents.get(worklist.poll());
+            if (unitDependents != null) {
+                for (String dependent : unitDependents) {
+                    if (revisited.add(dependent)) {
+                        worklist.add(dependent);
+                    }
+                }
+            }
+        }
+
+        for (String path : currentIndex.keySet()) {
+            if (!revisited.contains(path)) {
+                cachedUnits.add(path);
+            }
+        }
+
+        logger.info(String.format("Incremental inference: %d of %d compilation units are cached",
+                cachedUnits.size(), currentIndex.size()));
+    }
+
+    /**
+     * @return true if constraints for root are taken from the store and root need not be visited
+     */
+    public boolean isCached(CompilationUnitTree root) {
+        return cachedUnits.contains(canonicalPath(new File(root.getSourceFile().toUri())));
+    }
+
+    /**
+     * Called by InferenceAnnotatedTypeFactory.setRoot, constraints added from now on are
+     * attributed to root.
+     */
+    public void beginUnit(CompilationUnitTree root, ConstraintManager constraintManager) {
+        final String path = canonicalPath(new File(root.getSourceFile().toUri()));
+        if (path.equals(currentUnit)) {
+            return;
+        }
+        currentUnit = path;
+
+        UnitEntry entry = currentIndex.get(path);
+        if (entry == null) {
+            // A file that was not passed on the command line, e.g. found via the sourcepath
+            entry = new UnitEntry(hashFile(new File(path)));
+            currentIndex.put(path, entry);
+        }
+        entry.classes.clear();
+        entry.classes.addAll(topLevelClassNames(root));
+
+        Set<Constraint> constraints = unitConstraints.get(path);
+        if (constraints == null) {
+            constraints = new LinkedHashSet<>();
+            unitConstraints.put(path, constraints);
+        }
+        constraintManager.setConstraintRecorder(constraints);
+    }
+
+    /**
+     * Merge the slot tables of all cached units into slotManager and constraintManager.
+     */
+    public void restoreCachedUnits(SlotManager slotManager, ConstraintManager constraintManager,
+                                   ProcessingEnvironment processingEnv) {
+        constraintManager.setConstraintRecorder(null);
+        final SlotTableDeserializer deserializer =
+                new SlotTableDeserializer(slotManager, constraintManager, processingEnv);
+
+        for (String path : cachedUnits) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(unitFile(path)))) {
+                deserializer.merge(reader);
+            } catch (Exception e) {
+                ErrorReporter.errorAbort("Could not read cached constraints for " + path, e);
+            }
+        }
+    }
+
+    /**
+     * Write the slot tables of every unit visited in this run and the new index.
+     */
+    public void save(SlotManager slotManager) {
+        final Map<String, String> classToUnit = new HashMap<>();
+        for (Map.Entry<String, UnitEntry> entry : currentIndex.entrySet()) {
+            for (String className : entry.getValue().classes) {
+                classToUnit.put(className, entry.getKey());
+            }
+        }
+
+        new File(storeDir, UNITS_DIR).mkdirs();
+        final SlotTableSerializer serializer = new SlotTableSerializer(slotManager);
+
+        for (Map.Entry<String, Set<Constraint>> entry : unitConstraints.entrySet()) {
+            final String path = entry.getKey();
+            final Collection<Slot> slots = referencedSlots(entry.getValue());
+
+            final UnitEntry unitEntry = currentIndex.get(path);
+            unitEntry.dependencies.clear();
+            for (Slot slot : slots) {
+                final String dependency = unitOf(slot.getLocation(), classToUnit);
+                if (dependency != null && !dependency.equals(path)) {
+                    unitEntry.dependencies.add(dependency);
+                }
+            }
+
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(unitFile(path)))) {
+                serializer.write(slots, entry.getValue(), writer);
+            } catch (IOException e) {
+                ErrorReporter.errorAbort("Could not write cached constraints for " + path, e);
+            }
+        }
+
+        writeIndex();
+    }
+
+    /**
+     * @return the slots referred to by constraints, and the slots they are derived from, in id order
+     */
+    private static Collection<Slot> referencedSlots(Collection<Constraint> constraints) {
+        final TreeMap<Integer, Slot> slots = new TreeMap<>();
+        final List<Slot> worklist = new ArrayList<>();
+        for (Constraint constraint : constraints) {
+            worklist.addAll(constraint.getSlots());
+        }
+
+        while (!worklist.isEmpty()) {
+            final Slot slot = worklist.remove(worklist.size() - 1);
+            if (slot == null || slots.put(((VariableSlot) slot).getId(), slot) != null) {
+                continue;
+            }
+
+            if (slot instanceof RefinementVariableSlot) {
+                worklist.add(((RefinementVariableSlot) slot).getRefined());
+            } else if (slot instanceof CombVariableSlot) {
+                worklist.add(((CombVariableSlot) slot).getFirst());
+                worklist.add(((CombVariableSlot) slot).getSecond());
+            } else if (slot instanceof ExistentialVariableSlot) {
+                worklist.add(((ExistentialVariableSlot) slot).getPotentialSlot());
+                worklist.add(((ExistentialVariableSlot) slot).getAlternativeSlot());
+            }
+        }
+
+        return slots.values();
+    }
+
+    private static String unitOf(AnnotationLocation location, Map<String, String> classToUnit) {
+        final String className;
+        if (location instanceof AstPathLocation) {
+            final ASTRecord record = ((AstPathLocation) location).getAstRecord();
+            className = record.className;
+        } else if (location instanceof ClassDeclLocation) {
+            final ClassDeclLocation classDecl = (ClassDeclLocation) location;
+            className = classDecl.getPackageName().isEmpty()
+                      ? classDecl.getClassName()
+                      : classDecl.getPackageName() + "." + classDecl.getClassName();
+        } else {
+            return null;
+        }
+
+        if (className == null) {
+            return null;
+        }
+
+        // Nested classes are located in the unit of their top-level class
+        String topLevel = className;
+        int nested = topLevel.indexOf('$');
+        if (nested != -1) {
+            topLevel = topLevel.substring(0, nested);
+        }
+        return classToUnit.get(topLevel);
+    }
+
+    private static List<String> topLevelClassNames(CompilationUnitTree root) {
+        final String packageName = root.getPackageName() == null ? "" : root.getPackageName().toString() + ".";
+        final List<String> names = new ArrayList<>();
+        for (Tree typeDecl : root.getTypeDecls()) {
+            if (typeDecl instanceof ClassTree) {
+                names.add(packageName + ((ClassTree) typeDecl).getSimpleName());
+            }
+        }
+        return names;
+    }
+
+    private File unitFile(String path) {
+        return new File(new File(storeDir, UNITS_DIR), sha1(path) + ".json");
+    }
+
+    private void readIndex() {
+        final File indexFile = new File(storeDir, INDEX_FILE);
+        if (!indexFile.exists()) {
+            return;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(indexFile))) {
+            final JSONObject index = (JSONObject) new JSONParser().parse(reader);
+            for (Object entryObj : index.entrySet()) {
+                final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) entryObj;
+                final JSONObject jsonUnit = (JSONObject) entry.getValue();
+
+                // Units cached in an older slot table format are revisited
+                if (!SlotTableSerializer.VERSION.equals(jsonUnit.get(SLOT_TABLE_VERSION_KEY))) {
+                    continue;
+                }
+
+                final UnitEntry unit = new UnitEntry((String) jsonUnit.get(HASH_KEY));
+                for (Object className : (JSONArray) jsonUnit.get(CLASSES_KEY)) {
+                    unit.classes.add((String) className);
+                }
+                for (Object dependency : (JSONArray) jsonUnit.get(DEPENDENCIES_KEY)) {
+                    unit.dependencies.add((String) dependency);
+                }
+                previousIndex.put((String) entry.getKey(), unit);
+            }
+        } catch (Exception e) {
+            logger.warning("Ignoring unreadable incremental index " + indexFile + ": " + e);
+            previousIndex.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeIndex() {
+        final JSONObject index = new JSONObject();
+        for (Map.Entry<String, UnitEntry> entry : currentIndex.entrySet()) {
+            final UnitEntry unit = entry.getValue();
+            final JSONArray classes = new JSONArray();
+            classes.addAll(unit.classes);
+            final JSONArray dependencies = new JSONArray();
+            dependencies.addAll(unit.dependencies);
+
+            final JSONObject jsonUnit = new JSONObject();
+            jsonUnit.put(HASH_KEY, unit.hash);
+            jsonUnit.put(SLOT_TABLE_VERSION_KEY, SlotTableSerializer.VERSION);
+            jsonUnit.put(CLASSES_KEY, classes);
+            jsonUnit.put(DEPENDENCIES_KEY, dependencies);
+            index.put(entry.getKey(), jsonUnit);
+        }
+
+        final File indexFile = new File(storeDir, INDEX_FILE);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile))) {
+            index.writeJSONString(writer);
+        } catch (IOException e) {
+            ErrorReporter.errorAbort("Could not write incremental index " + indexFile, e);
+        }
+    }
+
+    private static String hashFile(File file) {
+        try {
+            return toHex(MessageDigest.getInstance("SHA-1").digest(Files.readAllBytes(file.toPath())));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            ErrorReporter.errorAbort("Could not hash source file " + file, e);
+            return null; // Dead
+        }
+    }
+
+    private static String sha1(String str) {
+        try {
+            return toHex(MessageDigest.getInstance("SHA-1").digest(str.getBytes("UTF-8")));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            ErrorReporter.errorAbort("Could not hash " + str, e);
+            return null; // Dead
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static String canonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    private static class UnitEntry {
+        final String hash;
+        final Set<String> classes = new LinkedHashSet<>();
+        final Set<String> dependencies = new LinkedHashSet<>();
+
+        UnitEntry(String hash) {
+            this.hash = hash;
+        }
+    }
+}
@@ -56,6 +56,7 @@ import checkers.inference.model.Slot;
 import checkers.inference.model.VariableSlot;
 import checkers.inference.qual.VarAnnot;
 import checkers.inference.util.ConstantToVariableAnnotator;
+import checkers.inference.util.InferenceProfiler;
 import checkers.inference.util.InferenceUtil;
 
 import com.sun.source.tree.ClassTree;
@@ -119,6 +120,9 @@ public class InferenceAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
     //See setRoot below
     public int compilationUnitsHandled = 0;
 
+    //The root of the last setRoot call, setRoot is called once per top-level class of a compilation unit
+    private CompilationUnitTree currentRoot;
+
     //there are locations in the code that are constant for which we still need to apply a variable
     //though we know the value of that variable.  In this case, rather than creating a new variable
     //for every one of these locations and increase the number of variables we solve for, use
@@ -185,6 +189,10 @@ public class InferenceAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
         return varAnnot;
     }
 
+    public VariableAnnotator getVariableAnnotator() {
+        return variableAnnotator;
+    }
+
     public ConstantToVariableAnnotator getNewConstantToVariableAnnotator() {
         return new ConstantToVariableAnnotator(realTop, varAnnot, variableAnnotator, slotManager);
     }
@@ -466,9 +474,11 @@ public class InferenceAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
     @Override
     protected void performFlowAnalysis(final ClassTree classTree) {
         final InferenceMain inferenceMain = InferenceMain.getInstance();
+        final InferenceProfiler.Timer dataflowTimer = inferenceMain.getProfiler().startPhase("dataflow");
         inferenceMain.setPerformingFlow(true);
         super.performFlowAnalysis(classTree);
         inferenceMain.setPerformingFlow(false);
+        dataflowTimer.stop();
     }
 
     /**
@@ -580,7 +590,20 @@ public class InferenceAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
 
         compilationUnitsHandled += 1;
         this.realTypeFactory.setRoot( root );
-        this.variableAnnotator.clearTreeInfo();
+        // Before the location caches of the previous root are cleared
+        this.constraintManager.resolvePendingLocations();
+        if (!InferenceMain.getInstance().isBoundedMemory()) {
+            this.variableAnnotator.clearTreeInfo();
+        } else if (root != currentRoot) {
+            // setRoot is called for every top-level class, a unit's caches are needed until its last class
+            this.variableAnnotator.clearCompilationUnitInfo();
+        }
+        currentRoot = root;
+
+        final IncrementalStore incrementalStore = InferenceMain.getInstance().getIncrementalStore();
+        if (incrementalStore != null) {
+            incrementalStore.beginUnit(root, InferenceMain.getInstance().getConstraintManager());
+        }
         super.setRoot(root);
     }
 }
@@ -3,6 +3,12 @@ package checkers.inference;
 import org.checkerframework.common.basetype.BaseTypeChecker;
 import org.checkerframework.common.basetype.BaseTypeVisitor;
 
+import javax.lang.model.element.TypeElement;
+
+import com.sun.source.util.TreePath;
+
+import checkers.inference.util.InferenceProfiler;
+
 public class InferenceChecker extends BaseTypeChecker {
 
     @Override
@@ -14,6 +20,34 @@ public class InferenceChecker extends BaseTypeChecker {
         this.visitor = InferenceMain.getInstance().getVisitor();
     }
 
+    /**
+     * When constraint generation is sharded, only the compilation units of this process's
+     * shard are visited.  See ShardedInference.
+     * Compilation units whose constraints are taken from the IncrementalStore are skipped.
+     *
+     * The time spent here is profiled as the visitor phase and as time of the class's compilation
+     * unit, the time javac spends between two calls as the attribution phase.
+     */
+    @Override
+    public void typeProcess(TypeElement element, TreePath tree) {
+        final InferenceProfiler profiler = InferenceMain.getInstance().getProfiler();
+        profiler.endAttribution();
+        final InferenceProfiler.Timer visitorTimer = profiler.startPhase("visitor");
+        final InferenceProfiler.Timer unitTimer =
+                profiler.startUnit(tree.getCompilationUnit().getSourceFile().getName());
+
+        final IncrementalStore incrementalStore = InferenceMain.getInstance().getIncrementalStore();
+        if (incrementalStore == null || !incrementalStore.isCached(tree.getCompilationUnit())) {
+            if (ShardedInference.isInCurrentShard(tree.getCompilationUnit())) {
+                super.typeProcess(element, tree);
+            }
+        }
+
+        unitTimer.stop();
+        visitorTimer.stop();
+        profiler.startAttribution();
+    }
+
     /**
      * Called during super.initChecker(). We want it to do nothing.
      */
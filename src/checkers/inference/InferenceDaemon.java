@@ -0,0 +1,241 @@
+package checkers.inference;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.checkerframework.framework.util.PluginUtil;
+
+import plume.Option;
+import checkers.inference.InferenceOptions.InitStatus;
+
+/**
+ * A long-lived InferenceMain process.  Starting a JVM, loading the checker and inference classes,
+ * and warming up the JIT dominate the running time of inference on small and medium programs;
+ * the daemon pays for them once and then serves any number of inference requests.
+ *
+ * Usage: java checkers.inference.InferenceDaemon [port]
+ *
+ * With a port, the daemon listens on that port of the loopback interface and serves one request
+ * per connection.  Without one, it reads requests from stdin.  A request is a single line holding
+ * the working directory of the client followed by the arguments of an InferenceMain run, all
+ * separated by tab characters, e.g. the arguments that InferenceLauncher.infer() would pass to
+ * InferenceMain.  Relative paths among the arguments are resolved against the client's working
+ * directory (see resolvePaths).  The daemon answers each request with a single line holding the
+ * exit status of the run; the output of the run goes to the daemon's stdout and stderr.  An empty
+ * request line stops the daemon.
+ *
+ * Every request gets a fresh InferenceMain, and therefore a fresh SlotManager and ConstraintManager,
+ * InferenceMain.resetInstance clears the static state of the previous run, and InferenceOptions are
+ * reset to their defaults before the request's arguments are parsed.  A run that aborts is reported
+ * with its exit status instead of stopping the daemon.  Sharded requests are rejected, since shard
+ * workers are separate JVMs anyway.
+ *
+ * Each request is a new javac run with its own javac Context, and the Checker Framework binds the
+ * annotations read from stub files to the elements of that Context, so stub files are parsed
+ * again for every request.
+ *
+ * The daemon JVM must be started with the same bootclasspath and memory settings that
+ * InferenceLauncher.infer() uses for InferenceMain.
+ */
+public class InferenceDaemon {
+
+    public final Logger logger = Logger.getLogger(InferenceDaemon.class.getName());
+
+    public static final String ARG_SEPARATOR = "\t";
+
+    /** Exit status reported when a request fails with an exception rather than a javac error. */
+    public static final int INTERNAL_ERROR_STATUS = 2;
+
+    /** The values of the static @Option fields of InferenceOptions before any request was parsed. */
+    private final Map<Field, Object> defaultOptions = new LinkedHashMap<>();
+
+    public InferenceDaemon() {
+        for (Field field : InferenceOptions.class.getDeclaredFields()) {
+            if (field.isAnnotationPresent(Option.class)
+                    && Modifier.isStatic(field.getModifiers())
+                    && !Modifier.isFinal(field.getModifiers())) {
+                try {
+                    defaultOptions.put(field, field.get(null));
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    public static void main(String [] args) throws IOException {
+        InferenceDaemon daemon = new InferenceDaemon();
+        if (args.length == 0) {
+            daemon.serve(new BufferedReader(new InputStreamReader(System.in)), new PrintWriter(System.out, true));
+        } else {
+            daemon.listen(Integer.parseInt(args[0]));
+        }
+    }
+
+    /**
+     * Serve one request per connection on the given loopback port until an empty request is received.
+     */
+    public void listen(int port) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            logger.info("Inference daemon listening on port " + serverSocket.getLocalPort());
+
+            boolean running = true;
+            while (running) {
+                try (Socket socket = serverSocket.accept()) {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                    PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
+                    running = serveRequest(in.readLine(), out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Serve requests read line by line from in until in is exhausted or an empty request is received.
+     */
+    public void serve(BufferedReader in, PrintWriter out) throws IOException {
+        String request;
+        do {
+            request = in.readLine();
+        } while (serveRequest(request, out));
+    }
+
+    /**
+     * @return false if the daemon should stop
+     */
+    private boolean serveRequest(String request, PrintWriter out) {
+        if (request == null || request.trim().isEmpty()) {
+            return false;
+        }
+
+        final String[] fields = request.split(ARG_SEPARATOR);
+        out.println(runInference(new File(fields[0]), Arrays.copyOfRange(fields, 1, fields.length)));
+        return true;
+    }
+
+    /**
+     * Run InferenceMain on args in this JVM.
+     * @param workingDir the directory relative paths in args are relative to
+     * @return the exit status InferenceMain would have had if run in its own JVM
+     */
+    public int runInference(File workingDir, String [] args) {
+        resetOptions();
+
+        InitStatus status = InferenceOptions.init(args, false);
+        if (!status.errors.isEmpty()) {
+            status.options.print_usage(PluginUtil.join("\n", status.errors));
+            return 1;
+        }
+
+        if (ShardedInference.isSharded()) {
+            logger.severe("--shards is not supported by the inference daemon");
+            return 1;
+        }
+
+        resolvePaths(workingDir);
+
+        final InferenceMain inferenceMain = InferenceMain.resetInstance();
+        try {
+            inferenceMain.run();
+            return 0;
+
+        } catch (InferenceMain.InferenceAbortedException e) {
+            return e.getStatus();
+
+        } catch (Throwable e) {
+            logger.log(Level.SEVERE, "Inference request failed", e);
+            return INTERNAL_ERROR_STATUS;
+        }
+    }
+
+    /**
+     * The daemon's working directory is not the client's, so make every path in InferenceOptions
+     * absolute, including the paths of the javac options that take one.
+     */
+    private void resolvePaths(File workingDir) {
+        InferenceOptions.jaifFile = resolve(workingDir, InferenceOptions.jaifFile);
+        InferenceOptions.incrementalCache = resolve(workingDir, InferenceOptions.incrementalCache);
+        InferenceOptions.constraintSpillFile = resolve(workingDir, InferenceOptions.constraintSpillFile);
+
+        if (InferenceOptions.javaFiles != null) {
+            for (int i = 0; i < InferenceOptions.javaFiles.length; i++) {
+                InferenceOptions.javaFiles[i] = resolve(workingDir, InferenceOptions.javaFiles[i]);
+            }
+        }
+
+        if (InferenceOptions.javacOptions != null) {
+            final List<String> javacOptions = new ArrayList<>(InferenceOptions.javacOptions.size());
+            boolean pathArgument = false;
+            for (String option : InferenceOptions.javacOptions) {
+                if (pathArgument) {
+                    javacOptions.add(resolvePathList(workingDir, option));
+                    pathArgument = false;
+                    continue;
+                }
+
+                String resolved = option;
+                for (String prefix : JAVAC_PATH_PREFIXES) {
+                    if (option.startsWith(prefix) && option.length() > prefix.length()) {
+                        resolved = prefix + resolvePathList(workingDir, option.substring(prefix.length()));
+                        break;
+                    }
+                }
+                javacOptions.add(resolved);
+                pathArgument = JAVAC_PATH_OPTIONS.contains(option);
+            }
+            InferenceOptions.javacOptions = javacOptions;
+        }
+    }
+
+    /** javac options whose next argument is a path or a list of paths */
+    private static final Set<String> JAVAC_PATH_OPTIONS = new HashSet<>(Arrays.asList(
+            "-d", "-s", "-h", "-cp", "-classpath", "-sourcepath", "-bootclasspath", "-extdirs",
+            "-endorseddirs", "-processorpath"));
+
+    /** javac options with a path or a list of paths attached */
+    private static final List<String> JAVAC_PATH_PREFIXES = Arrays.asList(
+            "-Xbootclasspath/p:", "-Xbootclasspath/a:", "-Xbootclasspath:", "-Astubs=");
+
+    private static String resolvePathList(File workingDir, String paths) {
+        final String[] split = paths.split(File.pathSeparator, -1);
+        for (int i = 0; i < split.length; i++) {
+            split[i] = resolve(workingDir, split[i]);
+        }
+        return PluginUtil.join(File.pathSeparator, split);
+    }
+
+    private static String resolve(File workingDir, String path) {
+        if (path == null || path.isEmpty() || new File(path).isAbsolute()) {
+            return path;
+        }
+        return new File(workingDir, path).getPath();
+    }
+
+    private void resetOptions() {
+        for (Map.Entry<Field, Object> entry : defaultOptions.entrySet()) {
+            try {
+                entry.getKey().set(null, entry.getValue());
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -10,8 +10,13 @@ import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
@@ -164,17 +169,34 @@ public class InferenceLauncher {
         argList.addAll(
                 Arrays.asList(
                         "-ea", "-ea:checkers.inference...",
-                        "checkers.inference.InferenceMain",
-                        "--checker", InferenceOptions.checker)
+                        "checkers.inference.InferenceMain")
         );
+        final int inferenceMainArgsStart = argList.size();
+        argList.addAll(Arrays.asList("--checker", InferenceOptions.checker));
 
         addIfNotNull("--jaifFile", InferenceOptions.jaifFile, argList);
         addIfNotNull("--logLevel", InferenceOptions.logLevel, argList);
         addIfNotNull("--solver", InferenceOptions.solver, argList);
         addIfNotNull("--solverArgs", InferenceOptions.solverArgs, argList);
         addIfNotNull("--cfArgs", InferenceOptions.cfArgs, argList);
+        addIfNotNull("--incrementalCache", InferenceOptions.incrementalCache, argList);
+        addIfNotNull("--constraintSpillFile", InferenceOptions.constraintSpillFile, argList);
 
         addIfTrue("--hacks", InferenceOptions.hacks, argList);
+        if (InferenceOptions.hackTraceSampling > 0) {
+            argList.add("--hackTraceSampling");
+            argList.add(String.valueOf(InferenceOptions.hackTraceSampling));
+        }
+        addIfTrue("--boundedMemory", InferenceOptions.boundedMemory, argList);
+        addIfTrue("--profileReport", InferenceOptions.profileReport, argList);
+        addIfTrue("--pruneSlots", InferenceOptions.pruneSlots, argList);
+        addIfTrue("--mergeEquivalentSlots", InferenceOptions.mergeEquivalentSlots, argList);
+        addIfTrue("--existentialTree", InferenceOptions.existentialTree, argList);
+
+        if (InferenceOptions.shards > 1) {
+            argList.add("--shards");
+            argList.add(String.valueOf(InferenceOptions.shards));
+        }
 
         argList.add("--");
         argList.add(getInferenceCompilationBootclassPath());
@@ -185,6 +207,20 @@ public class InferenceLauncher {
         //TODO: NEED TO HANDLE JDK
         argList.addAll(Arrays.asList(InferenceOptions.javaFiles));
 
+        if (InferenceOptions.daemonPort != null) {
+            List<String> inferenceMainArgs = argList.subList(inferenceMainArgsStart, argList.size());
+            if (InferenceOptions.printCommands) {
+                outStream.println("Sending infer request to daemon on port " + InferenceOptions.daemonPort + ":");
+                outStream.println(PluginUtil.join(" ", inferenceMainArgs));
+            }
+
+            int result = requestInference(InferenceOptions.daemonPort, inferenceMainArgs);
+            reportStatus("Inference", result, outStream);
+            outStream.flush();
+            exitOnNonZeroStatus(result);
+            return;
+        }
+
         if (InferenceOptions.printCommands) {
             outStream.println("Running infer command:");
             outStream.println(PluginUtil.join(" ", argList));
@@ -199,6 +235,34 @@ public class InferenceLauncher {
         exitOnNonZeroStatus(result);
     }
 
+    /**
+     * Send the arguments for InferenceMain to an InferenceDaemon on the given loopback port
+     * and wait for the run to finish.
+     * @return the exit status of the inference run
+     */
+    private int requestInference(int port, List<String> inferenceMainArgs) {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
+            // The daemon resolves relative paths in the arguments against our working directory
+            List<String> request = new ArrayList<>(inferenceMainArgs.size() + 1);
+            request.add(System.getProperty("user.dir"));
+            request.addAll(inferenceMainArgs);
+            out.println(PluginUtil.join(InferenceDaemon.ARG_SEPARATOR, request));
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            String response = in.readLine();
+            if (response == null) {
+                errStream.println("Inference daemon on port " + port + " closed the connection without responding.");
+                return InferenceDaemon.INTERNAL_ERROR_STATUS;
+            }
+            return Integer.parseInt(response.trim());
+
+        } catch (IOException e) {
+            errStream.println("Could not reach inference daemon on port " + port + ": " + e.getMessage());
+            return InferenceDaemon.INTERNAL_ERROR_STATUS;
+        }
+    }
+
     private void removeXmArgs(List<String> argList, int preJavacOptsSize, int postJavacOptsSize) {
         for (int i = preJavacOptsSize; i < argList.size() && i < postJavacOptsSize; /*incremented-below*/) {
             String current = argList.get(i);
@@ -2,12 +2,14 @@ package checkers.inference;
 
 import org.checkerframework.common.basetype.BaseAnnotatedTypeFactory;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -20,10 +22,13 @@ import javax.lang.model.element.AnnotationMirror;
 
 import checkers.inference.InferenceOptions.InitStatus;
 import checkers.inference.model.AnnotationLocation;
-import checkers.inference.model.Constraint;
 import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.ConstraintSink;
+import checkers.inference.model.Slot;
 import checkers.inference.model.VariableSlot;
+import checkers.inference.model.serialization.SpillingConstraintSink;
 import checkers.inference.qual.VarAnnot;
+import checkers.inference.util.InferenceProfiler;
 import checkers.inference.util.InferenceUtil;
 import checkers.inference.util.JaifBuilder;
 
@@ -97,12 +102,31 @@ public class InferenceMain {
     // Hold the results of solving.
     private InferenceSolution solverResult;
 
+    // Non-null while solving with --pruneSlots.
+    private SlotCompactor slotCompactor;
+
     // Turn off some of the checks so that more bodies of code pass.
     // Eventually we will get rid of this.
     private boolean hackMode;
 
+    // Release per compilation unit caches when moving on to the next compilation unit.
+    private boolean boundedMemory;
+
     private ResultHandler resultHandler;
 
+    // The arguments this InferenceMain was started with, needed to start shard workers.
+    private String[] commandLineArgs = new String[0];
+
+    // Non-null when running with --incrementalCache.
+    private IncrementalStore incrementalStore;
+
+    // Measures nothing unless --profileReport is given.
+    private final InferenceProfiler profiler =
+            InferenceOptions.profileReport ? new InferenceProfiler() : InferenceProfiler.DISABLED;
+
+    // Set if the run was aborted from within the Checker Framework.
+    private InferenceAbortedException checkerFrameworkAbort;
+
     public void setResultHandler(ResultHandler resultHandler) {
         this.resultHandler = resultHandler;
     }
@@ -112,7 +136,12 @@ public class InferenceMain {
         status.validateOrExit();
 
         InferenceMain inferenceMain = new InferenceMain();
-        inferenceMain.run();
+        inferenceMain.commandLineArgs = args;
+        try {
+            inferenceMain.run();
+        } catch (InferenceAbortedException e) {
+            System.exit(e.getStatus());
+        }
     }
 
     /**
@@ -127,8 +156,14 @@ public class InferenceMain {
         resultHandler = new DefaultResultHandler(logger);
     }
 
+    /**
+     * Replace the InferenceMain instance and reset the static state left behind by a previous
+     * run in the same JVM, see InferenceDaemon.
+     */
     public static InferenceMain resetInstance() {
         inferenceMainInstance = null;
+        HackSite.reset();
+        ShardedInference.reset();
         inferenceMainInstance = new InferenceMain();
         return inferenceMainInstance;
     }
@@ -139,10 +174,61 @@ public class InferenceMain {
     public void run() {
         logger.finer("Starting InferenceMain");
 
+        if (ShardedInference.isWorker()) {
+            startCheckerFramework();
+            ShardedInference.writeShardFile(slotManager, constraintManager);
+            return;
+        }
+
+        ShardedInference shardedInference = null;
+        if (ShardedInference.isSharded()) {
+            shardedInference = new ShardedInference(commandLineArgs);
+            shardedInference.launchWorkers();
+        }
+
+        if (InferenceOptions.incrementalCache != null) {
+            incrementalStore = new IncrementalStore(new File(InferenceOptions.incrementalCache));
+            incrementalStore.open(InferenceOptions.javaFiles);
+        }
+
         // Start up javac
         startCheckerFramework();
+
+        InferenceProfiler.Timer mergeTimer = profiler.startPhase("merge");
+        if (shardedInference != null) {
+            shardedInference.mergeWorkerShards(getSlotManager(), getConstraintManager(),
+                    inferenceChecker.getProcessingEnvironment());
+        }
+
+        if (incrementalStore != null) {
+            incrementalStore.restoreCachedUnits(getSlotManager(), getConstraintManager(),
+                    inferenceChecker.getProcessingEnvironment());
+            incrementalStore.save(getSlotManager());
+        }
+        mergeTimer.stop();
+
         solve();
         writeJaif();
+
+        if (hackMode) {
+            logger.info(HackSite.summary());
+        }
+
+        if (InferenceOptions.profileReport) {
+            writeProfileReport();
+        }
+    }
+
+    /**
+     * Write the timings recorded by the profiler next to the jaif file.
+     */
+    private void writeProfileReport() {
+        final String reportFile = InferenceOptions.jaifFile.replaceFirst("\\.jaif$", "") + ".profile.json";
+        try (PrintWriter writer = new PrintWriter(new FileOutputStream(reportFile))) {
+            profiler.writeReport(writer);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Failed to write out profile report!", e);
+        }
     }
 
     /**
@@ -169,6 +255,11 @@ public class InferenceMain {
 
         if (InferenceOptions.hacks) {
             hackMode = true;
+            HackSite.setSampleRate(InferenceOptions.hackTraceSampling);
+        }
+
+        if (InferenceOptions.boundedMemory) {
+            boundedMemory = true;
         }
 
         if (InferenceOptions.javacOptions != null) {
@@ -182,9 +273,19 @@ public class InferenceMain {
         logger.fine(String.format("Starting checker framework with options: %s", checkerFrameworkArgs));
 
         StringWriter javacoutput = new StringWriter();
+        InferenceProfiler.Timer javacTimer = profiler.startPhase("javac");
+        profiler.startAttribution();
         boolean success = CheckerFrameworkUtil.invokeCheckerFramework(checkerFrameworkArgs.toArray(new String[checkerFrameworkArgs.size()]),
                 new PrintWriter(javacoutput, true));
+        profiler.endAttribution();
+        if (constraintManager != null) {
+            constraintManager.resolvePendingLocations();
+        }
+        javacTimer.stop();
 
+        if (checkerFrameworkAbort != null) {
+            throw checkerFrameworkAbort;
+        }
         resultHandler.handleCompilerResult(success, javacoutput.toString());
     }
 
@@ -205,6 +306,7 @@ public class InferenceMain {
      * The output file can be configured by the command-line argument jaiffile.
      */
     private void writeJaif() {
+        InferenceProfiler.Timer jaifTimer = profiler.startPhase("jaif");
         try (PrintWriter writer
                 = new PrintWriter(new FileOutputStream(InferenceOptions.jaifFile))) {
 
@@ -245,29 +347,67 @@ public class InferenceMain {
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Failed to write out jaif file!", e);
         }
+        jaifTimer.stop();
     }
 
     /**
      * Solve the generated constraints using the solver specified on the command line.
      */
     private void solve() {
-        //TODO: PERHAPS ALLOW SOLVERS TO DECIDE IF/HOW THEY WANT CONSTRAINTS NORMALIZED
-
-        final ConstraintNormalizer constraintNormalizer = new ConstraintNormalizer();
-        Set<Constraint> normalizedConstraints = constraintNormalizer.normalize(constraintManager.getConstraints());
+        final InferenceSolver solver = InferenceOptions.solver != null ? getSolver() : null;
+
+        InferenceProfiler.Timer normalizationTimer = profiler.startPhase("normalization");
+        final ConstraintNormalizer constraintNormalizer = new ConstraintNormalizer(!InferenceOptions.existentialTree);
+        getRealChecker().configureNormalization(constraintNormalizer, solver);
+        EquivalentSlotMerger slotMerger = null;
+        if (InferenceOptions.mergeEquivalentSlots) {
+            if (solver instanceof SoftConstraintSolver) {
+                // Merging would make the soft equalities between merged variables hard
+                logger.warning("Ignoring --mergeEquivalentSlots, " + InferenceOptions.solver
+                        + " treats constraints as soft clauses");
+            } else {
+                slotMerger = new EquivalentSlotMerger(slotManager, constraintManager);
+                constraintNormalizer.addPass(slotMerger);
+            }
+        }
+        final ConstraintSink normalizedConstraints;
+        if (InferenceOptions.constraintSpillFile != null) {
+            normalizedConstraints = constraintNormalizer.normalize(constraintManager.getConstraints(),
+                    new SpillingConstraintSink(new File(InferenceOptions.constraintSpillFile + ".normalized"),
+                            slotManager, constraintManager));
+        } else {
+            normalizedConstraints = constraintNormalizer.normalize(constraintManager.getConstraints());
+        }
+        normalizationTimer.stop();
+        // Spilled duplicates are only counted once the constraints have been iterated
+        logger.fine(constraintManager.getDropSummary());
 
         // TODO: Support multiple solvers or serialize before or after solving
-        // TODO: Prune out unneeded variables
         // TODO: Options to type-check after this.
 
-        if (InferenceOptions.solver != null) {
-            InferenceSolver solver = getSolver();
+        if (solver != null) {
+            Collection<Slot> slots = slotManager.getSlots();
+            if (InferenceOptions.pruneSlots) {
+                InferenceProfiler.Timer pruningTimer = profiler.startPhase("pruning");
+                slotCompactor = new SlotCompactor(normalizedConstraints);
+                slots = slotCompactor.getSlots();
+                pruningTimer.stop();
+                logger.fine("Pruned slots: " + slotManager.getNumberOfSlots() + " slots, "
+                        + slotCompactor.getNumberOfVariables() + " constrained variables");
+            }
+
+            InferenceProfiler.Timer solverTimer = profiler.startPhase("solving");
             this.solverResult = solver.solve(
                     parseSolverArgs(),
-                    slotManager.getSlots(),
+                    slots,
                     normalizedConstraints,
                     getRealTypeFactory().getQualifierHierarchy(),
                     inferenceChecker.getProcessingEnvironment());
+            solverTimer.stop();
+
+            if (slotMerger != null && solverResult != null) {
+                solverResult = slotMerger.expand(solverResult);
+            }
         }
     }
 
@@ -293,7 +433,9 @@ public class InferenceMain {
                 logger.finer(String.format("Created real checker: %s", realChecker));
             } catch (Throwable e) {
               logger.log(Level.SEVERE, "Error instantiating checker class \"" + InferenceOptions.checker + "\".", e);
-              System.exit(5);
+              // javac reports exceptions of annotation processors as a compiler error, see startCheckerFramework
+              checkerFrameworkAbort = new InferenceAbortedException(5);
+              throw checkerFrameworkAbort;
           }
         }
         return realChecker;
@@ -325,6 +467,29 @@ public class InferenceMain {
         return realTypeFactory;
     }
 
+    public boolean isBoundedMemory() {
+        return boundedMemory;
+    }
+
+    public InferenceProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * @return the store of per compilation unit constraints, or null if --incrementalCache is not used
+     */
+    public IncrementalStore getIncrementalStore() {
+        return incrementalStore;
+    }
+
+    /**
+     * @return the renumbering of the variables handed to the solver, or null if the
+     * solver sees the ids of the SlotManager (i.e. --pruneSlots is not given)
+     */
+    public SlotCompactor getSlotCompactor() {
+        return slotCompactor;
+    }
+
     public SlotManager getSlotManager() {
         if (slotManager == null ) {
             slotManager = new DefaultSlotManager(inferenceChecker.getProcessingEnvironment(),
@@ -334,6 +499,14 @@ public class InferenceMain {
         return slotManager;
     }
 
+    /**
+     * Use slotManager rather than one created for the InferenceChecker, for tests that run
+     * without javac.
+     */
+    void setSlotManager(SlotManager slotManager) {
+        this.slotManager = slotManager;
+    }
+
     protected InferenceSolver getSolver() {
         try {
             InferenceSolver solver = (InferenceSolver) Class.forName(
@@ -342,8 +515,7 @@ public class InferenceMain {
             return solver;
         } catch (Throwable e) {
             logger.log(Level.SEVERE, "Error instantiating solver class \"" + InferenceOptions.solver + "\".", e);
-            System.exit(5);
-            return null; // Dead code
+            throw new InferenceAbortedException(5);
         }
     }
 
@@ -394,6 +566,10 @@ public class InferenceMain {
 
         if (constraintManager == null) {
             this.constraintManager = new ConstraintManager();
+            if (InferenceOptions.constraintSpillFile != null) {
+                constraintManager.setConstraintSink(new SpillingConstraintSink(
+                        new File(InferenceOptions.constraintSpillFile), getSlotManager(), constraintManager));
+            }
         }
 
         return constraintManager;
@@ -407,22 +583,25 @@ public class InferenceMain {
         this.performingFlow = performingFlow;
     }
 
-    public static boolean isHackMode() {
-        return isHackMode(true);
+    /**
+     * @return true if running with --hacks, without recording a use of any hack
+     */
+    public static boolean isHackModeEnabled() {
+        // getInstance is null during type checking.
+        return getInstance() != null && getInstance().hackMode;
+    }
+
+    public static boolean isHackMode(HackSite site) {
+        return isHackMode(site, true);
     }
 
     /**
+     * @param site the hack, its use is counted if this method returns true
      * @param condition if some condition is true, do some sort of hack
      */
-    public static boolean isHackMode(boolean condition) {
-        // getInstance is null during type checking.
-        if (getInstance() != null && getInstance().hackMode && condition) {
-            StackTraceElement[] traces = Thread.currentThread().getStackTrace();
-            StackTraceElement hackLocation = traces[2];
-            if (traces[2].getMethodName().equals("isHackMode")) {
-                hackLocation = traces[3];
-            }
-            getInstance().logger.warning("Encountered hack: " + hackLocation);
+    public static boolean isHackMode(HackSite site, boolean condition) {
+        if (condition && isHackModeEnabled()) {
+            site.hit();
             return true;
         } else {
             return false;
@@ -446,8 +625,27 @@ public class InferenceMain {
             if (!success) {
                 logger.severe("Error return code from javac! Quitting.");
                 logger.info(javacOutStr);
-                System.exit(1);
+                throw new InferenceAbortedException(1);
             }
         }
     }
+
+    /**
+     * Thrown to stop an inference run that cannot continue.  main exits the JVM with the status,
+     * InferenceDaemon reports it as the status of the request.
+     */
+    public static class InferenceAbortedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        public InferenceAbortedException(int status) {
+            super("Inference aborted with exit status " + status);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
 }
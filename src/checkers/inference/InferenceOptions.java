@@ -17,6 +17,7 @@ import ostrusted.OsTrustedChecker;
 import plume.Option;
 import plume.OptionGroup;
 import plume.Options;
+import plume.Options.ArgsException;
 import sparta.checkers.IFlowSinkChecker;
 import sparta.checkers.IFlowSourceChecker;
 import sparta.checkers.propagation.IFlowSinkSolver;
@@ -49,6 +50,9 @@ public class InferenceOptions {
     @Option("Should we log certain exceptions rather than crash")
     public static boolean hacks;
 
+    @Option("[n] With --hacks, log a stack trace for the first and every n-th use of each hack")
+    public static int hackTraceSampling = 0;
+
     /**
      * The type system to use for checker, solver, and related command-line
      * options.  If you use this option, all required command-line
@@ -78,9 +82,43 @@ public class InferenceOptions {
     @Option("Args to pass to solver, in the format key1=value,key2=value")
     public static String solverArgs;
 
+    @Option("Before solving, drop slots that appear in no constraint and renumber the remaining variables densely.")
+    public static boolean pruneSlots;
+
+    @Option("Before solving, replace variables that are equal or on a cycle of subtype constraints by one representative variable.  Ignored for MAX-SAT solvers.")
+    public static boolean mergeEquivalentSlots;
+
+    @Option("Encode existential variables by enumerating every combination of the existential chains in a constraint, instead of one effective variable per existential slot.")
+    public static boolean existentialTree;
+
     @Option("Args to pass to checker framework, in the format -Axxx=xxx -Ayyy=yyy,z=z")
     public static String cfArgs;
 
+    @Option("Number of processes used to generate constraints.  Source files are split round-robin between them.")
+    public static int shards = 1;
+
+    /** Set by InferenceMain on the worker processes it starts, see ShardedInference */
+    @Option("[index] The shard this process generates constraints for, 0 is the shard that solves.")
+    public static int shardIndex = 0;
+
+    @Option("[path] The file to which a worker shard writes its slots and constraints.")
+    public static String shardFile;
+
+    @Option("[dir] Directory in which slots and constraints are kept per source file, so that unchanged files are not revisited on the next run.")
+    public static String incrementalCache;
+
+    @Option("Release tree caches after each compilation unit so that memory grows with the largest unit rather than the whole program.")
+    public static boolean boundedMemory;
+
+    @Option("Write per-phase and per-compilation-unit timings to a JSON file next to the jaif file.")
+    public static boolean profileReport;
+
+    @Option("[path] Append generated constraints to this file instead of keeping them in memory until solving.")
+    public static String constraintSpillFile;
+
+    @Option("[port] Send inference requests to an InferenceDaemon listening on this local port instead of starting a new JVM.")
+    public static Integer daemonPort;
+
     /** If jsonFile is specified this will be set to the JsonSerializerSolver */
     @Option("The JSON file to which constraints should be dumped.  This field is mutually exclusive with solver.")
     public static String jsonFile;
@@ -136,7 +174,16 @@ public class InferenceOptions {
     public static InitStatus init(String [] args, boolean requireMode) {
         List<String> errors = new ArrayList<>();
         Options options = new Options("inference [options]", InferenceOptions.class);
-        String [] otherArgs = options.parse_or_usage(args);
+
+        // Not parse_or_usage, which exits the JVM on a bad option and would take the
+        // InferenceDaemon down with it.  Callers report the errors instead.
+        String [] otherArgs;
+        try {
+            otherArgs = options.parse(args);
+        } catch (ArgsException e) {
+            errors.add(e.getMessage());
+            return new InitStatus(options, errors, false);
+        }
 
         int startOfJavaFilesIndex = -1;
         for (int i = 0; i < otherArgs.length; i++) {
@@ -186,9 +233,9 @@ public class InferenceOptions {
                 modeEnum = Mode.valueOf(InferenceOptions.mode);
 
             } catch (IllegalArgumentException iexc) {
-                System.out.println("Could not recognize mode: " + InferenceOptions.mode + "\n"
+                errors.add("Could not recognize mode: " + InferenceOptions.mode + "\n"
                         + "valid modes: " + PluginUtil.join(", ", Mode.values()));
-                System.exit(1);
+                return new InitStatus(options, errors, false);
             }
 
             if (modeEnum != Mode.TYPECHECK) {
@@ -223,6 +270,10 @@ public class InferenceOptions {
             }
         }
 
+        if (incrementalCache != null && shards > 1) {
+            errors.add("You may specify EITHER --incrementalCache or --shards but not both!");
+        }
+
         return new InitStatus(options, errors, help);
     }
 
@@ -29,6 +29,11 @@ import checkers.inference.util.InferenceUtil;
  * relationship (as described by the method signature).
  */
 public class InferenceQualifierHierarchy extends MultiGraphQualifierHierarchy {
+
+    private static final HackSite IS_VAR_ANNOT_HACK = HackSite.register("InferenceQualifierHierarchy.isVarAnnot");
+    private static final HackSite FIND_VAR_ANNOT_HACK = HackSite.register("InferenceQualifierHierarchy.findVarAnnot");
+    private static final HackSite IS_SUBTYPE_HACK = HackSite.register("InferenceQualifierHierarchy.isSubtype");
+    private static final HackSite LEAST_UPPER_BOUND_HACK = HackSite.register("InferenceQualifierHierarchy.leastUpperBound");
     private final InferenceMain inferenceMain = InferenceMain.getInstance();
     private final AnnotationMirror varAnnot;
 
@@ -110,7 +115,7 @@ public class InferenceQualifierHierarchy extends MultiGraphQualifierHierarchy {
      * @return true if anno is an instance of @VarAnnot
      */
     public static boolean isVarAnnot(AnnotationMirror anno) {
-        if (InferenceMain.isHackMode(anno == null)) {
+        if (InferenceMain.isHackMode(IS_VAR_ANNOT_HACK, anno == null)) {
             return false;
         }
 
@@ -170,7 +175,7 @@ public class InferenceQualifierHierarchy extends MultiGraphQualifierHierarchy {
      */
     public static AnnotationMirror findVarAnnot(final Iterable<? extends AnnotationMirror> annos) {
         for (AnnotationMirror anno : annos) {
-            if (InferenceMain.isHackMode(anno == null)) {
+            if (InferenceMain.isHackMode(FIND_VAR_ANNOT_HACK, anno == null)) {
                 continue;
             }
 
@@ -189,7 +194,7 @@ public class InferenceQualifierHierarchy extends MultiGraphQualifierHierarchy {
         final AnnotationMirror rhsVarAnnot = findVarAnnot(rhsAnnos);
         final AnnotationMirror lhsVarAnnot = findVarAnnot(lhsAnnos);
 
-        if (InferenceMain.isHackMode((rhsVarAnnot == null || lhsAnnos == null))) {
+        if (InferenceMain.isHackMode(IS_SUBTYPE_HACK, (rhsVarAnnot == null || lhsAnnos == null))) {
                 InferenceMain.getInstance().logger.warning(
                     "Hack:InferenceQualifierHierarchy:165:\n"
                   + "    rhs=" + PluginUtil.join(", ", rhsAnnos) + "\n"
@@ -228,7 +233,7 @@ public class InferenceQualifierHierarchy extends MultiGraphQualifierHierarchy {
 
     @Override
     public AnnotationMirror leastUpperBound(final AnnotationMirror a1, final AnnotationMirror a2) {
-        if (InferenceMain.isHackMode( (a1 == null || a2 == null))) {
+        if (InferenceMain.isHackMode(LEAST_UPPER_BOUND_HACK, (a1 == null || a2 == null))) {
             InferenceMain.getInstance().logger.warning(
                     "Hack:InferenceQualifierHierarchy:204\n"
                   + "a1=" + a1 + "\n"
@@ -252,7 +257,7 @@ public class InferenceQualifierHierarchy extends MultiGraphQualifierHierarchy {
         final Slot slot1 = slotMgr.getSlot(a1);
         final Slot slot2 = slotMgr.getSlot(a2);
         if (slot1 != slot2) {
-            final CombVariableSlot mergeVariableSlot = slotMgr.createCombVariableSlot(slot1, slot2);
+            final CombVariableSlot mergeVariableSlot = slotMgr.createMergeVariableSlot(slot1, slot2);
             constraintMgr.addSubtypeConstraint(slot1, mergeVariableSlot);
             constraintMgr.addSubtypeConstraint(slot2, mergeVariableSlot);
 
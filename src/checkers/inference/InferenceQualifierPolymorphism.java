@@ -21,6 +21,8 @@ import checkers.inference.model.VariableSlot;
  */
 public class InferenceQualifierPolymorphism {
 
+    private static final HackSite SCAN_HACK = HackSite.register("InferenceQualifierPolymorphism.scan");
+
     private final VariableAnnotator variableAnnotator;
     private final AnnotationMirror varAnnot;
     private final SlotManager slotManager;
@@ -72,7 +74,7 @@ public class InferenceQualifierPolymorphism {
                 AnnotationMirror varSlot = type.getAnnotationInHierarchy(varAnnot);
                 if (varSlot != null) {
                     VariableSlot var = (VariableSlot) slotManager.getSlot(varSlot);
-                    if (InferenceMain.isHackMode(var == null)) {
+                    if (InferenceMain.isHackMode(SCAN_HACK, var == null)) {
                     } else if (var.isConstant()) {
                         AnnotationMirror constant = ((ConstantSlot)var).getValue();
                         if (InferenceQualifierHierarchy.isPolymorphic(constant)) {
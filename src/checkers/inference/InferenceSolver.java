@@ -18,13 +18,14 @@ public interface InferenceSolver {
      *
      * @param configuration String key value pairs to configure the solver
      * @param slots List of all slots used in inference
-     * @param constraints List of Constraints to be satisfied
+     * @param constraints Constraints to be satisfied, they may not be in memory (see ConstraintSink)
+     *                    and can be iterated more than once
      * @param qualHierarchy Target QualifierHierarchy
      * @return an InferenceSolution for the given slots/constraints or NULL if this solver does something besides solve
      */
     InferenceSolution solve(Map<String, String> configuration,
             Collection<Slot> slots,
-            Collection<Constraint> constraints,
+            Iterable<Constraint> constraints,
             QualifierHierarchy qualHierarchy,
             ProcessingEnvironment processingEnvironment);
 }
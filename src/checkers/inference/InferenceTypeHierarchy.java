@@ -23,6 +23,8 @@ import checkers.inference.model.Slot;
  *  the correct constraints.
  */
 public class InferenceTypeHierarchy extends DefaultTypeHierarchy {
+
+    private static final HackSite ARE_PRIME_ANNOS_EQUAL_HACK = HackSite.register("InferenceTypeHierarchy.arePrimeAnnosEqual");
     private final AnnotationMirror varAnnot;
     //TODO: Think this through, add any missing constraints
 
@@ -76,7 +78,7 @@ class InferenceEqualityComparer extends StructuralEqualityComparer {
         final AnnotationMirror varAnnot2 = type2.getAnnotationInHierarchy(varAnnot);
 
         // TODO: HackMode
-        if (InferenceMain.isHackMode((varAnnot1 == null || varAnnot2 == null))) {
+        if (InferenceMain.isHackMode(ARE_PRIME_ANNOS_EQUAL_HACK, (varAnnot1 == null || varAnnot2 == null))) {
             InferenceMain.getInstance().logger.warning(
                 "Hack:InferenceTYpeHierarchy:66\n"
               + "type1=" + type1 + "\n"
@@ -43,6 +43,9 @@ import javax.lang.model.util.Types;
  */
 public class InferenceTypeVariableSubstitutor extends TypeVariableSubstitutor {
 
+    private static final HackSite SUBSTITUTE_TYPE_VARIABLE_HACK = HackSite.register("InferenceTypeVariableSubstitutor.substituteTypeVariable");
+    private static final HackSite SUBSTITUTE_TYPE_VARIABLE_HACK_2 = HackSite.register("InferenceTypeVariableSubstitutor.substituteTypeVariable #2");
+
     private final SlotManager slotManager;
     private final ExistentialVariableInserter existentialInserter;
     private final Types types;
@@ -76,7 +79,7 @@ public class InferenceTypeVariableSubstitutor extends TypeVariableSubstitutor {
                         final ExistentialVariableSlot slot = slotManager.createExistentialVariableSlot(potentialSlot, alternative);
                         argument.replaceAnnotation(slotManager.getAnnotation(slot));
                     } else {
-                        if (!InferenceMain.isHackMode()) {
+                        if (!InferenceMain.isHackMode(SUBSTITUTE_TYPE_VARIABLE_HACK)) {
                             ErrorReporter.errorAbort("Null alternative: " + argument + ", use=" + use);
                         }
                     }
@@ -111,7 +114,7 @@ public class InferenceTypeVariableSubstitutor extends TypeVariableSubstitutor {
 
             if (!types.isSameType(use.getUnderlyingType(), argument.getUnderlyingType())) {
 
-                if (!InferenceMain.isHackMode()) {
+                if (!InferenceMain.isHackMode(SUBSTITUTE_TYPE_VARIABLE_HACK_2)) {
                     ErrorReporter.errorAbort("Expected ExistentialTypeVariable to substitute:\n"
                                     + "use=" + use + "\n"
                                     + "argument=" + argument + "\n"
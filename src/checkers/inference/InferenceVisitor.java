@@ -67,6 +67,11 @@ public class InferenceVisitor<Checker extends InferenceChecker,
         Factory extends BaseAnnotatedTypeFactory>
         extends BaseTypeVisitor<Factory> {
 
+    private static final HackSite EFFECTIVE_IS_HACK = HackSite.register("InferenceVisitor.effectiveIs");
+    private static final HackSite MAYBE_ADD_REFINEMENT_VARIABLE_CONSTRAINTS_HACK = HackSite.register("InferenceVisitor.maybeAddRefinementVariableConstraints");
+    private static final HackSite MAYBE_ADD_REFINEMENT_VARIABLE_CONSTRAINTS_HACK_2 = HackSite.register("InferenceVisitor.maybeAddRefinementVariableConstraints #2");
+    private static final HackSite MAYBE_ADD_REFINEMENT_VARIABLE_CONSTRAINTS_HACK_3 = HackSite.register("InferenceVisitor.maybeAddRefinementVariableConstraints #3");
+
     private static final Logger logger = Logger.getLogger(InferenceVisitor.class.getName());
 
     /* One design alternative would have been to use two separate subclasses instead of the boolean.
@@ -173,16 +178,16 @@ public class InferenceVisitor<Checker extends InferenceChecker,
         if (infer) {
             AnnotationMirror varAnnot = ((InferenceAnnotatedTypeFactory) atypeFactory).getVarAnnot();
             return AnnotatedTypes.findEffectiveAnnotationInHierarchy(atypeFactory.getQualifierHierarchy(), type,
-                    varAnnot, InferenceMain.isHackMode());
+                    varAnnot, InferenceMain.isHackModeEnabled());
         }
 
         return AnnotatedTypes.findEffectiveAnnotationInHierarchy(atypeFactory.getQualifierHierarchy(), type, target,
-                InferenceMain.isHackMode());
+                InferenceMain.isHackModeEnabled());
     }
 
     public void effectiveIs(AnnotatedTypeMirror ty, AnnotationMirror mod, String msgkey, Tree node) {
         AnnotationMirror effective = findEffectiveAnnotation(ty, mod);
-        if (InferenceMain.isHackMode(effective == null)) {
+        if (InferenceMain.isHackMode(EFFECTIVE_IS_HACK, effective == null)) {
             return;
         }
 
@@ -609,7 +614,7 @@ public class InferenceVisitor<Checker extends InferenceChecker,
                     varLowerBoundAtm = InferenceUtil.findLowerBoundType(varTypeTv);
 
                 } catch(Throwable exc) {
-                    if (InferenceMain.isHackMode()) {
+                    if (InferenceMain.isHackMode(MAYBE_ADD_REFINEMENT_VARIABLE_CONSTRAINTS_HACK)) {
                         return false;
                     } else {
                         throw exc;
@@ -627,7 +632,7 @@ public class InferenceVisitor<Checker extends InferenceChecker,
                         valUpperBoundAtm = InferenceUtil.findUpperBoundType(valueTypeTv);
                         valLowerBoundAtm = InferenceUtil.findLowerBoundType(valueTypeTv);
                     } catch(Throwable exc) {
-                        if (InferenceMain.isHackMode()) {
+                        if (InferenceMain.isHackMode(MAYBE_ADD_REFINEMENT_VARIABLE_CONSTRAINTS_HACK_2)) {
                             return false;
                         } else {
                             throw exc;
@@ -646,7 +651,7 @@ public class InferenceVisitor<Checker extends InferenceChecker,
                 //TODO: For now do nothing but we should be doing some refinement
 
             } else {
-                if (!InferenceMain.isHackMode()) {
+                if (!InferenceMain.isHackMode(MAYBE_ADD_REFINEMENT_VARIABLE_CONSTRAINTS_HACK_3)) {
                     ErrorReporter.errorAbort("Unexpected assignment to type variable"); //TODO: Either more detail, or remove because of type args?
                     //TODO: OR A DIFFERENT SET OF CONSTRAINTS?
                 }
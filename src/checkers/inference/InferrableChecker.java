@@ -92,4 +92,14 @@ public interface InferrableChecker {
      * @return true if should insert annotations of main modifier of local variables
      */
     boolean isInsertMainModOfLocalVar();
+
+    /**
+     * Add the normalization passes this type system needs to normalizer, which holds the
+     * default passes.  Called before solving.
+     *
+     * @param normalizer the normalizer that will normalize the generated constraints
+     * @param solver the solver that will receive the normalized constraints, null if the
+     *               constraints are not solved
+     */
+    void configureNormalization(ConstraintNormalizer normalizer, InferenceSolver solver);
 }
\ No newline at end of file
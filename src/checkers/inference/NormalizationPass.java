@@ -0,0 +1,41 @@
+package checkers.inference;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import checkers.inference.model.Constraint;
+
+/**
+ * A pass of the ConstraintNormalizer.  Passes run in order and constraints are streamed through
+ * them one at a time: a constraint that a pass does not remove is handed to the next pass.  Once
+ * every constraint has been seen, finish is called and the constraints it returns are streamed
+ * through the remaining passes.
+ *
+ * Type systems add their own passes in InferrableChecker.configureNormalization.
+ */
+public abstract class NormalizationPass {
+
+    private final String name;
+
+    protected NormalizationPass(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true if this pass removes constraint, e.g. because it is replaced by the
+     * constraints returned from finish
+     */
+    public abstract boolean accept(Constraint constraint);
+
+    /**
+     * Called after accept has been called for every constraint.
+     * @return constraints to add to the normalized constraints
+     */
+    public Collection<Constraint> finish() {
+        return Collections.emptyList();
+    }
+}
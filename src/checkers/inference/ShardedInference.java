@@ -0,0 +1,199 @@
+package checkers.inference;
+
+import org.checkerframework.framework.util.PluginUtil;
+import org.checkerframework.javacutil.ErrorReporter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.serialization.SlotTableDeserializer;
+import checkers.inference.model.serialization.SlotTableSerializer;
+
+import com.sun.source.tree.CompilationUnitTree;
+
+/**
+ * Splits constraint generation over several JVMs.
+ *
+ * When --shards N is greater than 1, the InferenceMain started by the user becomes shard 0.
+ * It launches N - 1 worker InferenceMains (shards 1 .. N-1) with the same arguments before
+ * running javac itself.  Every shard compiles all source files, since attribution needs them,
+ * but InferenceChecker only generates constraints for the compilation units of its own shard.
+ * Source files are assigned to shards round-robin in command-line order.
+ *
+ * Workers write their slots and constraints to a shard file (see SlotTableSerializer) instead
+ * of solving.  Once its own javac run has finished, shard 0 merges the shard files in shard order
+ * into its SlotManager and ConstraintManager.  VariableSlots with the same AnnotationLocation are
+ * unified during the merge, so declarations visited by more than one shard are solved as one
+ * variable; all other slots are renumbered into shard 0's id space.  For a given set of files
+ * and shard count the merged ids are therefore deterministic.
+ */
+public class ShardedInference {
+
+    public final Logger logger = Logger.getLogger(ShardedInference.class.getName());
+
+    /** The canonical paths of the source files in the current shard, computed lazily. */
+    private static Set<String> currentShardFiles;
+
+    private final String[] inferenceMainArgs;
+    private final List<Process> workers = new ArrayList<>();
+    private final List<File> shardFiles = new ArrayList<>();
+
+    /**
+     * @param inferenceMainArgs the arguments InferenceMain was started with, they are passed on to workers
+     */
+    public ShardedInference(String[] inferenceMainArgs) {
+        this.inferenceMainArgs = inferenceMainArgs;
+    }
+
+    public static boolean isSharded() {
+        return InferenceOptions.shards > 1;
+    }
+
+    public static boolean isWorker() {
+        return isSharded() && InferenceOptions.shardIndex > 0;
+    }
+
+    /**
+     * @return true if constraints should be generated for root in this process
+     */
+    public static boolean isInCurrentShard(CompilationUnitTree root) {
+        if (!isSharded() || InferenceOptions.javaFiles == null) {
+            return true;
+        }
+
+        if (currentShardFiles == null) {
+            Set<String> files = new HashSet<>();
+            for (int i = InferenceOptions.shardIndex; i < InferenceOptions.javaFiles.length; i += InferenceOptions.shards) {
+                files.add(canonicalPath(new File(InferenceOptions.javaFiles[i])));
+            }
+            currentShardFiles = files;
+        }
+
+        return currentShardFiles.contains(canonicalPath(new File(root.getSourceFile().toUri())));
+    }
+
+    /**
+     * Forget the files of the current shard, called before each run in an InferenceDaemon.
+     */
+    static void reset() {
+        currentShardFiles = null;
+    }
+
+    private static String canonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Start shards 1 .. N-1.  Each worker gets the JVM arguments of this process (minus debugger
+     * agents, which would compete for the same port) and the arguments of this InferenceMain.
+     */
+    public void launchWorkers() {
+        final String java = PluginUtil.getJavaCommand(System.getProperty("java.home"), System.out);
+
+        List<String> jvmArgs = new ArrayList<>();
+        for (String jvmArg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!jvmArg.startsWith("-agentlib:jdwp") && !jvmArg.startsWith("-Xrunjdwp") && !jvmArg.equals("-Xdebug")) {
+                jvmArgs.add(jvmArg);
+            }
+        }
+
+        for (int shard = 1; shard < InferenceOptions.shards; shard++) {
+            try {
+                File shardFile = File.createTempFile("inference-shard-" + shard + "-", ".json");
+                shardFile.deleteOnExit();
+
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                command.addAll(jvmArgs);
+                command.add("-classpath");
+                command.add(System.getProperty("java.class.path"));
+                command.add(InferenceMain.class.getName());
+
+                // Options must precede the "--" that separates javac arguments
+                command.addAll(Arrays.asList(
+                        "--shardIndex", String.valueOf(shard),
+                        "--shardFile", shardFile.getAbsolutePath()));
+                command.addAll(Arrays.asList(inferenceMainArgs));
+
+                if (InferenceOptions.printCommands) {
+                    System.out.println("Running shard " + shard + " command:");
+                    System.out.println(PluginUtil.join(" ", command));
+                }
+
+                workers.add(new ProcessBuilder(command).inheritIO().start());
+                shardFiles.add(shardFile);
+
+            } catch (IOException e) {
+                ErrorReporter.errorAbort("Could not start inference shard " + shard, e);
+            }
+        }
+
+        logger.fine("Started " + workers.size() + " inference shard workers");
+    }
+
+    /**
+     * Wait for every worker to finish and merge its slots and constraints, in shard order.
+     */
+    public void mergeWorkerShards(SlotManager slotManager, ConstraintManager constraintManager,
+                                  ProcessingEnvironment processingEnv) {
+        final SlotTableDeserializer deserializer =
+                new SlotTableDeserializer(slotManager, constraintManager, processingEnv);
+
+        for (int i = 0; i < workers.size(); i++) {
+            final int shard = i + 1;
+            final int result;
+            try {
+                result = workers.get(i).waitFor();
+            } catch (InterruptedException e) {
+                ErrorReporter.errorAbort("Interrupted while waiting for inference shard " + shard, e);
+                return; // Dead
+            }
+
+            if (result != 0) {
+                logger.severe("Inference shard " + shard + " failed with exit code " + result + "! Quitting.");
+                throw new InferenceMain.InferenceAbortedException(result);
+            }
+
+            try (BufferedReader reader = new BufferedReader(new FileReader(shardFiles.get(i)))) {
+                int before = slotManager.getNumberOfSlots();
+                int constraints = deserializer.merge(reader).size();
+                logger.fine(String.format("Merged shard %d: %d new slots, %d constraints",
+                        shard, slotManager.getNumberOfSlots() - before, constraints));
+            } catch (Exception e) {
+                ErrorReporter.errorAbort("Could not merge inference shard " + shard
+                        + " from " + shardFiles.get(i), e);
+            }
+        }
+    }
+
+    /**
+     * Called on a worker after its javac run, writes everything it generated to InferenceOptions.shardFile.
+     */
+    public static void writeShardFile(SlotManager slotManager, ConstraintManager constraintManager) {
+        File shardFile = new File(InferenceOptions.shardFile);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(shardFile))) {
+            new SlotTableSerializer(slotManager).write(slotManager.getSlots(), constraintManager.getConstraints(),
+                    writer);
+        } catch (IOException e) {
+            ErrorReporter.errorAbort("Could not write shard file " + shardFile, e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package checkers.inference;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.checkerframework.javacutil.ErrorReporter;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+
+/**
+ * Prunes the slots that do not appear in any constraint and renumbers the remaining variables.
+ *
+ * Slot ids are handed out to every slot the SlotManager creates, including constants,
+ * refinement variables and variables that end up unconstrained, so the ids of the variables a
+ * solver actually sees are sparse.  SAT encoders allocate one solver variable per id; a
+ * SlotCompactor gives them a dense range instead:  the variables referenced by the constraints
+ * are numbered 1..getNumberOfVariables(), in the order of their original ids.  Solvers must
+ * translate their results back with getOriginalId before building an InferenceSolution.
+ *
+ * Variables that are pruned have no constraints, so they get no value in the solution and
+ * no annotation in the JAIF.
+ */
+public class SlotCompactor {
+
+    /** The slots referenced by the constraints, in order of first reference */
+    private final Set<Slot> liveSlots = new LinkedHashSet<>();
+
+    /** compact id - 1 to original id */
+    private final int[] originalIds;
+
+    /** original id to compact id, 0 for ids that were pruned */
+    private final int[] compactIds;
+
+    public SlotCompactor(Iterable<Constraint> constraints) {
+        final BitSet liveIds = new BitSet();
+        for (Constraint constraint : constraints) {
+            for (Slot slot : constraint.getSlots()) {
+                liveSlots.add(slot);
+                if (slot.isVariable()) {
+                    liveIds.set(((VariableSlot) slot).getId());
+                }
+            }
+        }
+
+        originalIds = new int[liveIds.cardinality()];
+        compactIds = new int[liveIds.length()];
+
+        int compactId = 0;
+        for (int id = liveIds.nextSetBit(0); id >= 0; id = liveIds.nextSetBit(id + 1)) {
+            originalIds[compactId] = id;
+            compactId++;
+            compactIds[id] = compactId;
+        }
+    }
+
+    /**
+     * @return the variables and constants referenced by at least one constraint
+     */
+    public List<Slot> getSlots() {
+        return Collections.unmodifiableList(new ArrayList<>(liveSlots));
+    }
+
+    /**
+     * @return the number of variables left after pruning, the largest compact id
+     */
+    public int getNumberOfVariables() {
+        return originalIds.length;
+    }
+
+    public int getCompactId(VariableSlot slot) {
+        final int id = slot.getId();
+        final int compactId = id < compactIds.length ? compactIds[id] : 0;
+        if (compactId == 0) {
+            ErrorReporter.errorAbort("Slot was pruned but is referenced by a constraint: " + slot);
+            return -1; // Dead
+        }
+        return compactId;
+    }
+
+    public int getOriginalId(int compactId) {
+        return originalIds[compactId - 1];
+    }
+}
@@ -84,6 +84,36 @@ public interface SlotManager {
      */
     CombVariableSlot createCombVariableSlot(Slot receiver, Slot declared);
 
+    /**
+     * Create a CombVariableSlot that represents the least upper bound of left and right, or
+     * return the existing one.  Unlike createCombVariableSlot, the merge variable only depends on
+     * the set of slots being joined: merging a merge variable joins the slots it joins.  So
+     * lub(a, b) and lub(b, a) are the same variable, and so are lub(lub(a, b), c) and
+     * lub(a, lub(b, c)).  The result may be left or right itself, e.g. for lub(lub(a, b), a).
+     *
+     * @param left a slot being joined
+     * @param right the other slot being joined
+     * @return CombVariableSlot that represents the join of the slots joined by left and right
+     */
+    CombVariableSlot createMergeVariableSlot(Slot left, Slot right);
+
+    /**
+     * @return true if slot was created by createMergeVariableSlot, false if it was created by
+     *         createCombVariableSlot
+     */
+    boolean isMergeVariable(CombVariableSlot slot);
+
+    /**
+     * Record that slot was merged to mergedTo, see VariableSlot.getMergedToSlots.  Merge edges must
+     * be added through this method so that isMergedTo stays up to date.
+     */
+    void addMergedToSlot(VariableSlot slot, CombVariableSlot mergedTo);
+
+    /**
+     * @return true if slot is transitively merged to other
+     */
+    boolean isMergedTo(VariableSlot slot, VariableSlot other);
+
     /**
      * Create new ExistentialVariableSlot using potential slot and alternative
      * slot, and return reference to it if no ExistentialVariableSlot that wraps
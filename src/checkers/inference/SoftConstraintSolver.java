@@ -0,0 +1,12 @@
+package checkers.inference;
+
+/**
+ * Implemented by InferenceSolvers that treat every constraint as a soft clause of a MAX-SAT
+ * problem, i.e. that may leave some constraints unsatisfied when the constraints cannot all
+ * be satisfied.
+ *
+ * Normalization passes that rely on constraints being hard, such as EquivalentSlotMerger,
+ * are not used with these solvers.
+ */
+public interface SoftConstraintSolver {
+}
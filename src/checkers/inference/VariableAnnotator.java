@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -89,6 +90,13 @@ import checkers.inference.util.InferenceUtil;
  */
 public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
 
+    private static final HackSite HANDLE_WAS_RAW_DECLARED_TYPES_HACK = HackSite.register("VariableAnnotator.handleWasRawDeclaredTypes");
+    private static final HackSite HANDLE_CLASS_DECLARATION_HACK = HackSite.register("VariableAnnotator.handleClassDeclaration");
+    private static final HackSite VISIT_INTERSECTION_HACK = HackSite.register("VariableAnnotator.visitIntersection");
+    private static final HackSite ANNOTATE_ARRAY_LITERAL_HACK = HackSite.register("VariableAnnotator.annotateArrayLiteral");
+    private static final HackSite HANDLE_RECEIVER_HACK = HackSite.register("VariableAnnotator.handleReceiver");
+    private static final HackSite ADD_ANONYMOUS_CLASS_RECEIVER_ANNOS_HACK = HackSite.register("VariableAnnotator.addAnonymousClassReceiverAnnos");
+
     private static final Logger logger = Logger.getLogger(VariableAnnotator.class.getName());
 
     private final InferenceAnnotatedTypeFactory inferenceTypeFactory;
@@ -108,8 +116,6 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
     /** Store elements that have already been annotated **/
     private final Map<Element, AnnotatedTypeMirror> elementToAtm;
 
-    private final Map<Pair<Integer,Integer>, ExistentialVariableSlot> idsToExistentialSlots;
-
     private final AnnotatedTypeFactory realTypeFactory;
     private final InferrableChecker realChecker;
 
@@ -132,6 +138,8 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
      */
     private final Map<Tree, VariableSlot> treeToPolyVar;
 
+    /** The locations of the trees of the current compilation unit, see getLocation. */
+    private final Map<Tree, AnnotationLocation> treeToLocation;
 
     //AN instance of @VarAnnot
     private final AnnotationMirror varAnnot;
@@ -157,7 +165,7 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
         this.receiverMissingTrees = new HashMap<>();
         this.newArrayMissingTrees = new HashMap<>();
         this.treeToPolyVar = new HashMap<>();
-        this.idsToExistentialSlots = new HashMap<>();
+        this.treeToLocation = new IdentityHashMap<>();
         this.classDeclAnnos = new HashMap<>();
         this.realChecker = realChecker;
         this.constraintManager = constraintManager;
@@ -181,7 +189,11 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
             return AnnotationLocation.MISSING_LOCATION;
         } //else
 
-        ASTPathUtil.getASTRecordForPath(typeFactory, path);
+        return pathToLocation(typeFactory, path);
+    }
+
+    private static AnnotationLocation pathToLocation(AnnotatedTypeFactory typeFactory, TreePath path) {
+        final Tree tree = path.getLeaf();
         if (tree.getKind() == Kind.CLASS || tree.getKind() == Kind.INTERFACE
          || tree.getKind() == Kind.ENUM  || tree.getKind() == Kind.ANNOTATION_TYPE) {
             ClassSymbol classSymbol = (ClassSymbol) TreeUtils.elementFromDeclaration((ClassTree) tree);
@@ -199,7 +211,27 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
     }
 
     protected AnnotationLocation treeToLocation(Tree tree) {
-        return treeToLocation(inferenceTypeFactory, tree);
+        AnnotationLocation location = treeToLocation.get(tree);
+        if (location == null) {
+            location = treeToLocation(inferenceTypeFactory, tree);
+            treeToLocation.put(tree, location);
+        }
+        return location;
+    }
+
+    /**
+     * Like treeToLocation, for a tree whose path is already known.  Locations of trees of the
+     * current compilation unit are cached; a path into an earlier compilation unit is
+     * resolved again.
+     */
+    public AnnotationLocation getLocation(TreePath path) {
+        final Tree tree = path.getLeaf();
+        AnnotationLocation location = treeToLocation.get(tree);
+        if (location == null) {
+            location = pathToLocation(inferenceTypeFactory, path);
+            treeToLocation.put(tree, location);
+        }
+        return location;
     }
 
     /**
@@ -312,21 +344,12 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
      * Between two variable slots (a potential and alternative) we only ever need to create
      * 1 existential variable slot which we can then reuse.
      *
-     * If one does not already exist, this method creates an existential variable slot between
-     * potentialVariable and alternative and stores it.
-     * Otherwise, it returns the previously stored ExistentialVariableSlot
+     * The SlotManager creates an existential variable slot between potentialVariable and
+     * alternative only if it does not already exist, so the slots are not cached here.
      */
     ExistentialVariableSlot getOrCreateExistentialVariable(final VariableSlot potentialVariable,
                                                            final VariableSlot alternativeSlot) {
-        final Pair<Integer, Integer> idPair = Pair.of(potentialVariable.getId(), alternativeSlot.getId());
-        ExistentialVariableSlot existentialVariable = idsToExistentialSlots.get(idPair);
-
-        if (existentialVariable == null) {
-            existentialVariable = slotManager.createExistentialVariableSlot(potentialVariable, alternativeSlot);
-            idsToExistentialSlots.put(idPair, existentialVariable);
-        } //else
-
-        return existentialVariable;
+        return slotManager.createExistentialVariableSlot(potentialVariable, alternativeSlot);
     }
 
     /**
@@ -752,7 +775,7 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
             for (int i = 0; i < declarationTypeArgs.size(); i++) {
                 final AnnotatedTypeVariable declArg = (AnnotatedTypeVariable) declarationTypeArgs.get(i);
 
-                if (InferenceMain.isHackMode(rawTypeArgs.get(i).getKind() != TypeKind.WILDCARD)) {
+                if (InferenceMain.isHackMode(HANDLE_WAS_RAW_DECLARED_TYPES_HACK, rawTypeArgs.get(i).getKind() != TypeKind.WILDCARD)) {
                     return false;
                 }
 
@@ -806,7 +829,7 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
 //            interfaceIndex++;
 //        }
 //
-        if (InferenceMain.isHackMode(
+        if (InferenceMain.isHackMode(HANDLE_CLASS_DECLARATION_HACK, 
                 (classType.getTypeArguments().size() != classTree.getTypeParameters().size()))) {
             return;
         }
@@ -873,7 +896,7 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
     @Override
     public Void visitIntersection(AnnotatedIntersectionType intersectionType, Tree tree) {
 
-        if (InferenceMain.isHackMode(!(tree instanceof IntersectionTypeTree))) {
+        if (InferenceMain.isHackMode(VISIT_INTERSECTION_HACK, !(tree instanceof IntersectionTypeTree))) {
             return null;
         }
 
@@ -1072,7 +1095,7 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
         TreePath pathToTree = inferenceTypeFactory.getPath(tree);
         ASTRecord astRecord = ASTPathUtil.getASTRecordForPath(inferenceTypeFactory, pathToTree);
         if (astRecord == null) {
-            if (InferenceMain.isHackMode()) {
+            if (InferenceMain.isHackMode(ANNOTATE_ARRAY_LITERAL_HACK)) {
                 return;
             } else {
                 ErrorReporter.errorAbort("NULL ARRAY RECORD:\n" + tree + "\n\n");
@@ -1375,7 +1398,7 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
             visit(methodType.getReceiverType(), methodTree.getReceiverParameter().getType());
         } else if (receiverType != null) {
 
-            if (InferenceMain.isHackMode( ((MethodSymbol) methodElem).isConstructor())) {
+            if (InferenceMain.isHackMode(HANDLE_RECEIVER_HACK, ((MethodSymbol) methodElem).isConstructor())) {
                 TypeElement enclosingClass = (TypeElement) methodElem.getEnclosingElement();
 
                 if (((ClassSymbol) enclosingClass).isInner()) {
@@ -1457,7 +1480,7 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
 
 
         if (variableAnno == null) {
-            if (!InferenceMain.isHackMode()) {
+            if (!InferenceMain.isHackMode(ADD_ANONYMOUS_CLASS_RECEIVER_ANNOS_HACK)) {
                 ErrorReporter.errorAbort("Missing receiver annotation: " + receiverType + "  " + declarationType);
             }
         } else {
@@ -1651,5 +1674,42 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
         //This has been used to ensure we don't add new variables to trees that are visited twice
         //but, since we now store annotations in bytecode, shouldn't this not be a problem?
         treeToPolyVar.clear();
+        treeToLocation.clear();
+    }
+
+    /**
+     * Used in bounded memory mode (see InferenceMain.isBoundedMemory) when the compilation unit changes.
+     * Drops every tree keyed cache and the types of method local elements, so neither the trees
+     * nor the variables of finished compilation units are kept reachable by this annotator:
+     *
+     * treeToVarAnnoPair and newArrayMissingTrees hold the variables of the trees visited in the
+     * unit.  Other compilation units only reach the declarations of a finished unit, and they get
+     * their types from elementToAtm (see annotateElementFromStore) rather than by annotating the
+     * declaration trees again.  This includes declarations whose trees have a MISSING_LOCATION,
+     * for which the SlotManager would create a new slot on every request.  Expressions, such as
+     * new arrays, are only visited while their own unit is processed.
+     *
+     * elementToAtm keeps the types of fields, methods, parameters, classes and type parameters,
+     * since other compilation units refer to them, and receiverMissingTrees, extendsMissingTrees
+     * and classDeclAnnos are keyed by such declarations.  Existential variables are cached by the
+     * SlotManager.
+     */
+    public void clearCompilationUnitInfo() {
+        clearTreeInfo();
+        treeToVarAnnoPair.clear();
+        newArrayMissingTrees.clear();
+
+        final Iterator<Element> elements = elementToAtm.keySet().iterator();
+        while (elements.hasNext()) {
+            switch (elements.next().getKind()) {
+                case LOCAL_VARIABLE:
+                case EXCEPTION_PARAMETER:
+                case RESOURCE_VARIABLE:
+                    elements.remove();
+                    break;
+                default:
+                    break;
+            }
+        }
     }
 }
@@ -29,6 +29,7 @@ import com.sun.source.tree.UnaryTree;
 import com.sun.source.tree.VariableTree;
 
 import checkers.inference.InferenceAnnotatedTypeFactory;
+import checkers.inference.HackSite;
 import checkers.inference.InferenceMain;
 import checkers.inference.SlotManager;
 import checkers.inference.VariableAnnotator;
@@ -53,6 +54,10 @@ import checkers.inference.util.InferenceUtil;
  */
 public class InferenceTransfer extends CFTransfer {
 
+    private static final HackSite CREATE_TYPE_VAR_REFINEMENT_VARS_HACK = HackSite.register("InferenceTransfer.createTypeVarRefinementVars");
+    private static final HackSite CREATE_TYPE_VAR_REFINEMENT_VARS_HACK_2 = HackSite.register("InferenceTransfer.createTypeVarRefinementVars #2");
+    private static final HackSite CREATE_TYPE_VAR_REFINEMENT_VARS_HACK_3 = HackSite.register("InferenceTransfer.createTypeVarRefinementVars #3");
+
     private static final Logger logger = Logger.getLogger(InferenceTransfer.class.getName());
 
     // Keep a cache of tree's that we have created refinement variables so that we do
@@ -280,8 +285,8 @@ public class InferenceTransfer extends CFTransfer {
     private TransferResult<CFValue, CFStore> createTypeVarRefinementVars(Node lhs, Tree assignmentTree, CFStore store,
                                                                          AnnotatedTypeVariable typeVar) {
 
-        AnnotatedTypeMirror upperBoundType = InferenceUtil.findUpperBoundType(typeVar, InferenceMain.isHackMode());
-        AnnotatedTypeMirror lowerBoundType = InferenceUtil.findLowerBoundType(typeVar, InferenceMain.isHackMode());
+        AnnotatedTypeMirror upperBoundType = InferenceUtil.findUpperBoundType(typeVar, InferenceMain.isHackModeEnabled());
+        AnnotatedTypeMirror lowerBoundType = InferenceUtil.findLowerBoundType(typeVar, InferenceMain.isHackModeEnabled());
 
         SlotManager slotManager = getInferenceAnalysis().getSlotManager();
 
@@ -289,7 +294,7 @@ public class InferenceTransfer extends CFTransfer {
         final Slot lowerBoundBaseSlot = slotManager.getVariableSlot(lowerBoundType);
 
         if (upperBoundBaseSlot == null || lowerBoundBaseSlot == null) {
-            if (!InferenceMain.isHackMode()) {
+            if (!InferenceMain.isHackMode(CREATE_TYPE_VAR_REFINEMENT_VARS_HACK)) {
                 ErrorReporter.errorAbort("Unexpected empty bound types:\n" +
                         "upperBoundType=" + upperBoundType + "\n"
                       + "lowerBoundType=" + lowerBoundType);
@@ -300,7 +305,7 @@ public class InferenceTransfer extends CFTransfer {
 
         if ( !upperBoundBaseSlot.getClass().equals(ExistentialVariableSlot.class)) {
 
-            if (!InferenceMain.isHackMode()) {
+            if (!InferenceMain.isHackMode(CREATE_TYPE_VAR_REFINEMENT_VARS_HACK_2)) {
                 ErrorReporter.errorAbort("Expecting existential slot on type variable upper bound:\n"
                         + "typeVar=" + typeVar + "\n"
                         + "assignmentTree=" + assignmentTree + "\n"
@@ -312,7 +317,7 @@ public class InferenceTransfer extends CFTransfer {
         }
 
         if (!lowerBoundBaseSlot.getClass().equals(ExistentialVariableSlot.class)) {
-            if (!InferenceMain.isHackMode()) {
+            if (!InferenceMain.isHackMode(CREATE_TYPE_VAR_REFINEMENT_VARS_HACK_3)) {
                 ErrorReporter.errorAbort("Expecting existential slot on type variable lower bound:\n"
                         + "typeVar=" + typeVar + "\n"
                         + "assignmentTree=" + assignmentTree + "\n"
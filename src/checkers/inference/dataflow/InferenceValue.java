@@ -18,6 +18,7 @@ import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Types;
 
+import checkers.inference.HackSite;
 import checkers.inference.InferenceMain;
 import checkers.inference.SlotManager;
 import checkers.inference.model.CombVariableSlot;
@@ -37,6 +38,7 @@ import checkers.inference.model.VariableSlot;
  */
 public class InferenceValue extends CFValue {
 
+    private static final HackSite LEAST_UPPER_BOUND_HACK = HackSite.register("InferenceValue.leastUpperBound");
 
     public InferenceValue(InferenceAnalysis analysis, Set<AnnotationMirror> annotations, TypeMirror underlyingType) {
         super(analysis, annotations, underlyingType);
@@ -73,7 +75,7 @@ public class InferenceValue extends CFValue {
         } else {
 
             VariableSlot mergeSlot = createMergeVar(slot1, slot2);
-            if (InferenceMain.isHackMode(mergeSlot == null)) {
+            if (InferenceMain.isHackMode(LEAST_UPPER_BOUND_HACK, mergeSlot == null)) {
                 Set<AnnotationMirror> copiedAnnos = AnnotationUtils.createAnnotationSet();
                 copiedAnnos.addAll(annotations);
                 return analysis.createAbstractValue(copiedAnnos, underlyingType);
@@ -99,7 +101,7 @@ public class InferenceValue extends CFValue {
         if (slot1 instanceof ConstantSlot || slot2 instanceof ConstantSlot) {
             // This currently happens for merging intializers on fields: CFAbstractTransfer.initialStore
 
-            CombVariableSlot newMergeVar =  getInferenceAnalysis().getSlotManager().createCombVariableSlot(slot1, slot2);
+            CombVariableSlot newMergeVar =  getInferenceAnalysis().getSlotManager().createMergeVariableSlot(slot1, slot2);
 
             // Lub of the two
             getInferenceAnalysis().getConstraintManager().addSubtypeConstraint(slot1, newMergeVar);
@@ -113,28 +115,34 @@ public class InferenceValue extends CFValue {
             if (var1 == var2) {
                 // These are the same variable
                 return var1;
+            }
 
-            } else if (!Collections.disjoint(var1.getMergedToSlots(), var2.getMergedToSlots())) {
-                // There is a chain that merges var1 and var2
-                return getOneIntersected(var1.getMergedToSlots(), var2.getMergedToSlots());
+            // There is a chain that merges var1 and var2
+            final CombVariableSlot commonMergeVar = getOneIntersected(var1.getMergedToSlots(), var2.getMergedToSlots());
+            if (commonMergeVar != null) {
+                return commonMergeVar;
 
-            } else if (var1.isMergedTo(var2)) {
+            } else if (getInferenceAnalysis().getSlotManager().isMergedTo(var1, var2)) {
                 // Var2 is a merge varaible that var1 has been merged to
                 return var2;
 
-            } else if (var2.isMergedTo(var1)) {
+            } else if (getInferenceAnalysis().getSlotManager().isMergedTo(var2, var1)) {
                 return var1;
 
             } else {
 
-                CombVariableSlot newMergeVar = getInferenceAnalysis().getSlotManager().createCombVariableSlot(var1, var2);
-
-                var1.getMergedToSlots().add(newMergeVar);
-                var2.getMergedToSlots().add(newMergeVar);
+                CombVariableSlot newMergeVar = getInferenceAnalysis().getSlotManager().createMergeVariableSlot(var1, var2);
 
                 // newMergeVar must be the supertype of var1 and var2.
-                getInferenceAnalysis().getConstraintManager().addSubtypeConstraint(var1, newMergeVar);
-                getInferenceAnalysis().getConstraintManager().addSubtypeConstraint(var2, newMergeVar);
+                // It is var1 or var2 itself if that already joins the slots joined by the other.
+                if (newMergeVar != var1) {
+                    getInferenceAnalysis().getSlotManager().addMergedToSlot(var1, newMergeVar);
+                    getInferenceAnalysis().getConstraintManager().addSubtypeConstraint(var1, newMergeVar);
+                }
+                if (newMergeVar != var2) {
+                    getInferenceAnalysis().getSlotManager().addMergedToSlot(var2, newMergeVar);
+                    getInferenceAnalysis().getConstraintManager().addSubtypeConstraint(var2, newMergeVar);
+                }
 
                 return newMergeVar;
             }
@@ -147,7 +155,7 @@ public class InferenceValue extends CFValue {
             TypeVariable typevar = ((TypeVariable) value.getUnderlyingType());
             AnnotatedTypeVariable type =
                     (AnnotatedTypeVariable) analysis.getTypeFactory().getAnnotatedType(typevar.asElement());
-            AnnotatedTypeMirror ubType = InferenceUtil.findUpperBoundType(type, InferenceMain.isHackMode());
+            AnnotatedTypeMirror ubType = InferenceUtil.findUpperBoundType(type, InferenceMain.isHackModeEnabled());
             return getInferenceAnalysis().getSlotManager().getVariableSlot(ubType);
         }
         Iterator<AnnotationMirror> iterator = value.getAnnotations().iterator();
@@ -190,11 +198,12 @@ public class InferenceValue extends CFValue {
      */
     public CFValue mostSpecificFromSlot(final Slot thisSlot, final Slot otherSlot, final CFValue other, final CFValue backup) {
            if (thisSlot.isVariable() && otherSlot.isVariable()) {
+               final SlotManager slotManager = getInferenceAnalysis().getSlotManager();
                VariableSlot thisVarSlot = (VariableSlot) thisSlot;
                VariableSlot otherVarSlot = (VariableSlot) otherSlot;
-               if (thisVarSlot.isMergedTo(otherVarSlot)) {
+               if (slotManager.isMergedTo(thisVarSlot, otherVarSlot)) {
                    return other;
-               } else if (otherVarSlot.isMergedTo(thisVarSlot)) {
+               } else if (slotManager.isMergedTo(otherVarSlot, thisVarSlot)) {
                    return this;
                } else if (thisVarSlot instanceof RefinementVariableSlot
                        && ((RefinementVariableSlot) thisVarSlot).getRefined().equals(otherVarSlot)) {
@@ -207,12 +216,12 @@ public class InferenceValue extends CFValue {
             } else {
                 // Check if one of these has refinement variables that were merged to the other.
                 for (RefinementVariableSlot slot : thisVarSlot.getRefinedToSlots()) {
-                    if (slot.isMergedTo(otherVarSlot)) {
+                    if (slotManager.isMergedTo(slot, otherVarSlot)) {
                         return other;
                     }
                 }
                 for (RefinementVariableSlot slot : otherVarSlot.getRefinedToSlots()) {
-                    if (slot.isMergedTo(thisVarSlot)) {
+                    if (slotManager.isMergedTo(slot, thisVarSlot)) {
                         return this;
                     }
                 }
@@ -254,9 +263,12 @@ public class InferenceValue extends CFValue {
     /**
      * TODO: Should we replace this with guava?
      *
-     * @return The first element found in both set1 and set2.
+     * @return The first element found in both set1 and set2, or null if they are disjoint.
      */
     private <T> T getOneIntersected(Set<T> set1, Set<T> set2) {
+        if (set1.size() > set2.size()) {
+            return getOneIntersected(set2, set1);
+        }
         for (T refVar : set1) {
             if (set2.contains(refVar)) {
                 return refVar;
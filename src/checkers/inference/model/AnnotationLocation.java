@@ -50,13 +50,28 @@ public abstract class AnnotationLocation {
 
     /**
      * Associates an annotation with an exact location in source using Annotation File Utilities ASTRecords
+     *
+     * The ASTRecord kept by this location does not reference the CompilationUnitTree it was created
+     * from (ASTRecord.ast is null), so that slots and constraints, which live for the whole run,
+     * do not keep every visited AST reachable.  The class, method and variable names are interned
+     * since many locations share them.  ASTRecord equality and the JAIF output only depend on the
+     * names and the ASTPath.
      */
     public static class AstPathLocation extends AnnotationLocation {
         private final ASTRecord astRecord;
 
         public AstPathLocation(ASTRecord astRecord) {
             super(AnnotationLocation.Kind.AST_PATH);
-            this.astRecord = astRecord;
+            this.astRecord = detach(astRecord);
+        }
+
+        private static ASTRecord detach(ASTRecord record) {
+            return new ASTRecord(null, intern(record.className), intern(record.methodName),
+                                 intern(record.varName), record.astPath);
+        }
+
+        private static String intern(String name) {
+            return name == null ? null : name.intern();
         }
 
         public ASTRecord getAstRecord() {
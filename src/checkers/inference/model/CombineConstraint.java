@@ -14,7 +14,7 @@ public class CombineConstraint extends Constraint {
     private final Slot decl;
     private final Slot result;
 
-    protected CombineConstraint(Slot target, Slot decl, Slot result, AnnotationLocation location) {
+    protected CombineConstraint(Slot target, Slot decl, Slot result, LocationHandle location) {
         super(Arrays.asList(target, decl, result), location);
         this.target = target;
         this.decl = decl;
@@ -11,7 +11,7 @@ public class ComparableConstraint extends Constraint implements BinaryConstraint
     private final Slot first;
     private final Slot second;
 
-    protected ComparableConstraint(Slot first, Slot second, AnnotationLocation location) {
+    protected ComparableConstraint(Slot first, Slot second, LocationHandle location) {
         super(Arrays.asList(first, second), location);
         this.first = first;
         this.second = second;
@@ -15,9 +15,11 @@ public abstract class Constraint {
     private final List<Slot> slots;
 
     /**
-     * Used to locate this constraint in source code.
+     * Used to locate this constraint in source code, set when locationHandle is resolved.
      */
-    private final AnnotationLocation location;
+    private AnnotationLocation location;
+
+    private LocationHandle locationHandle;
 
     public Constraint(List<Slot> slots, AnnotationLocation location) {
         // Instead of:
@@ -29,6 +31,14 @@ public abstract class Constraint {
         this.location = location;
     }
 
+    /**
+     * The location is only resolved when getLocation is first called.
+     */
+    public Constraint(List<Slot> slots, LocationHandle locationHandle) {
+        this.slots = slots;
+        this.locationHandle = locationHandle;
+    }
+
     public Constraint(List<Slot> slots) {
         // Instead of:
         // List<Slot> newSlots = new ArrayList<Slot>(slots);
@@ -39,7 +49,11 @@ public abstract class Constraint {
         this.location = AnnotationLocation.MISSING_LOCATION;
     }
 
-    public AnnotationLocation getLocation() {
+    public synchronized AnnotationLocation getLocation() {
+        if (locationHandle != null) {
+            location = locationHandle.resolve();
+            locationHandle = null;
+        }
         return location;
     }
     
@@ -7,26 +7,52 @@ import org.checkerframework.framework.type.VisitorState;
 import org.checkerframework.javacutil.AnnotationUtils;
 import org.checkerframework.javacutil.ErrorReporter;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import javax.lang.model.element.AnnotationMirror;
 
+import com.sun.source.util.TreePath;
+
 import checkers.inference.InferenceAnnotatedTypeFactory;
+import checkers.inference.InferenceMain;
 import checkers.inference.VariableAnnotator;
 
 /**
  * Constraint manager holds constraints that are generated by InferenceVisitor.
  *
+ * Constraints are deduplicated as they are added.  Symmetric constraints (equality, inequality,
+ * comparable) are created with their slots in a canonical order, constraints that always hold
+ * (between a slot and itself, or between constants that satisfy them) are dropped, and the
+ * sink drops constraints equal to one it already holds.  getDropSummary reports how many
+ * constraints each rule removed, the number of duplicates is exact once the sink was iterated.
+ *
  * @author mcarthur
  *
  */
 public class ConstraintManager {
 
+    /**
+     * The reasons a constraint is not passed on to the sink.
+     */
+    public enum DropRule {
+        /** A subtype, equality or comparable constraint between a slot and itself */
+        SAME_SLOT,
+        /** A subtype, equality, inequality or comparable constraint between two constants that holds */
+        SATISFIED_CONSTANTS,
+        /** A constraint equal to one that was already added, counted by the ConstraintSink */
+        DUPLICATE
+    }
+
+    private final AtomicLongArray dropCounts = new AtomicLongArray(DropRule.values().length);
+
     private boolean ignoreConstraints = false;
 
-    private final Set<Constraint> constraints = new HashSet<Constraint>();
+    private ConstraintSink constraintSink = new InMemoryConstraintSink();
+
+    private Collection<Constraint> constraintRecorder;
 
     private InferenceAnnotatedTypeFactory inferenceTypeFactory;
 
@@ -36,6 +62,9 @@ public class ConstraintManager {
 
     private VisitorState visitorState;
 
+    /** Handles of constraints whose location has not been resolved yet, see getCurrentLocationHandle */
+    private final List<PathLocationHandle> pendingLocations = new ArrayList<>();
+
     public void init(InferenceAnnotatedTypeFactory inferenceTypeFactory) {
         this.inferenceTypeFactory = inferenceTypeFactory;
         this.realQualHierarchy = inferenceTypeFactory.getRealQualifierHierarchy();
@@ -43,13 +72,75 @@ public class ConstraintManager {
         this.checker = inferenceTypeFactory.getContext().getChecker();
     }
 
-    public Set<Constraint> getConstraints() {
-        return constraints;
+    /**
+     * @return every constraint added so far, the sink may not keep them in memory
+     */
+    public ConstraintSink getConstraints() {
+        return constraintSink;
+    }
+
+    /**
+     * Replace the default in-memory sink, must be called before any constraint is added.
+     */
+    public void setConstraintSink(ConstraintSink constraintSink) {
+        if (this.constraintSink.size() != 0) {
+            ErrorReporter.errorAbort("The constraint sink cannot be replaced after constraints have been added.");
+        }
+        this.constraintSink = constraintSink;
     }
 
     private void add(Constraint constraint) {
         if (!ignoreConstraints) {
-            constraints.add(constraint);
+            constraintSink.add(constraint);
+            // Record duplicates too, the unit may be the only one left with this constraint on a later run
+            if (constraintRecorder != null) {
+                constraintRecorder.add(constraint);
+            }
+        }
+    }
+
+    /**
+     * Count a constraint that is not added because of rule.
+     */
+    private void drop(DropRule rule) {
+        if (!ignoreConstraints) {
+            dropCounts.incrementAndGet(rule.ordinal());
+        }
+    }
+
+    public long getDropCount(DropRule rule) {
+        if (rule == DropRule.DUPLICATE) {
+            return constraintSink.getDuplicateCount();
+        }
+        return dropCounts.get(rule.ordinal());
+    }
+
+    /**
+     * @return a description of how many constraints each DropRule removed
+     */
+    public String getDropSummary() {
+        final StringBuilder sb = new StringBuilder("Constraints dropped:\n");
+        for (DropRule rule : DropRule.values()) {
+            sb.append(String.format("%12d  %s%n", getDropCount(rule), rule));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Every constraint added from now on is also added to recorder, pass null to stop recording.
+     * Used by IncrementalStore to attribute constraints to the compilation unit that generated them.
+     */
+    public void setConstraintRecorder(Collection<Constraint> recorder) {
+        this.constraintRecorder = recorder;
+    }
+
+    /**
+     * Add constraints that were created outside of the current javac run, e.g. constraints
+     * read back from another inference run by SlotTableDeserializer.
+     */
+    public void addAll(Collection<Constraint> newConstraints) {
+        for (Constraint constraint : newConstraints) {
+            add(constraint);
         }
     }
 
@@ -75,7 +166,7 @@ public class ConstraintManager {
                         visitorState.getPath().getLeaf());
             }
         }
-        return new SubtypeConstraint(subtype, supertype, getCurrentLocation());
+        return new SubtypeConstraint(subtype, supertype, getCurrentLocationHandle());
     }
 
     public EqualityConstraint createEqualityConstraint(Slot first, Slot second) {
@@ -91,7 +182,10 @@ public class ConstraintManager {
                         .getPath().getLeaf());
             }
         }
-        return new EqualityConstraint(first, second, getCurrentLocation());
+        if (!isCanonicalOrder(first, second)) {
+            return new EqualityConstraint(second, first, getCurrentLocationHandle());
+        }
+        return new EqualityConstraint(first, second, getCurrentLocationHandle());
     }
 
     public InequalityConstraint createInequalityConstraint(Slot first, Slot second) {
@@ -107,7 +201,10 @@ public class ConstraintManager {
                         visitorState.getPath().getLeaf());
             }
         }
-        return new InequalityConstraint(first, second, getCurrentLocation());
+        if (!isCanonicalOrder(first, second)) {
+            return new InequalityConstraint(second, first, getCurrentLocationHandle());
+        }
+        return new InequalityConstraint(first, second, getCurrentLocationHandle());
     }
 
     public ComparableConstraint createComparableConstraint(Slot first, Slot second) {
@@ -124,7 +221,10 @@ public class ConstraintManager {
                         visitorState.getPath().getLeaf());
             }
         }
-        return new ComparableConstraint(first, second, getCurrentLocation());
+        if (!isCanonicalOrder(first, second)) {
+            return new ComparableConstraint(second, first, getCurrentLocationHandle());
+        }
+        return new ComparableConstraint(first, second, getCurrentLocationHandle());
     }
 
     public CombineConstraint createCombineConstraint(Slot target, Slot decl, Slot result) {
@@ -132,7 +232,7 @@ public class ConstraintManager {
             ErrorReporter.errorAbort("Create combine constraint with null argument. Target: " + target
                     + " Decl: " + decl + " Result: " + result);
         }
-        return new CombineConstraint(target, decl, result, getCurrentLocation());
+        return new CombineConstraint(target, decl, result, getCurrentLocationHandle());
     }
 
     public PreferenceConstraint createPreferenceConstraint(VariableSlot variable, ConstantSlot goal,
@@ -141,27 +241,173 @@ public class ConstraintManager {
             ErrorReporter.errorAbort("Create preference constraint with null argument. Variable: "
                     + variable + " Goal: " + goal);
         }
-        return new PreferenceConstraint(variable, goal, weight, getCurrentLocation());
+        return new PreferenceConstraint(variable, goal, weight, getCurrentLocationHandle());
     }
 
     public ExistentialConstraint createExistentialConstraint(Slot slot,
             List<Constraint> ifExistsConstraints, List<Constraint> ifNotExistsConstraints) {
         // TODO: add null checking for argument.
         return new ExistentialConstraint((VariableSlot) slot,
-                ifExistsConstraints, ifNotExistsConstraints, getCurrentLocation());
+                ifExistsConstraints, ifNotExistsConstraints, getCurrentLocationHandle());
     }
 
-    private AnnotationLocation getCurrentLocation() {
-        if (visitorState.getPath() != null) {
-            return VariableAnnotator.treeToLocation(inferenceTypeFactory, visitorState.getPath()
-                    .getLeaf());
-        } else {
-            return AnnotationLocation.MISSING_LOCATION;
+    /**
+     * Re-create a binary constraint that was generated and checked by another inference run, or
+     * rewritten from an existing constraint.  Unlike the createXConstraint methods, no constant
+     * checks are performed and the location is given rather than taken from the visitor state.
+     * Symmetric constraints are created in canonical order, like createXConstraint.
+     */
+    public Constraint restoreBinaryConstraint(Class<? extends Constraint> constraintClass, Slot first, Slot second,
+                                              AnnotationLocation location) {
+        final LocationHandle locationHandle = new ResolvedLocationHandle(location);
+        if (constraintClass == SubtypeConstraint.class) {
+            return new SubtypeConstraint(first, second, locationHandle);
+        }
+
+        if (!isCanonicalOrder(first, second)) {
+            final Slot tmp = first;
+            first = second;
+            second = tmp;
+        }
+        if (constraintClass == EqualityConstraint.class) {
+            return new EqualityConstraint(first, second, locationHandle);
+        } else if (constraintClass == InequalityConstraint.class) {
+            return new InequalityConstraint(first, second, locationHandle);
+        } else if (constraintClass == ComparableConstraint.class) {
+            return new ComparableConstraint(first, second, locationHandle);
+        }
+
+        ErrorReporter.errorAbort("Not a binary constraint class: " + constraintClass);
+        return null; // Dead
+    }
+
+    /**
+     * Like restoreBinaryConstraint, for CombineConstraints.
+     */
+    public CombineConstraint restoreCombineConstraint(Slot target, Slot decl, Slot result,
+                                                      AnnotationLocation location) {
+        return new CombineConstraint(target, decl, result, new ResolvedLocationHandle(location));
+    }
+
+    /**
+     * Like restoreBinaryConstraint, for PreferenceConstraints.
+     */
+    public PreferenceConstraint restorePreferenceConstraint(VariableSlot variable, ConstantSlot goal, int weight,
+                                                            AnnotationLocation location) {
+        return new PreferenceConstraint(variable, goal, weight, new ResolvedLocationHandle(location));
+    }
+
+    /**
+     * Like restoreBinaryConstraint, for ExistentialConstraints.
+     */
+    public ExistentialConstraint restoreExistentialConstraint(VariableSlot potentialVariable,
+            List<Constraint> ifExistsConstraints, List<Constraint> ifNotExistsConstraints,
+            AnnotationLocation location) {
+        return new ExistentialConstraint(potentialVariable, ifExistsConstraints, ifNotExistsConstraints,
+                new ResolvedLocationHandle(location));
+    }
+
+    /**
+     * The canonical order of the slots of a symmetric constraint: variables before constants
+     * and variables by increasing id, so that e.g. a == b and b == a are created alike.
+     */
+    private static boolean isCanonicalOrder(Slot first, Slot second) {
+        if (first.isVariable() && second.isVariable()) {
+            return ((VariableSlot) first).getId() <= ((VariableSlot) second).getId();
+        }
+        return first.isVariable() || !second.isVariable();
+    }
+
+    /**
+     * The location of a constraint is only needed for diagnostics and serialization, so it is
+     * resolved from the path of the tree being visited only when the compilation unit is left
+     * (see resolvePendingLocations), through VariableAnnotator's per unit location cache.  In
+     * bounded memory mode the location is resolved right away.  Constraints created before init
+     * (e.g. by normalization passes run without javac) have no location.
+     */
+    private LocationHandle getCurrentLocationHandle() {
+        final TreePath path = visitorState != null ? visitorState.getPath() : null;
+        if (path == null) {
+            return MISSING_LOCATION_HANDLE;
+        }
+
+        final VariableAnnotator variableAnnotator = inferenceTypeFactory.getVariableAnnotator();
+        if (InferenceMain.getInstance().isBoundedMemory()) {
+            return new ResolvedLocationHandle(variableAnnotator.getLocation(path));
+        }
+
+        final PathLocationHandle handle = new PathLocationHandle(path, variableAnnotator);
+        synchronized (pendingLocations) {
+            pendingLocations.add(handle);
+        }
+        return handle;
+    }
+
+    /**
+     * Resolve the locations of every constraint created since the last call, so that no
+     * constraint keeps a TreePath, and with it a CompilationUnitTree, reachable.  Called by
+     * InferenceAnnotatedTypeFactory.setRoot before the caches of the previous unit are cleared,
+     * and by InferenceMain once javac has finished.
+     */
+    public void resolvePendingLocations() {
+        final List<PathLocationHandle> handles;
+        synchronized (pendingLocations) {
+            handles = new ArrayList<>(pendingLocations);
+            pendingLocations.clear();
+        }
+        for (PathLocationHandle handle : handles) {
+            handle.resolve();
+        }
+    }
+
+    /**
+     * The location of a constraint created while visiting path, resolved at the latest by
+     * resolvePendingLocations.
+     */
+    private static class PathLocationHandle implements LocationHandle {
+        private TreePath path;
+        private VariableAnnotator variableAnnotator;
+        private AnnotationLocation location;
+
+        PathLocationHandle(TreePath path, VariableAnnotator variableAnnotator) {
+            this.path = path;
+            this.variableAnnotator = variableAnnotator;
+        }
+
+        @Override
+        public synchronized AnnotationLocation resolve() {
+            if (path != null) {
+                location = variableAnnotator.getLocation(path);
+                path = null;
+                variableAnnotator = null;
+            }
+            return location;
+        }
+    }
+
+    private static final LocationHandle MISSING_LOCATION_HANDLE =
+            new ResolvedLocationHandle(AnnotationLocation.MISSING_LOCATION);
+
+    private static class ResolvedLocationHandle implements LocationHandle {
+        private final AnnotationLocation location;
+
+        ResolvedLocationHandle(AnnotationLocation location) {
+            this.location = location;
+        }
+
+        @Override
+        public AnnotationLocation resolve() {
+            return location;
         }
     }
 
     public void addSubtypeConstraint(Slot subtype, Slot supertype) {
-        if ((subtype instanceof ConstantSlot)
+        if (subtype != null && subtype.equals(supertype)) {
+            drop(DropRule.SAME_SLOT);
+        } else if (subtype instanceof ConstantSlot && supertype instanceof ConstantSlot
+                && realQualHierarchy.isSubtype(((ConstantSlot) subtype).getValue(), ((ConstantSlot) supertype).getValue())) {
+            drop(DropRule.SATISFIED_CONSTANTS);
+        } else if ((subtype instanceof ConstantSlot)
                 && this.realQualHierarchy.getTopAnnotations().contains(((ConstantSlot) subtype).getValue())) {
             this.addEqualityConstraint(supertype, (ConstantSlot) subtype);
         } else if ((supertype instanceof ConstantSlot)
@@ -174,15 +420,35 @@ public class ConstraintManager {
     }
 
     public void addEqualityConstraint(Slot first, Slot second) {
-        this.add(this.createEqualityConstraint(first, second));
+        if (first != null && first.equals(second)) {
+            drop(DropRule.SAME_SLOT);
+        } else if (first instanceof ConstantSlot && second instanceof ConstantSlot
+                && AnnotationUtils.areSame(((ConstantSlot) first).getValue(), ((ConstantSlot) second).getValue())) {
+            drop(DropRule.SATISFIED_CONSTANTS);
+        } else {
+            this.add(this.createEqualityConstraint(first, second));
+        }
     }
 
     public void addInequalityConstraint(Slot first, Slot second) {
-        this.add(this.createInequalityConstraint(first, second));
+        if (first instanceof ConstantSlot && second instanceof ConstantSlot
+                && !AnnotationUtils.areSame(((ConstantSlot) first).getValue(), ((ConstantSlot) second).getValue())) {
+            drop(DropRule.SATISFIED_CONSTANTS);
+        } else {
+            this.add(this.createInequalityConstraint(first, second));
+        }
     }
 
     public void addComparableConstraint(Slot first, Slot second) {
-        this.add(this.createComparableConstraint(first, second));
+        if (first != null && first.equals(second)) {
+            drop(DropRule.SAME_SLOT);
+        } else if (first instanceof ConstantSlot && second instanceof ConstantSlot
+                && (realQualHierarchy.isSubtype(((ConstantSlot) first).getValue(), ((ConstantSlot) second).getValue())
+                 || realQualHierarchy.isSubtype(((ConstantSlot) second).getValue(), ((ConstantSlot) first).getValue()))) {
+            drop(DropRule.SATISFIED_CONSTANTS);
+        } else {
+            this.add(this.createComparableConstraint(first, second));
+        }
     }
 
     public void addCombineConstraint(Slot target, Slot decl, Slot result) {
@@ -0,0 +1,29 @@
+package checkers.inference.model;
+
+/**
+ * Receives the constraints added to the ConstraintManager as they are generated.  After
+ * constraint generation has finished the sink is iterated to obtain every constraint it received,
+ * e.g. by the ConstraintNormalizer before solving.  ConstraintNormalizer also writes the
+ * normalized constraints to a sink, which is then handed to the solver.
+ *
+ * A sink holds no two equal constraints, but need not keep its constraints in memory and may drop
+ * duplicates only when it is iterated, see SpillingConstraintSink.
+ */
+public interface ConstraintSink extends Iterable<Constraint> {
+
+    /**
+     * Add constraint, unless the sink holds an equal constraint.
+     */
+    void add(Constraint constraint);
+
+    /**
+     * @return the number of constraints in this sink, including duplicates it has not dropped yet
+     */
+    int size();
+
+    /**
+     * @return the number of constraints dropped because the sink held an equal constraint, exact
+     *         once the sink has been iterated
+     */
+    long getDuplicateCount();
+}
@@ -35,8 +35,8 @@ public class EqualityConstraint extends Constraint implements BinaryConstraint {
         this.second = second;
     }
 
-    protected EqualityConstraint(Slot first, Slot second, AnnotationLocation location) {
-        super(Arrays.asList(first, second));
+    protected EqualityConstraint(Slot first, Slot second, LocationHandle location) {
+        super(Arrays.asList(first, second), location);
         this.first = first;
         this.second = second;
     }
@@ -34,7 +34,7 @@ public class ExistentialConstraint extends Constraint {
 
     protected ExistentialConstraint(VariableSlot potentialVariable,
                                  List<Constraint> potentialConstraints,
-                                 List<Constraint> alternateConstraints, AnnotationLocation location) {
+                                 List<Constraint> alternateConstraints, LocationHandle location) {
         super(combineSlots(potentialVariable, potentialConstraints, alternateConstraints), location);
         this.potentialVariable = potentialVariable;
         this.potentialConstraints = Collections.unmodifiableList(potentialConstraints);
@@ -0,0 +1,36 @@
+package checkers.inference.model;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The default ConstraintSink, keeps every distinct constraint in a set, in the order they were added.
+ */
+public class InMemoryConstraintSink implements ConstraintSink {
+
+    private final Set<Constraint> constraints = new LinkedHashSet<Constraint>();
+    private long duplicateCount = 0;
+
+    @Override
+    public void add(Constraint constraint) {
+        if (!constraints.add(constraint)) {
+            duplicateCount++;
+        }
+    }
+
+    @Override
+    public int size() {
+        return constraints.size();
+    }
+
+    @Override
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    @Override
+    public Iterator<Constraint> iterator() {
+        return constraints.iterator();
+    }
+}
@@ -13,7 +13,7 @@ public class InequalityConstraint extends Constraint implements BinaryConstraint
         this.second = second;
     }
 
-    protected InequalityConstraint(Slot first, Slot second, AnnotationLocation location) {
+    protected InequalityConstraint(Slot first, Slot second, LocationHandle location) {
         super(Arrays.asList(first, second), location);
         this.first = first;
         this.second = second;
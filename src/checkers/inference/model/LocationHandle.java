@@ -0,0 +1,15 @@
+package checkers.inference.model;
+
+/**
+ * A cheap reference to the source position a constraint was created at.  Constraint locations
+ * are only read for diagnostics and serialization, so ConstraintManager records a handle and the
+ * AnnotationLocation is computed when the compilation unit is left or when Constraint.getLocation
+ * is first called, whichever comes first.
+ */
+public interface LocationHandle {
+
+    /**
+     * @return the location this handle refers to, MISSING_LOCATION if it cannot be found
+     */
+    AnnotationLocation resolve();
+}
@@ -12,7 +12,7 @@ public class PreferenceConstraint extends Constraint {
     private final int weight;
 
     protected PreferenceConstraint(VariableSlot variable, ConstantSlot goal, int weight,
-            AnnotationLocation location) {
+            LocationHandle location) {
         super(Arrays.<Slot> asList(variable, goal), location);
         this.variable = variable;
         this.goal = goal;
@@ -30,7 +30,7 @@ public class SubtypeConstraint extends Constraint implements BinaryConstraint {
     private final Slot subtype;
     private final Slot supertype;
 
-    protected SubtypeConstraint(Slot subtype, Slot supertype, AnnotationLocation location) {
+    protected SubtypeConstraint(Slot subtype, Slot supertype, LocationHandle location) {
         super(Arrays.asList(subtype, supertype), location);
         this.subtype = subtype;
         this.supertype = supertype;
@@ -1,5 +1,6 @@
 package checkers.inference.model;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -60,19 +61,6 @@ public class VariableSlot extends Slot {
         return Kind.VARIABLE;
     }
 
-    public boolean isMergedTo(VariableSlot other) {
-        for (VariableSlot mergedTo: mergedToSlots) {
-            if (mergedTo.equals(other)) {
-                return true;
-            } else {
-                if (mergedTo.isMergedTo(other)) {
-                    return true;
-                }
-            }
-        }
-        return false;
-    }
-
     public int getId() {
         return id;
     }
@@ -81,8 +69,20 @@ public class VariableSlot extends Slot {
         this.id = id;
     }
 
+    /**
+     * @return the slots this slot was merged to directly, use SlotManager.addMergedToSlot to add one
+     */
     public Set<CombVariableSlot> getMergedToSlots() {
-        return mergedToSlots;
+        return Collections.unmodifiableSet(mergedToSlots);
+    }
+
+    /**
+     * Only SlotManager.addMergedToSlot should call this, it keeps the index of merge edges that
+     * SlotManager.isMergedTo relies on.
+     * @return true if the edge was not already present
+     */
+    public boolean addMergedToSlot(CombVariableSlot mergedTo) {
+        return mergedToSlots.add(mergedTo);
     }
 
     public Set<RefinementVariableSlot> getRefinedToSlots() {
@@ -11,6 +11,7 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.Map;
 
 import javax.annotation.processing.ProcessingEnvironment;
@@ -39,7 +40,7 @@ public class CnfSerializerSolver implements InferenceSolver {
     public InferenceSolution solve(
            Map<String, String> configuration,
            Collection<Slot> slots,
-           Collection<Constraint> constraints,
+           Iterable<Constraint> constraints,
            QualifierHierarchy qualHierarchy,
            ProcessingEnvironment processingEnvironment) {
 
@@ -47,7 +48,7 @@ public class CnfSerializerSolver implements InferenceSolver {
         // AnnotationMirror bottom =
         // qualHierarchy.getBottomAnnotations().iterator().next();
         this.slotManager = InferenceMain.getInstance().getSlotManager();
-        CnfVecIntSerializer cnfSerializer = new CnfVecIntSerializer(slotManager) {
+        CnfVecIntSerializer cnfSerializer = new CnfVecIntSerializer(slotManager, InferenceMain.getInstance().getSlotCompactor()) {
             @Override
             protected boolean isTop(ConstantSlot constantSlot) {
                 return AnnotationUtils.areSame(constantSlot.getValue(), top);
@@ -60,10 +61,13 @@ public class CnfSerializerSolver implements InferenceSolver {
         return null;
     }
 
-    protected void printCnf(File outputFile, Collection<Constraint> constraints, CnfVecIntSerializer serializer) {
+    protected void printCnf(File outputFile, Iterable<Constraint> constraints, CnfVecIntSerializer serializer) {
         try {
-            int totalVars = slotManager.getNumberOfSlots();
-            int totalConstraints = constraints.size();
+            int totalVars = serializer.getNumberOfVariables();
+            int totalConstraints = 0;
+            for (Iterator<Constraint> it = constraints.iterator(); it.hasNext(); it.next()) {
+                totalConstraints++;
+            }
 
             final BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile));
             String header = makeComment(
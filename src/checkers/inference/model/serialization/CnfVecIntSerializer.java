@@ -7,6 +7,7 @@ import java.util.Map;
 
 import org.sat4j.core.VecInt;
 
+import checkers.inference.SlotCompactor;
 import checkers.inference.SlotManager;
 import checkers.inference.model.CombVariableSlot;
 import checkers.inference.model.CombineConstraint;
@@ -29,12 +30,45 @@ import checkers.inference.model.VariableSlot;
 public abstract class CnfVecIntSerializer implements Serializer<VecInt[], VecInt[]> {
     private final SlotManager slotManager;
 
+    /** Renumbers variables into a dense range, null if the ids of slotManager are used */
+    private final SlotCompactor slotCompactor;
+
     /** var representing whether or not some potential var exists mapped to that potential var
      * <p>var exists -> var</p>**/
     private final Map<Integer, Integer> existentialToPotentialVar = new HashMap<>();
 
+    /** The inverse of existentialToPotentialVar, so every potential var gets a single existence var */
+    private final Map<Integer, Integer> potentialToExistentialVar = new HashMap<>();
+
     public CnfVecIntSerializer(SlotManager slotManager) {
+        this(slotManager, null);
+    }
+
+    public CnfVecIntSerializer(SlotManager slotManager, SlotCompactor slotCompactor) {
         this.slotManager = slotManager;
+        this.slotCompactor = slotCompactor;
+    }
+
+    /**
+     * @return the largest id of a variable in the clauses, not counting the variables
+     * created for existential constraints
+     */
+    public int getNumberOfVariables() {
+        return slotCompactor != null ? slotCompactor.getNumberOfVariables() : slotManager.getNumberOfSlots();
+    }
+
+    /**
+     * @return the SAT variable of slot, the id of slot unless the variables were compacted
+     */
+    protected int id(VariableSlot slot) {
+        return slotCompactor != null ? slotCompactor.getCompactId(slot) : slot.getId();
+    }
+
+    /**
+     * @return the slot id of a SAT variable returned by the solver
+     */
+    public int getSlotId(int var) {
+        return slotCompactor != null ? slotCompactor.getOriginalId(var) : var;
     }
 
     public Map<Integer, Integer> getExistentialToPotentialVar() {
@@ -49,7 +83,7 @@ public abstract class CnfVecIntSerializer implements Serializer<VecInt[], VecInt
             protected VecInt[] constant_variable(ConstantSlot subtype, VariableSlot supertype, SubtypeConstraint constraint) {
 
                 if (isTop(subtype)) {
-                    return asVecArray(-supertype.getId());
+                    return asVecArray(-id(supertype));
                 }
 
                 return emptyClauses;
@@ -58,7 +92,7 @@ public abstract class CnfVecIntSerializer implements Serializer<VecInt[], VecInt
             @Override
             protected VecInt[] variable_constant(VariableSlot subtype, ConstantSlot supertype, SubtypeConstraint constraint) {
                 if (!isTop(supertype)) {
-                    return asVecArray(subtype.getId());
+                    return asVecArray(id(subtype));
                 }
 
                 return emptyClauses;
@@ -68,7 +102,7 @@ public abstract class CnfVecIntSerializer implements Serializer<VecInt[], VecInt
             protected VecInt[] variable_variable(VariableSlot subtype, VariableSlot supertype, SubtypeConstraint constraint) {
 
                 //this is supertype => subtype which is the equivalent of (!supertype v subtype)
-                return asVecArray(-supertype.getId(), subtype.getId());
+                return asVecArray(-id(supertype), id(subtype));
             }
 
         }.accept(constraint.getSubtype(), constraint.getSupertype(), constraint);
@@ -83,9 +117,9 @@ public abstract class CnfVecIntSerializer implements Serializer<VecInt[], VecInt
             protected VecInt[] constant_variable(ConstantSlot slot1, VariableSlot slot2, EqualityConstraint constraint) {
 
                 if (isTop(slot1)) {
-                    return asVecArray(-slot2.getId());
+                    return asVecArray(-id(slot2));
                 } else {
-                    return asVecArray(slot2.getId());
+                    return asVecArray(id(slot2));
                 }
             }
 
@@ -99,8 +133,8 @@ public abstract class CnfVecIntSerializer implements Serializer<VecInt[], VecInt
 
                 // a <=> b which is the same as (!a v b) & (!b v a)
                 return new VecInt[]{
-                    asVec(-slot1.getId(),  slot2.getId()),
-                    asVec( slot1.getId(), -slot2.getId())
+                    asVec(-id(slot1),  id(slot2)),
+                    asVec( id(slot1), -id(slot2))
                 };
             }
 
@@ -116,9 +150,9 @@ public abstract class CnfVecIntSerializer implements Serializer<VecInt[], VecInt
             protected VecInt[] constant_variable(ConstantSlot slot1, VariableSlot slot2, InequalityConstraint constraint) {
 
                 if (isTop(slot1)) {
-                    return asVecArray(slot2.getId());
+                    return asVecArray(id(slot2));
                 } else {
-                    return asVecArray(-slot2.getId());
+                    return asVecArray(-id(slot2));
                 }
             }
 
@@ -132,8 +166,8 @@ public abstract class CnfVecIntSerializer implements Serializer<VecInt[], VecInt
 
                 // a <=> !b which is the same as (!a v !b) & (b v a)
                 return new VecInt[]{
-                        asVec(-slot1.getId(), -slot2.getId()),
-                        asVec( slot1.getId(),  slot2.getId())
+                        asVec(-id(slot1), -id(slot2)),
+                        asVec( id(slot1),  id(slot2))
                 };
             }
 
@@ -149,13 +183,15 @@ public abstract class CnfVecIntSerializer implements Serializer<VecInt[], VecInt
 
         //TODO: THIS ONLY WORKS IF THE CONSTRAINTS ARE NORMALIZED
         //TODO: WE SHOULD INSTEAD PIPE THROUGH THE ExistentialVariable ID
-        Integer existentialId = existentialToPotentialVar.get(constraint.getPotentialVariable().getId());
+        final Integer potentialId = constraint.getPotentialVariable().getId();
+        Integer existentialId = potentialToExistentialVar.get(potentialId);
         if (existentialId == null) {
-            // existentialId should not overlap with the Id of real slots in slot manager
-            // thus by computing sum of total slots number in slot manager
+            // existentialId should not overlap with the Id of real slots
+            // thus by computing sum of the number of variables
             // and the size of existentialToPotentialVar and plus 1 to get next id of existential Id here
-            existentialId = slotManager.getNumberOfSlots() + existentialToPotentialVar.size() + 1;
-            this.existentialToPotentialVar.put(new Integer(existentialId), new Integer(constraint.getPotentialVariable().getId()));
+            existentialId = getNumberOfVariables() + existentialToPotentialVar.size() + 1;
+            this.existentialToPotentialVar.put(existentialId, potentialId);
+            this.potentialToExistentialVar.put(potentialId, existentialId);
         }
 
         /**
@@ -144,13 +144,13 @@ public class JsonSerializer implements Serializer<String, JSONObject> {
 
     @SuppressWarnings("unused")
     private final Collection<Slot> slots;
-    private final Collection<Constraint> constraints;
+    private final Iterable<Constraint> constraints;
     private final Map<Integer, AnnotationMirror> solutions;
 
     private AnnotationMirrorSerializer annotationSerializer;
 
     public JsonSerializer(Collection<Slot> slots,
-                          Collection<Constraint> constraints,
+                          Iterable<Constraint> constraints,
                           Map<Integer, AnnotationMirror> solutions,
                           AnnotationMirrorSerializer annotationSerializer) {
 
@@ -185,7 +185,7 @@ public class JsonSerializer implements Serializer<String, JSONObject> {
         return variables;
     }
 
-    protected JSONArray constraintsToJsonArray(final Collection<Constraint> constraints) {
+    protected JSONArray constraintsToJsonArray(final Iterable<Constraint> constraints) {
         JSONArray jsonConstraints = new JSONArray();
         for (Constraint constraint : constraints) {
             JSONObject constraintObj = constraint.serialize(this);
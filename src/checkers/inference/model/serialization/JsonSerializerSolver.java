@@ -36,7 +36,7 @@ public class JsonSerializerSolver implements InferenceSolver {
     public InferenceSolution solve(
             Map<String, String> configuration,
             Collection<Slot> slots,
-            Collection<Constraint> constraints,
+            Iterable<Constraint> constraints,
             QualifierHierarchy qualHierarchy,
             ProcessingEnvironment processingEnvironment) {
 
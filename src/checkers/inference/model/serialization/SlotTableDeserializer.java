@@ -0,0 +1,277 @@
+package checkers.inference.model.serialization;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.framework.util.AnnotationBuilder;
+import org.checkerframework.javacutil.ErrorReporter;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import annotations.io.ASTPath;
+import annotations.io.ASTRecord;
+import checkers.inference.SlotManager;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.model.ComparableConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.InequalityConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.model.VariableSlot;
+import static checkers.inference.model.serialization.SlotTableSerializer.*;
+
+/**
+ * Reads a file written by SlotTableSerializer and merges its slots and constraints into
+ * the given SlotManager and ConstraintManager.
+ *
+ * Ids in the file are local to the run that wrote it.  Every slot is re-created through the
+ * SlotManager's create methods, so a VariableSlot whose AnnotationLocation already exists in
+ * the SlotManager is unified with the existing slot, and every other slot gets a fresh id.
+ * Constraints are then rewritten in terms of the merged slots and keep the locations they were
+ * written with.
+ */
+public class SlotTableDeserializer {
+
+    private final SlotManager slotManager;
+    private final ConstraintManager constraintManager;
+    private final ProcessingEnvironment processingEnv;
+
+    /** Maps ids in the file being read to slots in slotManager */
+    private final Map<Integer, Slot> idToSlot = new HashMap<>();
+
+    public SlotTableDeserializer(SlotManager slotManager, ConstraintManager constraintManager,
+                                 ProcessingEnvironment processingEnv) {
+        this.slotManager = slotManager;
+        this.constraintManager = constraintManager;
+        this.processingEnv = processingEnv;
+    }
+
+    /**
+     * Merge the slot table read from reader.
+     * @return the merged constraints, in terms of slots of slotManager
+     */
+    public Set<Constraint> merge(Reader reader) throws IOException, ParseException {
+        JSONObject root = (JSONObject) new JSONParser().parse(reader);
+        if (!VERSION.equals(root.get(VERSION_KEY))) {
+            ErrorReporter.errorAbort("Slot table version " + root.get(VERSION_KEY) + " is not supported, expected "
+                    + VERSION);
+        }
+        idToSlot.clear();
+
+        // Slots are written in id order and a slot only refers to slots created before it
+        for (Object slotObj : (JSONArray) root.get(SLOTS_KEY)) {
+            JSONObject jsonSlot = (JSONObject) slotObj;
+            idToSlot.put(toInt(jsonSlot.get(SLOT_ID)), createSlot(jsonSlot));
+        }
+
+        Set<Constraint> constraints = new LinkedHashSet<>(jsonArrayToConstraints((JSONArray) root.get(CONSTRAINTS_KEY)));
+        constraintManager.addAll(constraints);
+        return constraints;
+    }
+
+    /**
+     * @return the slot that the given id (local to the last file merged) was merged into
+     */
+    public Slot getMergedSlot(int id) {
+        return idToSlot.get(id);
+    }
+
+    private Slot createSlot(final JSONObject jsonSlot) {
+        final Slot.Kind kind = Slot.Kind.valueOf((String) jsonSlot.get(SLOT_KIND));
+        final AnnotationLocation location = jsonToLocation((JSONObject) jsonSlot.get(SLOT_LOCATION));
+
+        switch (kind) {
+            case VARIABLE:
+                VariableSlot variableSlot = slotManager.createVariableSlot(location);
+                if (Boolean.FALSE.equals(jsonSlot.get(SLOT_INSERTABLE))) {
+                    variableSlot.setInsertable(false);
+                }
+                return variableSlot;
+
+            case REFINEMENT_VARIABLE:
+                return slotManager.createRefinementVariableSlot(location, lookup(jsonSlot.get(SLOT_REFINED)));
+
+            case COMB_VARIABLE:
+                // Merges and viewpoint adaptations are cached separately, a merge must not be
+                // unified with the adaptation of the same operand pair
+                if (Boolean.TRUE.equals(jsonSlot.get(SLOT_MERGE))) {
+                    return slotManager.createMergeVariableSlot(lookup(jsonSlot.get(SLOT_FIRST)),
+                                                               lookup(jsonSlot.get(SLOT_SECOND)));
+                }
+                return slotManager.createCombVariableSlot(lookup(jsonSlot.get(SLOT_FIRST)),
+                                                          lookup(jsonSlot.get(SLOT_SECOND)));
+
+            case EXISTENTIAL_VARIABLE:
+                return slotManager.createExistentialVariableSlot(
+                        (VariableSlot) lookup(jsonSlot.get(SLOT_POTENTIAL)),
+                        (VariableSlot) lookup(jsonSlot.get(SLOT_ALTERNATIVE)));
+
+            case CONSTANT:
+                return slotManager.createConstantSlot(jsonToAnnotation((JSONObject) jsonSlot.get(SLOT_ANNOTATION)));
+
+            default:
+                ErrorReporter.errorAbort("Unknown slot kind: " + kind);
+                return null; // Dead
+        }
+    }
+
+    /**
+     * Rebuild a single constraint read from a slot table, in terms of the merged slots.
+     */
+    public Constraint readConstraint(final JSONObject jsonConstraint) {
+        return jsonToConstraint(jsonConstraint);
+    }
+
+    /**
+     * @return the merged slot for an id in the file being read
+     */
+    protected Slot lookup(final Object id) {
+        final Slot slot = idToSlot.get(toInt(id));
+        if (slot == null) {
+            ErrorReporter.errorAbort("Slot table refers to undefined slot " + id);
+        }
+        return slot;
+    }
+
+    private AnnotationLocation jsonToLocation(final JSONObject jsonLocation) {
+        if (jsonLocation == null) {
+            return AnnotationLocation.MISSING_LOCATION;
+        }
+
+        final AnnotationLocation.Kind kind = AnnotationLocation.Kind.valueOf((String) jsonLocation.get(LOCATION_KIND));
+        switch (kind) {
+            case AST_PATH:
+                final String path = (String) jsonLocation.get(LOCATION_PATH);
+                final ASTPath astPath;
+                try {
+                    astPath = ASTPath.parse(path);
+                } catch (Exception e) {
+                    ErrorReporter.errorAbort("Could not parse ASTPath: " + path, e);
+                    return null; // Dead
+                }
+                return new AstPathLocation(new ASTRecord(null,
+                        (String) jsonLocation.get(LOCATION_CLASS),
+                        (String) jsonLocation.get(LOCATION_METHOD),
+                        (String) jsonLocation.get(LOCATION_VAR),
+                        astPath));
+
+            case CLASS_DECL:
+                return new ClassDeclLocation((String) jsonLocation.get(LOCATION_PACKAGE),
+                                             (String) jsonLocation.get(LOCATION_CLASS));
+
+            case MISSING:
+            default:
+                return AnnotationLocation.MISSING_LOCATION;
+        }
+    }
+
+    private AnnotationMirror jsonToAnnotation(final JSONObject jsonAnnotation) {
+        final AnnotationBuilder builder =
+                new AnnotationBuilder(processingEnv, (String) jsonAnnotation.get(ANNOTATION_TYPE));
+
+        final JSONObject values = (JSONObject) jsonAnnotation.get(ANNOTATION_VALUES);
+        for (Object entryObj : values.entrySet()) {
+            final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) entryObj;
+            final String name = (String) entry.getKey();
+            final Object value = entry.getValue();
+
+            if (value instanceof JSONArray) {
+                List<Object> elements = new ArrayList<>();
+                for (Object element : (JSONArray) value) {
+                    elements.add(element instanceof Long ? toInt(element) : element);
+                }
+                builder.setValue(name, elements);
+            } else if (value instanceof String) {
+                builder.setValue(name, (String) value);
+            } else if (value instanceof Boolean) {
+                builder.setValue(name, (Boolean) value);
+            } else if (value instanceof Number) {
+                builder.setValue(name, toInt(value));
+            } else {
+                ErrorReporter.errorAbort("Unexpected annotation value " + value + " in " + jsonAnnotation);
+            }
+        }
+
+        return builder.build();
+    }
+
+    private List<Constraint> jsonArrayToConstraints(final JSONArray jsonConstraints) {
+        final List<Constraint> results = new ArrayList<>(jsonConstraints.size());
+        for (Object obj : jsonConstraints) {
+            results.add(jsonToConstraint((JSONObject) obj));
+        }
+        return results;
+    }
+
+    private Constraint jsonToConstraint(final JSONObject constraint) {
+        final String key = (String) constraint.get(CONSTRAINT_KEY);
+        final AnnotationLocation location = jsonToLocation((JSONObject) constraint.get(CONSTRAINT_LOCATION));
+        switch (key) {
+            case SUBTYPE_CONSTRAINT_KEY:
+            case EQUALITY_CONSTRAINT_KEY:
+            case INEQUALITY_CONSTRAINT_KEY:
+            case COMPARABLE_CONSTRAINT_KEY:
+                return makeBinary(key, lookup(constraint.get(CONSTRAINT_FIRST)),
+                                  lookup(constraint.get(CONSTRAINT_SECOND)), location);
+
+            case COMBINE_CONSTRAINT_KEY:
+                return constraintManager.restoreCombineConstraint(lookup(constraint.get(COMBINE_TARGET)),
+                        lookup(constraint.get(COMBINE_DECL)), lookup(constraint.get(COMBINE_RESULT)), location);
+
+            case PREFERENCE_CONSTRAINT_KEY:
+                return constraintManager.restorePreferenceConstraint((VariableSlot) lookup(constraint.get(PREFERENCE_VARIABLE)),
+                        (ConstantSlot) lookup(constraint.get(PREFERENCE_GOAL)), toInt(constraint.get(PREFERENCE_WEIGHT)),
+                        location);
+
+            case EXISTENTIAL_CONSTRAINT_KEY:
+                return constraintManager.restoreExistentialConstraint((VariableSlot) lookup(constraint.get(EXISTENTIAL_POTENTIAL)),
+                        jsonArrayToConstraints((JSONArray) constraint.get(EXISTENTIAL_THEN)),
+                        jsonArrayToConstraints((JSONArray) constraint.get(EXISTENTIAL_ELSE)),
+                        location);
+
+            default:
+                ErrorReporter.errorAbort("Unknown constraint type: " + constraint);
+                return null; // Dead
+        }
+    }
+
+    private Constraint makeBinary(final String key, final Slot first, final Slot second,
+                                  final AnnotationLocation location) {
+        final Class<? extends Constraint> constraintClass;
+        switch (key) {
+            case SUBTYPE_CONSTRAINT_KEY:
+                constraintClass = SubtypeConstraint.class;
+                break;
+            case EQUALITY_CONSTRAINT_KEY:
+                constraintClass = EqualityConstraint.class;
+                break;
+            case INEQUALITY_CONSTRAINT_KEY:
+                constraintClass = InequalityConstraint.class;
+                break;
+            default:
+                constraintClass = ComparableConstraint.class;
+                break;
+        }
+        return constraintManager.restoreBinaryConstraint(constraintClass, first, second, location);
+    }
+
+    private static int toInt(final Object number) {
+        return ((Number) number).intValue();
+    }
+}
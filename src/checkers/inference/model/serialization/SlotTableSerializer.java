@@ -0,0 +1,353 @@
+package checkers.inference.model.serialization;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+
+import org.checkerframework.javacutil.ErrorReporter;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import annotations.io.ASTRecord;
+import checkers.inference.SlotManager;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.CombineConstraint;
+import checkers.inference.model.ComparableConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.ExistentialConstraint;
+import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.InequalityConstraint;
+import checkers.inference.model.PreferenceConstraint;
+import checkers.inference.model.RefinementVariableSlot;
+import checkers.inference.model.Serializer;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.model.VariableSlot;
+
+/**
+ * Writes every slot (including its AnnotationLocation and the slots it is derived from) and
+ * every constraint generated by one javac run, so that they can later be re-imported into the
+ * SlotManager and ConstraintManager of another run by SlotTableDeserializer.
+ *
+ * Unlike JsonSerializer, whose output is meant for solvers and the game, this format
+ * is lossless: constraints are written before normalization and slots refer to each other
+ * by id.
+ *
+ * {
+ *   "version": "1",
+ *   "slots": [
+ *     { "id": 3, "kind": "VARIABLE", "insertable": true,
+ *       "location": { "kind": "AST_PATH", "class": "a.B", "method": "m()V", "var": null, "path": "..." } },
+ *     { "id": 4, "kind": "REFINEMENT_VARIABLE", "refined": 3, "location": ... },
+ *     { "id": 5, "kind": "CONSTANT", "annotation": { "type": "a.Qual", "values": { "value": ["X"] } } },
+ *     { "id": 6, "kind": "COMB_VARIABLE", "first": 3, "second": 4, "merge": true },
+ *     ...
+ *   ],
+ *   "constraints": [
+ *     { "constraint": "subtype", "first": 3, "second": 5, "location": ... },
+ *     ...
+ *   ]
+ * }
+ *
+ * Locations are omitted if they are MISSING_LOCATION.  "merge" is only written for comb slots
+ * created by SlotManager.createMergeVariableSlot, which are cached by the slots they join rather
+ * than by their operand pair.
+ */
+public class SlotTableSerializer implements Serializer<JSONObject, JSONObject> {
+
+    protected static final String VERSION_KEY = "version";
+    public static final String VERSION = "2";
+
+    protected static final String SLOTS_KEY = "slots";
+    protected static final String CONSTRAINTS_KEY = "constraints";
+
+    protected static final String SLOT_ID = "id";
+    protected static final String SLOT_KIND = "kind";
+    protected static final String SLOT_INSERTABLE = "insertable";
+    protected static final String SLOT_LOCATION = "location";
+    protected static final String SLOT_REFINED = "refined";
+    protected static final String SLOT_FIRST = "first";
+    protected static final String SLOT_SECOND = "second";
+    protected static final String SLOT_POTENTIAL = "potential";
+    protected static final String SLOT_ALTERNATIVE = "alternative";
+    protected static final String SLOT_ANNOTATION = "annotation";
+    protected static final String SLOT_MERGE = "merge";
+
+    protected static final String ANNOTATION_TYPE = "type";
+    protected static final String ANNOTATION_VALUES = "values";
+
+    protected static final String LOCATION_KIND = "kind";
+    protected static final String LOCATION_CLASS = "class";
+    protected static final String LOCATION_METHOD = "method";
+    protected static final String LOCATION_VAR = "var";
+    protected static final String LOCATION_PATH = "path";
+    protected static final String LOCATION_PACKAGE = "package";
+
+    protected static final String CONSTRAINT_KEY = "constraint";
+    protected static final String SUBTYPE_CONSTRAINT_KEY = "subtype";
+    protected static final String EQUALITY_CONSTRAINT_KEY = "equality";
+    protected static final String INEQUALITY_CONSTRAINT_KEY = "inequality";
+    protected static final String COMPARABLE_CONSTRAINT_KEY = "comparable";
+    protected static final String COMBINE_CONSTRAINT_KEY = "combine";
+    protected static final String PREFERENCE_CONSTRAINT_KEY = "preference";
+    protected static final String EXISTENTIAL_CONSTRAINT_KEY = "existential";
+
+    protected static final String CONSTRAINT_LOCATION = "location";
+    protected static final String CONSTRAINT_FIRST = "first";
+    protected static final String CONSTRAINT_SECOND = "second";
+    protected static final String COMBINE_TARGET = "target";
+    protected static final String COMBINE_DECL = "declared";
+    protected static final String COMBINE_RESULT = "result";
+    protected static final String PREFERENCE_VARIABLE = "variable";
+    protected static final String PREFERENCE_GOAL = "goal";
+    protected static final String PREFERENCE_WEIGHT = "weight";
+    protected static final String EXISTENTIAL_POTENTIAL = "potential";
+    protected static final String EXISTENTIAL_THEN = "then";
+    protected static final String EXISTENTIAL_ELSE = "else";
+
+    private final SlotManager slotManager;
+
+    /**
+     * @param slotManager the SlotManager the serialized slots were created by
+     */
+    public SlotTableSerializer(SlotManager slotManager) {
+        this.slotManager = slotManager;
+    }
+
+    @SuppressWarnings("unchecked")
+    public JSONObject serialize(Collection<Slot> slots, Iterable<Constraint> constraints) {
+        JSONArray jsonSlots = new JSONArray();
+        for (Slot slot : slots) {
+            jsonSlots.add(slot.serialize(this));
+        }
+
+        JSONObject result = new JSONObject();
+        result.put(VERSION_KEY, VERSION);
+        result.put(SLOTS_KEY, jsonSlots);
+        result.put(CONSTRAINTS_KEY, constraintsToJsonArray(constraints));
+        return result;
+    }
+
+    public void write(Collection<Slot> slots, Iterable<Constraint> constraints, Writer writer) throws IOException {
+        serialize(slots, constraints).writeJSONString(writer);
+        writer.flush();
+    }
+
+    @SuppressWarnings("unchecked")
+    protected JSONArray constraintsToJsonArray(final Iterable<Constraint> constraints) {
+        JSONArray jsonConstraints = new JSONArray();
+        for (Constraint constraint : constraints) {
+            jsonConstraints.add(constraint.serialize(this));
+        }
+        return jsonConstraints;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected JSONObject slotObject(final VariableSlot slot) {
+        JSONObject obj = new JSONObject();
+        obj.put(SLOT_ID, slot.getId());
+        obj.put(SLOT_KIND, slot.getKind().name());
+        obj.put(SLOT_INSERTABLE, slot.isInsertable());
+        JSONObject location = locationToJson(slot.getLocation());
+        if (location != null) {
+            obj.put(SLOT_LOCATION, location);
+        }
+        return obj;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected JSONObject locationToJson(final AnnotationLocation location) {
+        if (location == null) {
+            return null;
+        }
+
+        final JSONObject obj = new JSONObject();
+        switch (location.getKind()) {
+            case AST_PATH:
+                final ASTRecord record = ((AstPathLocation) location).getAstRecord();
+                obj.put(LOCATION_KIND, location.getKind().name());
+                obj.put(LOCATION_CLASS, record.className);
+                obj.put(LOCATION_METHOD, record.methodName);
+                obj.put(LOCATION_VAR, record.varName);
+                obj.put(LOCATION_PATH, record.astPath.toString());
+                return obj;
+
+            case CLASS_DECL:
+                final ClassDeclLocation classDecl = (ClassDeclLocation) location;
+                obj.put(LOCATION_KIND, location.getKind().name());
+                obj.put(LOCATION_PACKAGE, classDecl.getPackageName());
+                obj.put(LOCATION_CLASS, classDecl.getClassName());
+                return obj;
+
+            case MISSING:
+            default:
+                return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected JSONObject annotationToJson(final AnnotationMirror annotation) {
+        JSONObject values = new JSONObject();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : annotation.getElementValues().entrySet()) {
+            values.put(entry.getKey().getSimpleName().toString(),
+                       annotationValueToJson(annotation, entry.getValue().getValue()));
+        }
+
+        JSONObject obj = new JSONObject();
+        obj.put(ANNOTATION_TYPE,
+                ((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().toString());
+        obj.put(ANNOTATION_VALUES, values);
+        return obj;
+    }
+
+    /**
+     * Only the element value kinds used by the qualifiers of the type systems in this
+     * repository (strings, primitives, and arrays of them) are supported.
+     */
+    @SuppressWarnings("unchecked")
+    private Object annotationValueToJson(final AnnotationMirror annotation, final Object value) {
+        if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return value;
+        }
+
+        if (value instanceof List) {
+            JSONArray array = new JSONArray();
+            for (Object element : (List<?>) value) {
+                array.add(annotationValueToJson(annotation, ((AnnotationValue) element).getValue()));
+            }
+            return array;
+        }
+
+        ErrorReporter.errorAbort("Cannot serialize element value " + value + " of annotation " + annotation);
+        return null; // Dead
+    }
+
+    protected static int idOf(final Slot slot) {
+        return ((VariableSlot) slot).getId();
+    }
+
+    @Override
+    public JSONObject serialize(VariableSlot slot) {
+        return slotObject(slot);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JSONObject serialize(ConstantSlot slot) {
+        JSONObject obj = slotObject(slot);
+        obj.put(SLOT_ANNOTATION, annotationToJson(slot.getValue()));
+        return obj;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JSONObject serialize(ExistentialVariableSlot slot) {
+        JSONObject obj = slotObject(slot);
+        obj.put(SLOT_POTENTIAL, slot.getPotentialSlot().getId());
+        obj.put(SLOT_ALTERNATIVE, slot.getAlternativeSlot().getId());
+        return obj;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JSONObject serialize(RefinementVariableSlot slot) {
+        JSONObject obj = slotObject(slot);
+        obj.put(SLOT_REFINED, idOf(slot.getRefined()));
+        return obj;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JSONObject serialize(CombVariableSlot slot) {
+        JSONObject obj = slotObject(slot);
+        obj.put(SLOT_FIRST, idOf(slot.getFirst()));
+        obj.put(SLOT_SECOND, idOf(slot.getSecond()));
+        if (slotManager.isMergeVariable(slot)) {
+            obj.put(SLOT_MERGE, true);
+        }
+        return obj;
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONObject constraintObject(final String key, final Constraint constraint) {
+        JSONObject obj = new JSONObject();
+        obj.put(CONSTRAINT_KEY, key);
+        JSONObject location = locationToJson(constraint.getLocation());
+        if (location != null) {
+            obj.put(CONSTRAINT_LOCATION, location);
+        }
+        return obj;
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONObject binaryConstraint(final String key, final Constraint constraint,
+                                        final Slot first, final Slot second) {
+        JSONObject obj = constraintObject(key, constraint);
+        obj.put(CONSTRAINT_FIRST, idOf(first));
+        obj.put(CONSTRAINT_SECOND, idOf(second));
+        return obj;
+    }
+
+    @Override
+    public JSONObject serialize(SubtypeConstraint constraint) {
+        return binaryConstraint(SUBTYPE_CONSTRAINT_KEY, constraint, constraint.getSubtype(), constraint.getSupertype());
+    }
+
+    @Override
+    public JSONObject serialize(EqualityConstraint constraint) {
+        return binaryConstraint(EQUALITY_CONSTRAINT_KEY, constraint, constraint.getFirst(), constraint.getSecond());
+    }
+
+    @Override
+    public JSONObject serialize(InequalityConstraint constraint) {
+        return binaryConstraint(INEQUALITY_CONSTRAINT_KEY, constraint, constraint.getFirst(), constraint.getSecond());
+    }
+
+    @Override
+    public JSONObject serialize(ComparableConstraint constraint) {
+        return binaryConstraint(COMPARABLE_CONSTRAINT_KEY, constraint, constraint.getFirst(), constraint.getSecond());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JSONObject serialize(CombineConstraint constraint) {
+        JSONObject obj = constraintObject(COMBINE_CONSTRAINT_KEY, constraint);
+        obj.put(COMBINE_TARGET, idOf(constraint.getTarget()));
+        obj.put(COMBINE_DECL, idOf(constraint.getDeclared()));
+        obj.put(COMBINE_RESULT, idOf(constraint.getResult()));
+        return obj;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JSONObject serialize(PreferenceConstraint constraint) {
+        JSONObject obj = constraintObject(PREFERENCE_CONSTRAINT_KEY, constraint);
+        obj.put(PREFERENCE_VARIABLE, constraint.getVariable().getId());
+        obj.put(PREFERENCE_GOAL, constraint.getGoal().getId());
+        obj.put(PREFERENCE_WEIGHT, constraint.getWeight());
+        return obj;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JSONObject serialize(ExistentialConstraint constraint) {
+        JSONObject obj = constraintObject(EXISTENTIAL_CONSTRAINT_KEY, constraint);
+        obj.put(EXISTENTIAL_POTENTIAL, constraint.getPotentialVariable().getId());
+        obj.put(EXISTENTIAL_THEN, constraintsToJsonArray(constraint.potentialConstraints()));
+        obj.put(EXISTENTIAL_ELSE, constraintsToJsonArray(constraint.getAlternateConstraints()));
+        return obj;
+    }
+}
@@ -0,0 +1,315 @@
+package checkers.inference.model.serialization;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.checkerframework.javacutil.ErrorReporter;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import checkers.inference.SlotManager;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.ConstraintSink;
+import checkers.inference.model.Slot;
+
+/**
+ * A ConstraintSink that appends every constraint to a spill file instead of keeping it in memory.
+ * Each line of the file holds the key of a constraint, a tab, and the constraint as a
+ * SlotTableSerializer JSON object.  The key is the JSON object of the constraint without its
+ * location, equal constraints have equal keys.  Constraints refer to slots by id, so each
+ * iteration re-reads the file and rebuilds the constraints in terms of the slots of the
+ * SlotManager.
+ *
+ * Duplicates are dropped in two steps, so that memory does not grow with the number of constraints:
+ *
+ * add drops a constraint whose key is in a fixed size cache of the keys of recently added
+ * constraints, indexed by the hash of the key.  This catches the duplicates that are generated
+ * close together, e.g. by dataflow iterating over a loop, without a disk access.
+ *
+ * The remaining duplicates are dropped on disk before the file is first iterated after a
+ * constraint was added, see deduplicate.  The lines are distributed to partition files by the hash
+ * of their key, so equal keys end up in the same partition, and each partition is deduplicated
+ * in memory on its own.  The number of partitions grows with the size of the spill file, so the
+ * keys held in memory at once are bounded by partitionBytes.  Constraints are iterated in the
+ * order they were added if the file fits into a single partition, otherwise partition by partition.
+ *
+ * The writer is closed when the sink is iterated and reopened if more constraints are added, and
+ * the spill file is deleted when the JVM exits.
+ */
+public class SpillingConstraintSink implements ConstraintSink {
+
+    private static final int DEFAULT_RECENT_KEYS = 1 << 14;
+    private static final long DEFAULT_PARTITION_BYTES = 64L << 20;
+
+    private static final char KEY_SEPARATOR = '\t';
+
+    private final File spillFile;
+    private final SlotTableSerializer serializer;
+    private final SlotTableDeserializer deserializer;
+
+    /** Serializes constraints without their locations, to find duplicates */
+    private final SlotTableSerializer keySerializer;
+
+    /** The keys of recently added constraints, see add */
+    private final String[] recentKeys;
+
+    /** The largest number of bytes of the spill file that are deduplicated in memory at once */
+    private final long partitionBytes;
+
+    /** The number of lines in the spill file */
+    private int size = 0;
+    private long duplicateCount = 0;
+
+    /** False if a constraint was added since the spill file was last deduplicated */
+    private boolean deduplicated = true;
+
+    // Null from the first call to iterator until the next constraint is added
+    private BufferedWriter writer;
+
+    public SpillingConstraintSink(File spillFile, final SlotManager slotManager, ConstraintManager constraintManager) {
+        this(spillFile, slotManager, constraintManager, DEFAULT_RECENT_KEYS, DEFAULT_PARTITION_BYTES);
+    }
+
+    /**
+     * @param recentKeys the number of keys of recently added constraints checked by add
+     * @param partitionBytes the largest number of bytes of the spill file deduplicated in memory at once
+     */
+    public SpillingConstraintSink(File spillFile, final SlotManager slotManager, ConstraintManager constraintManager,
+                                  int recentKeys, long partitionBytes) {
+        this.spillFile = spillFile;
+        this.recentKeys = new String[recentKeys];
+        this.partitionBytes = partitionBytes;
+        this.serializer = new SlotTableSerializer(slotManager);
+        this.keySerializer = new SlotTableSerializer(slotManager) {
+            @Override
+            protected JSONObject locationToJson(AnnotationLocation location) {
+                return null;
+            }
+        };
+        spillFile.deleteOnExit();
+        writer = openWriter(spillFile, false);
+
+        // Ids in the spill file are the ids of slotManager, so no slot table is needed
+        this.deserializer = new SlotTableDeserializer(slotManager, constraintManager, null) {
+            @Override
+            protected Slot lookup(Object id) {
+                final Slot slot = slotManager.getVariable(((Number) id).intValue());
+                if (slot == null) {
+                    ErrorReporter.errorAbort("Spilled constraint refers to unknown slot " + id);
+                }
+                return slot;
+            }
+        };
+    }
+
+    private static BufferedWriter openWriter(File file, boolean append) {
+        try {
+            return new BufferedWriter(new FileWriter(file, append));
+        } catch (IOException e) {
+            ErrorReporter.errorAbort("Could not open constraint spill file " + file, e);
+            return null; // Dead
+        }
+    }
+
+    private static BufferedReader openReader(File file) {
+        try {
+            return new BufferedReader(new FileReader(file));
+        } catch (IOException e) {
+            ErrorReporter.errorAbort("Could not read constraint spill file " + file, e);
+            return null; // Dead
+        }
+    }
+
+    @Override
+    public void add(Constraint constraint) {
+        final String key = constraint.serialize(keySerializer).toJSONString();
+        final int index = (key.hashCode() & Integer.MAX_VALUE) % recentKeys.length;
+        if (key.equals(recentKeys[index])) {
+            duplicateCount++;
+            return;
+        }
+        recentKeys[index] = key;
+
+        if (writer == null) {
+            writer = openWriter(spillFile, true);
+        }
+        try {
+            writer.write(key);
+            writer.write(KEY_SEPARATOR);
+            constraint.serialize(serializer).writeJSONString(writer);
+            writer.newLine();
+        } catch (IOException e) {
+            ErrorReporter.errorAbort("Could not write to constraint spill file " + spillFile, e);
+        }
+        size++;
+        deduplicated = false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    @Override
+    public Iterator<Constraint> iterator() {
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        } catch (IOException e) {
+            ErrorReporter.errorAbort("Could not write to constraint spill file " + spillFile, e);
+        }
+
+        if (!deduplicated) {
+            deduplicate();
+        }
+        return new SpillFileIterator(openReader(spillFile));
+    }
+
+    /**
+     * Drop the lines of the spill file whose key is on an earlier line of the same partition,
+     * see the class comment.
+     */
+    private void deduplicate() {
+        final int numberOfPartitions = (int) Math.max(1, (spillFile.length() + partitionBytes - 1) / partitionBytes);
+
+        final File[] partitions;
+        if (numberOfPartitions == 1) {
+            partitions = new File[] { spillFile };
+        } else {
+            partitions = partition(numberOfPartitions);
+        }
+
+        final File deduplicatedFile = new File(spillFile.getPath() + ".dedup");
+        deduplicatedFile.deleteOnExit();
+        int distinct = 0;
+        try (BufferedWriter out = openWriter(deduplicatedFile, false)) {
+            for (File partition : partitions) {
+                final Set<String> keys = new HashSet<>();
+                try (BufferedReader in = openReader(partition)) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (keys.add(line.substring(0, line.indexOf(KEY_SEPARATOR)))) {
+                            out.write(line);
+                            out.newLine();
+                            distinct++;
+                        }
+                    }
+                }
+                if (partition != spillFile) {
+                    partition.delete();
+                }
+            }
+        } catch (IOException e) {
+            ErrorReporter.errorAbort("Could not deduplicate constraint spill file " + spillFile, e);
+        }
+
+        if (!spillFile.delete() || !deduplicatedFile.renameTo(spillFile)) {
+            ErrorReporter.errorAbort("Could not replace constraint spill file " + spillFile);
+        }
+
+        duplicateCount += size - distinct;
+        size = distinct;
+        deduplicated = true;
+    }
+
+    /**
+     * Distribute the lines of the spill file to numberOfPartitions files by the hash of their key.
+     */
+    private File[] partition(int numberOfPartitions) {
+        final File[] partitions = new File[numberOfPartitions];
+        final BufferedWriter[] writers = new BufferedWriter[numberOfPartitions];
+        try {
+            for (int i = 0; i < numberOfPartitions; i++) {
+                partitions[i] = new File(spillFile.getPath() + ".part" + i);
+                partitions[i].deleteOnExit();
+                writers[i] = openWriter(partitions[i], false);
+            }
+
+            try (BufferedReader in = openReader(spillFile)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    final String key = line.substring(0, line.indexOf(KEY_SEPARATOR));
+                    final BufferedWriter out = writers[(key.hashCode() & Integer.MAX_VALUE) % numberOfPartitions];
+                    out.write(line);
+                    out.newLine();
+                }
+            }
+
+            for (BufferedWriter out : writers) {
+                out.close();
+            }
+        } catch (IOException e) {
+            ErrorReporter.errorAbort("Could not partition constraint spill file " + spillFile, e);
+            return null; // Dead
+        }
+        return partitions;
+    }
+
+    private class SpillFileIterator implements Iterator<Constraint> {
+        private final BufferedReader reader;
+        private final JSONParser parser = new JSONParser();
+        private String nextLine;
+
+        SpillFileIterator(BufferedReader reader) {
+            this.reader = reader;
+            advance();
+        }
+
+        private void advance() {
+            try {
+                nextLine = reader.readLine();
+                if (nextLine == null) {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                ErrorReporter.errorAbort("Could not read constraint spill file " + spillFile, e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextLine != null;
+        }
+
+        @Override
+        public Constraint next() {
+            if (nextLine == null) {
+                throw new NoSuchElementException();
+            }
+
+            final Constraint constraint;
+            try {
+                final String json = nextLine.substring(nextLine.indexOf(KEY_SEPARATOR) + 1);
+                constraint = deserializer.readConstraint((JSONObject) parser.parse(json));
+            } catch (Exception e) {
+                ErrorReporter.errorAbort("Malformed constraint in spill file " + spillFile + ": " + nextLine, e);
+                return null; // Dead
+            }
+
+            advance();
+            return constraint;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
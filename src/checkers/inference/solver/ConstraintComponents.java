@@ -0,0 +1,102 @@
+package checkers.inference.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+
+/**
+ * Partitions constraints into connected components:  two constraints are in the same component
+ * if they (transitively) share a variable.  Constants do not connect constraints, since their
+ * value is fixed.  Components share no variables, so they can be solved independently.
+ *
+ * Components are listed in the order of their first constraint, and each component keeps the
+ * order of its constraints, so decomposing the same constraints always gives the same result.
+ * Constraints without variables are in no component.
+ */
+public class ConstraintComponents {
+
+    private ConstraintComponents() {
+    }
+
+    public static List<List<Constraint>> decompose(Iterable<Constraint> constraints) {
+        int maxId = 0;
+        int numberOfConstraints = 0;
+        for (Constraint constraint : constraints) {
+            numberOfConstraints++;
+            for (Slot slot : constraint.getSlots()) {
+                if (slot.isVariable()) {
+                    maxId = Math.max(maxId, ((VariableSlot) slot).getId());
+                }
+            }
+        }
+
+        final int[] parents = new int[maxId + 1];
+        Arrays.fill(parents, -1);
+
+        final int[] firstIds = new int[numberOfConstraints];
+        int index = 0;
+        for (Constraint constraint : constraints) {
+            int first = -1;
+            for (Slot slot : constraint.getSlots()) {
+                if (slot.isVariable()) {
+                    final int id = ((VariableSlot) slot).getId();
+                    if (parents[id] == -1) {
+                        parents[id] = id;
+                    }
+                    if (first == -1) {
+                        first = id;
+                    } else {
+                        union(parents, first, id);
+                    }
+                }
+            }
+            firstIds[index++] = first;
+        }
+
+        final Map<Integer, List<Constraint>> components = new LinkedHashMap<>();
+        index = 0;
+        for (Constraint constraint : constraints) {
+            final int first = firstIds[index++];
+            if (first == -1) {
+                continue;
+            }
+
+            final Integer root = find(parents, first);
+            List<Constraint> component = components.get(root);
+            if (component == null) {
+                component = new ArrayList<>();
+                components.put(root, component);
+            }
+            component.add(constraint);
+        }
+
+        return new ArrayList<>(components.values());
+    }
+
+    private static int find(int[] parents, int id) {
+        int root = id;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        while (parents[id] != root) {
+            final int next = parents[id];
+            parents[id] = root;
+            id = next;
+        }
+        return root;
+    }
+
+    private static void union(int[] parents, int id1, int id2) {
+        final int root1 = find(parents, id1);
+        final int root2 = find(parents, id2);
+        if (root1 != root2) {
+            parents[Math.max(root1, root2)] = Math.min(root1, root2);
+        }
+    }
+}
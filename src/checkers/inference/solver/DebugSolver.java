@@ -41,7 +41,7 @@ public class DebugSolver implements InferenceSolver {
     public InferenceSolution solve(
             Map<String, String> configuration,
             Collection<Slot> slots,
-            Collection<Constraint> constraints,
+            Iterable<Constraint> constraints,
             QualifierHierarchy qualHierarchy,
             ProcessingEnvironment processingEnvironment) {
 
@@ -3,10 +3,13 @@ package checkers.inference.solver;
 import org.checkerframework.framework.type.QualifierHierarchy;
 import org.checkerframework.javacutil.AnnotationUtils;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
@@ -18,7 +21,9 @@ import checkers.inference.DefaultInferenceSolution;
 import checkers.inference.InferenceMain;
 import checkers.inference.InferenceSolution;
 import checkers.inference.InferenceSolver;
+import checkers.inference.SlotCompactor;
 import checkers.inference.SlotManager;
+import checkers.inference.SoftConstraintSolver;
 import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.Slot;
@@ -28,24 +33,51 @@ import checkers.inference.model.serialization.CnfVecIntSerializer;
  * This solver is used to convert any constraint set using a type system with only 2 types (Top/Bottom),
  * into a SAT problem.  This SAT problem is then solved by SAT4J and the output is converted back
  * into an InferenceSolution.
+ *
+ * With the components solver arg, the constraints are first split into connected components
+ * (see ConstraintComponents), which share no variables and are solved independently on a
+ * fork-join pool, each by its own SAT4J instance with its variables numbered densely.  Components
+ * with at most SMALL_COMPONENT_KEY variables are solved by trying every assignment instead of
+ * calling SAT4J.  The solutions of the components are merged into one InferenceSolution.
+ *
+ * Component solving changes the results in two ways, which is why it is not the default:
+ * variables that appear in no constraint get no value (rather than the value SAT4J happens to
+ * give them), and when several assignments satisfy the most clauses, each SAT4J instance or
+ * enumeration may pick a different one than a single SAT4J run over every constraint.
+ * Enumeration picks the first best assignment counting up from all variables top (SAT4J's
+ * default phase is negative as well), but SAT4J's choice also depends on its search order.
+ *
+ * Solver args:
+ *   components=true   solve the connected components of the constraints separately
+ *   threads=n         the number of threads used to solve components, the number of processors by default
+ *   smallComponent=n  the largest number of variables of a component solved without SAT4J (at most 16)
  */
-public class MaxSat2TypeSolver implements InferenceSolver {
+public class MaxSat2TypeSolver implements InferenceSolver, SoftConstraintSolver {
+
+    private static final String COMPONENTS_KEY = "components";
+    private static final String THREADS_KEY = "threads";
+    private static final String SMALL_COMPONENT_KEY = "smallComponent";
+    private static final int DEFAULT_SMALL_COMPONENT = 4;
+    // Enumeration is exponential in the number of variables
+    private static final int MAX_SMALL_COMPONENT = 16;
 
     // private QualifierHierarchy qualHierarchy;
-    private Collection<Constraint> constraints;
+    private Iterable<Constraint> constraints;
     // private Collection<Slot> slots;
 
     // private AnnotationMirror defaultValue;
     private AnnotationMirror top;
     private AnnotationMirror bottom;
-    private CnfVecIntSerializer serializer;
     private SlotManager slotManager;
+    private boolean solveComponents;
+    private int threads;
+    private int smallComponent;
 
     @Override
     public InferenceSolution solve(
             Map<String, String> configuration,
             Collection<Slot> slots,
-            Collection<Constraint> constraints,
+            Iterable<Constraint> constraints,
             QualifierHierarchy qualHierarchy,
             ProcessingEnvironment processingEnvironment) {
 
@@ -56,21 +88,87 @@ public class MaxSat2TypeSolver implements InferenceSolver {
         this.top = qualHierarchy.getTopAnnotations().iterator().next();
         this.bottom = qualHierarchy.getBottomAnnotations().iterator().next();
         this.slotManager = InferenceMain.getInstance().getSlotManager();
-        this.serializer = new CnfVecIntSerializer(slotManager) {
+        this.solveComponents = Boolean.parseBoolean(configuration.get(COMPONENTS_KEY));
+        this.threads = configuration.containsKey(THREADS_KEY) ? Integer.parseInt(configuration.get(THREADS_KEY))
+                                                              : Runtime.getRuntime().availableProcessors();
+        this.smallComponent = configuration.containsKey(SMALL_COMPONENT_KEY)
+                            ? Math.min(Integer.parseInt(configuration.get(SMALL_COMPONENT_KEY)), MAX_SMALL_COMPONENT)
+                            : DEFAULT_SMALL_COMPONENT;
+        // TODO: This needs to be parameterized based on the type system
+        // this.defaultValue = top;
+
+        return solve();
+    }
+
+    public InferenceSolution solve() {
+        if (!solveComponents) {
+            return new DefaultInferenceSolution(
+                    solve(constraints, InferenceMain.getInstance().getSlotCompactor(), false));
+        }
+
+        final Map<Integer, AnnotationMirror> result = new HashMap<>();
+
+        final List<List<Constraint>> components = ConstraintComponents.decompose(constraints);
+        InferenceMain.getInstance().logger.info("MaxSat2TypeSolver: " + components.size() + " components");
+
+        final List<ComponentTask> tasks = new ArrayList<>(components.size());
+        final ForkJoinPool pool = new ForkJoinPool(Math.max(threads, 1));
+        try {
+            for (List<Constraint> component : components) {
+                final ComponentTask task = new ComponentTask(component);
+                tasks.add(task);
+                pool.execute(task);
+            }
+
+            // Components share no variables, so the order in which they are merged does not matter
+            for (ComponentTask task : tasks) {
+                result.putAll(task.join());
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        return new DefaultInferenceSolution(result);
+    }
+
+    private CnfVecIntSerializer createSerializer(SlotCompactor slotCompactor) {
+        return new CnfVecIntSerializer(slotManager, slotCompactor) {
             @Override
             protected boolean isTop(ConstantSlot constantSlot) {
                 return AnnotationUtils.areSame(constantSlot.getValue(), top);
             }
         };
-        // TODO: This needs to be parameterized based on the type system
-        // this.defaultValue = top;
+    }
 
-        return solve();
+    /**
+     * Solves one component and returns the values of its variables.
+     */
+    private class ComponentTask extends RecursiveTask<Map<Integer, AnnotationMirror>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Constraint> component;
+
+        ComponentTask(List<Constraint> component) {
+            this.component = component;
+        }
+
+        @Override
+        protected Map<Integer, AnnotationMirror> compute() {
+            return solve(component, new SlotCompactor(component), true);
+        }
     }
 
-    public InferenceSolution solve() {
+    /**
+     * Solves constraints and returns the values of their variables.
+     *
+     * @param slotCompactor the numbering of the variables, null to use the slot ids
+     * @param enumerateSmall solve without SAT4J if there are at most smallComponent variables
+     */
+    private Map<Integer, AnnotationMirror> solve(Iterable<Constraint> constraints, SlotCompactor slotCompactor,
+                                                 boolean enumerateSmall) {
         final Map<Integer, AnnotationMirror> result = new HashMap<>();
 
+        final CnfVecIntSerializer serializer = createSerializer(slotCompactor);
         final List<VecInt> clauses = serializer.convertAll(constraints);
 
         //nextId describes the LARGEST id that might be found in a variable
@@ -79,17 +177,50 @@ public class MaxSat2TypeSolver implements InferenceSolver {
         //the number of slots but the maximum you might encounter.
         // TODO: this is a workaround as currently when serialize existential constraint we lost the real existential
         // TODO: variable id and create "fake" id stored in existentialToPotentialVar map.
-        // TODO: thus here the value of totalVars is the real slots number stored in slotManager, and plus the 
+        // TODO: thus here the value of totalVars is the number of variables known to the serializer, and plus the
         // TODO: "fake" slots number stored in existentialToPotentialVar
-        final int totalVars = slotManager.getNumberOfSlots() + serializer.getExistentialToPotentialVar().size();
-        final int totalClauses =  clauses.size();
+        final int totalVars = serializer.getNumberOfVariables() + serializer.getExistentialToPotentialVar().size();
+
+        final int[] solution;
+        if (enumerateSmall && totalVars <= smallComponent) {
+            solution = solveByEnumeration(totalVars, clauses);
+        } else {
+            solution = solveWithSat4j(totalVars, clauses);
+            if (solution == null) {
+                System.out.println("Not solvable!");
+                return result;
+            }
+        }
 
+        final Map<Integer, Integer> existentialToPotentialIds = serializer.getExistentialToPotentialVar();
+        for (Integer var : solution) {
+            boolean isTop = var < 0;
+            if (isTop) {
+                var = -var;
+            }
 
+            Integer potential = existentialToPotentialIds.get(var);
+            if (potential != null) {
+                // idToExistence.put(potential, !isTop);
+                // TODO: which AnnotationMirror should be used?
+                result.put(potential, bottom);
+            } else {
+                result.put(serializer.getSlotId(var), isTop ? top : bottom );
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the model found by SAT4J, null if there is none
+     */
+    private int[] solveWithSat4j(int totalVars, List<VecInt> clauses) {
         //When .newBoth is called, SAT4J will run two solvers and return the result of the first to halt
         final WeightedMaxSatDecorator solver = new WeightedMaxSatDecorator(org.sat4j.pb.SolverFactory.newBoth());
 
         solver.newVar(totalVars);
-        solver.setExpectedNumberOfClauses(totalClauses);
+        solver.setExpectedNumberOfClauses(clauses.size());
 
         //arbitrary timeout selected for no particular reason
         solver.setTimeoutMs(1000000);
@@ -104,34 +235,46 @@ public class MaxSat2TypeSolver implements InferenceSolver {
 
             //isSatisfiable launches the solvers and waits until one of them finishes
             if (solver.isSatisfiable()) {
-                final Map<Integer, Integer> existentialToPotentialIds = serializer.getExistentialToPotentialVar();
-                int[] solution = solver.model();
+                return solver.model();
+            }
+            return null;
 
-                for (Integer var : solution) {
-                    boolean isTop = var < 0;
-                    if (isTop) {
-                        var = -var;
-                    }
+        } catch(Throwable th) {
+           throw new RuntimeException("Error MAX-SAT solving! " + lastClause, th);
+        }
+    }
 
-                    Integer potential = existentialToPotentialIds.get(var);
-                    if (potential != null) {
-                        // idToExistence.put(potential, !isTop);
-                        // TODO: which AnnotationMirror should be used?
-                        result.put(potential, bottom);
-                    } else {
-                        result.put(var, isTop ? top : bottom );
+    /**
+     * Solve a component with few variables without SAT4J, by counting the clauses satisfied by
+     * every assignment.  Assignments are tried from all negative (top) upward and the first that
+     * satisfies the most clauses is returned, in the format of a SAT4J model.
+     */
+    private static int[] solveByEnumeration(int totalVars, List<VecInt> clauses) {
+        int bestAssignment = 0;
+        int bestSatisfied = -1;
+        for (int assignment = 0; assignment < (1 << totalVars); assignment++) {
+            int satisfied = 0;
+            for (VecInt clause : clauses) {
+                for (int i = 0; i < clause.size(); i++) {
+                    final int literal = clause.get(i);
+                    final boolean positive = (assignment & (1 << (Math.abs(literal) - 1))) != 0;
+                    if (positive == literal > 0) {
+                        satisfied++;
+                        break;
                     }
-
                 }
-            } else {
-                System.out.println("Not solvable!");
             }
 
-        } catch(Throwable th) {
-           throw new RuntimeException("Error MAX-SAT solving! " + lastClause, th);
+            if (satisfied > bestSatisfied) {
+                bestSatisfied = satisfied;
+                bestAssignment = assignment;
+            }
         }
 
-
-        return new DefaultInferenceSolution(result);
+        final int[] model = new int[totalVars];
+        for (int var = 1; var <= totalVars; var++) {
+            model[var - 1] = (bestAssignment & (1 << (var - 1))) != 0 ? var : -var;
+        }
+        return model;
     }
-}
\ No newline at end of file
+}
@@ -3,13 +3,11 @@ package checkers.inference.solver;
 import org.checkerframework.framework.type.QualifierHierarchy;
 import org.checkerframework.javacutil.AnnotationUtils;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
@@ -37,7 +35,7 @@ import checkers.inference.model.VariableSlot;
 public class PropagationSolver implements InferenceSolver {
 
     // private QualifierHierarchy qualHierarchy;
-    private Collection<Constraint> constraints;
+    private Iterable<Constraint> constraints;
     private Collection<Slot> slots;
 
     private AnnotationMirror defaultValue;
@@ -48,7 +46,7 @@ public class PropagationSolver implements InferenceSolver {
     public InferenceSolution solve(
             Map<String, String> configuration,
             Collection<Slot> slots,
-            Collection<Constraint> constraints,
+            Iterable<Constraint> constraints,
             QualifierHierarchy qualHierarchy,
             ProcessingEnvironment processingEnvironment) {
 
@@ -91,18 +89,18 @@ public class PropagationSolver implements InferenceSolver {
      */
     public InferenceSolution solve() {
 
-        Set<VariableSlot> fixedBottom = new HashSet<VariableSlot>();
-        Set<VariableSlot> fixedTop = new HashSet<VariableSlot>();
-        Map<VariableSlot, List<VariableSlot>> superTypePropagation = new HashMap<>();
-        Map<VariableSlot, List<VariableSlot>> subTypePropagation = new HashMap<>();
+        BitSet fixedBottom = new BitSet();
+        BitSet fixedTop = new BitSet();
+        PropagationGraph superTypePropagation = new PropagationGraph();
+        PropagationGraph subTypePropagation = new PropagationGraph();
 
         preprocessConstraints(fixedBottom, fixedTop, superTypePropagation, subTypePropagation);
 
         // Propagate supertype
-        Set<VariableSlot> inferredTop = propagateValues(fixedTop, superTypePropagation);
+        BitSet inferredTop = superTypePropagation.propagateValues(fixedTop);
 
         // Propagate subtype
-        Set<VariableSlot> inferredBottom = propagateValues(fixedBottom, subTypePropagation);
+        BitSet inferredBottom = subTypePropagation.propagateValues(fixedBottom);
         return mergeResults(fixedBottom, fixedTop, inferredTop, inferredBottom);
     }
 
@@ -116,15 +114,15 @@ public class PropagationSolver implements InferenceSolver {
      *
      * superTypePropagation and subTypePropagation
      *
-     * @param fixedBottom Variables that must be bottom
-     * @param fixedTop Variables that must be top
-     * @param superTypePropagation Map, where if a key is a supertyp, all variables in the value must also be supertype
-     * @param subTypePropagation Map, where if a key is a subtype, all variables in the value must also be subtypes
+     * @param fixedBottom Ids of variables that must be bottom
+     * @param fixedTop Ids of variables that must be top
+     * @param superTypePropagation Graph, where if a variable is a supertype, all its successors must also be supertype
+     * @param subTypePropagation Graph, where if a variable is a subtype, all its successors must also be subtypes
      */
-    private void preprocessConstraints(Set<VariableSlot> fixedBottom,
-            Set<VariableSlot> fixedTop,
-            Map<VariableSlot, List<VariableSlot>> superTypePropagation,
-            Map<VariableSlot, List<VariableSlot>> subTypePropagation) {
+    private void preprocessConstraints(BitSet fixedBottom,
+            BitSet fixedTop,
+            PropagationGraph superTypePropagation,
+            PropagationGraph subTypePropagation) {
 
         for (Constraint constraint: constraints) {
             // Skip constraints that are just constants
@@ -137,49 +135,49 @@ public class PropagationSolver implements InferenceSolver {
                 if (equality.getFirst() instanceof ConstantSlot) {
                     // Equal to a constant forces a constant
                     AnnotationMirror value = ((ConstantSlot) equality.getFirst()).getValue();
-                    VariableSlot variable = (VariableSlot) equality.getSecond();
+                    int variable = id(equality.getSecond());
                     if (AnnotationUtils.areSame(value, top)) {
-                        fixedTop.add(variable);
+                        fixedTop.set(variable);
                     } else {
-                        fixedBottom.add(variable);
+                        fixedBottom.set(variable);
                     }
                 } else if (equality.getSecond() instanceof ConstantSlot) {
                     // Equal to a constant forces a constant
                     AnnotationMirror value = ((ConstantSlot) equality.getSecond()).getValue();
-                    VariableSlot variable = (VariableSlot) equality.getFirst();
+                    int variable = id(equality.getFirst());
                     if (AnnotationUtils.areSame(value, top)) {
-                        fixedTop.add(variable);
+                        fixedTop.set(variable);
                     } else {
-                        fixedBottom.add(variable);
+                        fixedBottom.set(variable);
                     }
                 } else {
                     // Variable equality means values of one propagates to values of the other, for both subtype and supertype
-                    addEntryToMap(superTypePropagation, (VariableSlot) equality.getFirst(), (VariableSlot) equality.getSecond(), constraint);
-                    addEntryToMap(superTypePropagation, (VariableSlot) equality.getSecond(), (VariableSlot) equality.getFirst(), constraint);
-                    addEntryToMap(subTypePropagation, (VariableSlot) equality.getFirst(), (VariableSlot) equality.getSecond(), constraint);
-                    addEntryToMap(subTypePropagation, (VariableSlot) equality.getSecond(), (VariableSlot) equality.getFirst(), constraint);
+                    int first = id(equality.getFirst());
+                    int second = id(equality.getSecond());
+                    superTypePropagation.addEdge(first, second);
+                    superTypePropagation.addEdge(second, first);
+                    subTypePropagation.addEdge(first, second);
+                    subTypePropagation.addEdge(second, first);
                 }
             } else if (constraint instanceof SubtypeConstraint) {
                 SubtypeConstraint subtype = (SubtypeConstraint) constraint;
                 if (subtype.getSubtype() instanceof ConstantSlot) {
                     // If top is a subtype of a variable, that variable is top
                     AnnotationMirror value = ((ConstantSlot) subtype.getSubtype()).getValue();
-                    VariableSlot variable = (VariableSlot) subtype.getSupertype();
                     if (AnnotationUtils.areSame(value, top)) {
-                        fixedTop.add(variable);
+                        fixedTop.set(id(subtype.getSupertype()));
                     }
                 } else if (subtype.getSupertype() instanceof ConstantSlot) {
                     // If a variable is a subtype of bottom, that variable is bottom
                     AnnotationMirror value = ((ConstantSlot) subtype.getSupertype()).getValue();
-                    VariableSlot variable = (VariableSlot) subtype.getSubtype();
                     if (AnnotationUtils.areSame(value, bottom)) {
-                        fixedBottom.add(variable);
+                        fixedBottom.set(id(subtype.getSubtype()));
                     }
                 } else {
                     // If the RHS is top, the LHS must be top
-                    addEntryToMap(superTypePropagation, (VariableSlot) subtype.getSubtype(), (VariableSlot) subtype.getSupertype(), constraint);
+                    superTypePropagation.addEdge(id(subtype.getSubtype()), id(subtype.getSupertype()));
                     // If the LHS is bottom, the RHS must be bottom
-                    addEntryToMap(subTypePropagation, (VariableSlot) subtype.getSupertype(), (VariableSlot) subtype.getSubtype(), constraint);
+                    subTypePropagation.addEdge(id(subtype.getSupertype()), id(subtype.getSubtype()));
                 }
             } else if (constraint instanceof ExistentialConstraint) {
                 InferenceMain.getInstance().logger.warning("PropagationSolver: Existential constraint found.  Inferred annotations may not type check ");
@@ -197,27 +195,27 @@ public class PropagationSolver implements InferenceSolver {
      * @return
      */
     private InferenceSolution mergeResults(
-            Set<VariableSlot> fixedBottom, Set<VariableSlot> fixedTop,
-            Set<VariableSlot> inferredTop, Set<VariableSlot> inferredBottom) {
+            BitSet fixedBottom, BitSet fixedTop,
+            BitSet inferredTop, BitSet inferredBottom) {
 
         Map<Integer, AnnotationMirror> results = new HashMap<Integer, AnnotationMirror>();
         for (Slot slot : slots) {
             if (slot.isVariable()) {
-                VariableSlot vslot = (VariableSlot) slot;
+                int id = ((VariableSlot) slot).getId();
                 AnnotationMirror result;
-                if (fixedBottom.contains(slot)) {
+                if (fixedBottom.get(id)) {
                     result = bottom;
-                } else if (fixedTop.contains(slot)) {
+                } else if (fixedTop.get(id)) {
                     result = top;
-                } else if (inferredBottom.contains(slot)) {
+                } else if (inferredBottom.get(id)) {
                     result = bottom;
-                } else if (inferredTop.contains(slot)) {
+                } else if (inferredTop.get(id)) {
                     result = top;
                 } else {
                     result = defaultValue;
                 }
                 if (result != defaultValue) {
-                    results.put(vslot.getId(), result);
+                    results.put(id, result);
                 }
             }
         }
@@ -225,34 +223,8 @@ public class PropagationSolver implements InferenceSolver {
         return new DefaultInferenceSolution(results);
     }
 
-    /**
-     * Given starting fixed values, iterate on the propagation map
-     * to propagate the resulting values.
-     *
-     * @param fixed The starting values that will trigger propagation
-     * @param typePropagation Maps of value to list of other values that will be propagated when the key is triggered.
-     *
-     * @return All values that were fixed flooded/propagated to.
-     */
-    private Set<VariableSlot> propagateValues(Set<VariableSlot> fixed,
-            Map<VariableSlot, List<VariableSlot>> typePropagation) {
-
-        Set<VariableSlot> results = new HashSet<VariableSlot>();
-
-        Set<VariableSlot> worklist = new HashSet<VariableSlot>(fixed);
-        while (!worklist.isEmpty()) {
-            VariableSlot variable = worklist.iterator().next();
-            worklist.remove(variable);
-            if (typePropagation.containsKey(variable)) {
-                List<VariableSlot> inferred = typePropagation.get(variable);
-                List<VariableSlot> inferredVars = new ArrayList<VariableSlot>();
-                inferredVars.addAll(inferred);
-                inferredVars.removeAll(results);
-                results.addAll(inferredVars);
-                worklist.addAll(inferredVars);
-            }
-        }
-        return results;
+    private static int id(Slot variable) {
+        return ((VariableSlot) variable).getId();
     }
 
     private boolean checkContainsVariable(Constraint constraint) {
@@ -265,14 +237,86 @@ public class PropagationSolver implements InferenceSolver {
         return containsVariable;
     }
 
-    void addEntryToMap(Map<VariableSlot, List<VariableSlot>> entries, VariableSlot key, VariableSlot value, Constraint constraint) {
-        List<VariableSlot> valueList;
-        if (entries.get(key) == null) {
-            valueList = new ArrayList<>();
-            entries.put(key, valueList);
-        } else {
-            valueList = entries.get(key);
+    /**
+     * A propagation map over variable ids: if a variable has a value, its successors must have
+     * the same value.  Edges are collected in two int arrays, then turned into a compressed sparse
+     * row adjacency (the successors of id are targets[edgeStart[id]] to targets[edgeStart[id + 1] - 1])
+     * the first time the graph is traversed.
+     */
+    private static class PropagationGraph {
+        private int[] sources = new int[16];
+        private int[] destinations = new int[16];
+        private int edgeCount = 0;
+        private int maxId = 0;
+
+        private int[] edgeStart;
+        private int[] targets;
+
+        void addEdge(int source, int destination) {
+            if (edgeCount == sources.length) {
+                sources = Arrays.copyOf(sources, edgeCount * 2);
+                destinations = Arrays.copyOf(destinations, edgeCount * 2);
+            }
+            sources[edgeCount] = source;
+            destinations[edgeCount] = destination;
+            edgeCount++;
+            maxId = Math.max(maxId, Math.max(source, destination));
+            edgeStart = null;
+        }
+
+        private void compress() {
+            edgeStart = new int[maxId + 2];
+            for (int i = 0; i < edgeCount; i++) {
+                edgeStart[sources[i] + 1]++;
+            }
+            for (int id = 0; id <= maxId; id++) {
+                edgeStart[id + 1] += edgeStart[id];
+            }
+
+            targets = new int[edgeCount];
+            final int[] next = Arrays.copyOf(edgeStart, maxId + 1);
+            for (int i = 0; i < edgeCount; i++) {
+                targets[next[sources[i]]++] = destinations[i];
+            }
+        }
+
+        /**
+         * Given starting fixed values, propagate them along the edges of this graph (breadth first).
+         *
+         * @param fixed The ids of the variables whose values trigger propagation
+         *
+         * @return The ids of all variables that fixed flooded/propagated to
+         */
+        BitSet propagateValues(BitSet fixed) {
+            if (edgeStart == null) {
+                compress();
+            }
+
+            final BitSet results = new BitSet(maxId + 1);
+            final BitSet queued = new BitSet(maxId + 1);
+            // Every id is queued at most once
+            final int[] queue = new int[maxId + 1];
+            int head = 0;
+            int tail = 0;
+
+            // Variables above maxId have no edges, so there is nothing to propagate from them
+            for (int id = fixed.nextSetBit(0); id >= 0 && id <= maxId; id = fixed.nextSetBit(id + 1)) {
+                queue[tail++] = id;
+                queued.set(id);
+            }
+
+            while (head < tail) {
+                final int variable = queue[head++];
+                for (int edge = edgeStart[variable]; edge < edgeStart[variable + 1]; edge++) {
+                    final int inferred = targets[edge];
+                    results.set(inferred);
+                    if (!queued.get(inferred)) {
+                        queued.set(inferred);
+                        queue[tail++] = inferred;
+                    }
+                }
+            }
+            return results;
         }
-        valueList.add(value);
     }
 }
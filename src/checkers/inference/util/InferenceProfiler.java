@@ -0,0 +1,190 @@
+package checkers.inference.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Records the wall time, CPU time and allocated bytes of each phase of an inference run
+ * (javac, attribution, visitor, dataflow, normalization, solving, JAIF generation) and of each
+ * compilation unit.  Phases may be nested: the javac phase contains the attribution and visitor
+ * phases, and dataflow is part of visitor.  The time of a compilation unit is the time spent in
+ * InferenceChecker.typeProcess on its classes, i.e. its share of the visitor phase; javac's
+ * parsing and attribution of the unit are only part of the attribution phase.
+ * InferenceMain writes the measurements as a JSON report next to the JAIF when --profileReport
+ * is given, without it InferenceMain hands out DISABLED, which measures nothing:
+ *
+ * {
+ *   "phases": { "javac": { "count": 1, "wallMillis": 812, "cpuMillis": 790, "allocatedBytes": 123456 }, ... },
+ *   "units":  [ { "unit": "/path/A.java", "wallMillis": 40, "cpuMillis": 38, "allocatedBytes": 4567 }, ... ]
+ * }
+ *
+ * CPU time and allocation are measured for the current thread, inference is single threaded.
+ * Allocation is reported as -1 on JVMs that do not support per-thread allocation counters.
+ */
+public class InferenceProfiler {
+
+    /** A profiler whose timers record nothing, so no time is spent reading the thread counters. */
+    public static final InferenceProfiler DISABLED = new InferenceProfiler(false);
+
+    private final boolean enabled;
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTimeSupported;
+    private final boolean allocationSupported;
+
+    private final Map<String, Measurement> phases = new LinkedHashMap<>();
+    private final Map<String, Measurement> units = new LinkedHashMap<>();
+
+    private final Timer disabledTimer = new Timer();
+
+    private Timer attribution;
+
+    public InferenceProfiler() {
+        this(true);
+    }
+
+    private InferenceProfiler(boolean enabled) {
+        this.enabled = enabled;
+        cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported();
+        allocationSupported = threadBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemoryEnabled();
+    }
+
+    /**
+     * Start timing a phase, the returned timer must be stopped to record it.  A phase may be
+     * started several times (e.g. dataflow once per class), the measurements are summed.
+     */
+    public Timer startPhase(String phase) {
+        return enabled ? new Timer(phase, phases) : disabledTimer;
+    }
+
+    /**
+     * Start timing work on a compilation unit, the returned timer must be stopped to record it.
+     * The measurements of all the classes of a unit are summed.
+     */
+    public Timer startUnit(String unit) {
+        return enabled ? new Timer(unit, units) : disabledTimer;
+    }
+
+    /**
+     * Start timing javac's own work, see InferenceChecker.typeProcess.  Javac attributes each
+     * class right before handing it to the checker, so this phase covers attribution and flow
+     * analysis, plus parsing before the first class and code generation after the last one.
+     */
+    public void startAttribution() {
+        endAttribution();
+        attribution = startPhase("attribution");
+    }
+
+    public void endAttribution() {
+        if (attribution != null) {
+            attribution.stop();
+            attribution = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public JSONObject toJson() {
+        JSONObject jsonPhases = new JSONObject();
+        for (Map.Entry<String, Measurement> entry : phases.entrySet()) {
+            JSONObject jsonPhase = entry.getValue().toJson();
+            jsonPhase.put("count", entry.getValue().count);
+            jsonPhases.put(entry.getKey(), jsonPhase);
+        }
+
+        JSONArray jsonUnits = new JSONArray();
+        for (Map.Entry<String, Measurement> entry : units.entrySet()) {
+            JSONObject jsonUnit = entry.getValue().toJson();
+            jsonUnit.put("unit", entry.getKey());
+            jsonUnits.add(jsonUnit);
+        }
+
+        JSONObject report = new JSONObject();
+        report.put("phases", jsonPhases);
+        report.put("units", jsonUnits);
+        return report;
+    }
+
+    public void writeReport(Writer writer) throws IOException {
+        toJson().writeJSONString(writer);
+        writer.flush();
+    }
+
+    private long cpuNanos() {
+        return cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    private long allocatedBytes() {
+        if (!allocationSupported) {
+            return 0;
+        }
+        return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public class Timer {
+        private final String name;
+        private final Map<String, Measurement> measurements;
+        private final long startWall;
+        private final long startCpu;
+        private final long startAllocated;
+        private boolean stopped = false;
+
+        /** The timer of a disabled profiler, already stopped. */
+        private Timer() {
+            this.name = null;
+            this.measurements = null;
+            this.startWall = 0;
+            this.startCpu = 0;
+            this.startAllocated = 0;
+            this.stopped = true;
+        }
+
+        private Timer(String name, Map<String, Measurement> measurements) {
+            this.name = name;
+            this.measurements = measurements;
+            this.startWall = System.nanoTime();
+            this.startCpu = cpuNanos();
+            this.startAllocated = allocatedBytes();
+        }
+
+        public void stop() {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+
+            Measurement measurement = measurements.get(name);
+            if (measurement == null) {
+                measurement = new Measurement();
+                measurements.put(name, measurement);
+            }
+            measurement.count += 1;
+            measurement.wallNanos += System.nanoTime() - startWall;
+            measurement.cpuNanos += cpuNanos() - startCpu;
+            measurement.allocatedBytes += allocatedBytes() - startAllocated;
+        }
+    }
+
+    private class Measurement {
+        int count;
+        long wallNanos;
+        long cpuNanos;
+        long allocatedBytes;
+
+        @SuppressWarnings("unchecked")
+        JSONObject toJson() {
+            JSONObject obj = new JSONObject();
+            obj.put("wallMillis", wallNanos / 1000000);
+            obj.put("cpuMillis", cpuTimeSupported ? cpuNanos / 1000000 : -1);
+            obj.put("allocatedBytes", allocationSupported ? allocatedBytes : -1);
+            return obj;
+        }
+    }
+}
@@ -34,6 +34,7 @@ import javax.lang.model.type.TypeKind;
 
 import sparta.checkers.iflow.util.IFlowUtils;
 import sparta.checkers.iflow.util.PFPermission;
+import sparta.checkers.iflow.util.PermissionSet;
 import sparta.checkers.qual.FlowPermission;
 import sparta.checkers.qual.PolyFlow;
 import sparta.checkers.qual.PolyFlowReceiver;
@@ -77,6 +78,7 @@ public class SimpleFlowAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
      */
     public SimpleFlowAnnotatedTypeFactory(BaseTypeChecker checker) {
         super(checker);
+        IFlowUtils.useProcessingEnvironment(processingEnv);
 
         NOSOURCE = buildAnnotationMirrorFlowPermission(Source.class);
         ANYSOURCE = buildAnnotationMirrorFlowPermission(Source.class, FlowPermission.ANY.toString());
@@ -349,27 +351,27 @@ public class SimpleFlowAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
                 return true;
             } else if (isPolySourceQualifier(supertype) && isSourceQualifier(subtype)) {
                 // If super is poly, only bottom is a subtype
-                return IFlowUtils.getSources(subtype).isEmpty();
+                return IFlowUtils.getSourceSet(subtype).isEmpty();
             } else if (isSourceQualifier(supertype) && isPolySourceQualifier(subtype)) {
                 // if sub is poly, only top is a supertype
-                return IFlowUtils.getSources(supertype).contains(PFPermission.ANY);
+                return IFlowUtils.getSourceSet(supertype).contains(PFPermission.ANY);
             } else if (isSourceQualifier(supertype) && isSourceQualifier(subtype)) {
                 // Check the set
-                Set<PFPermission> superset = IFlowUtils.getSources(supertype);
-                Set<PFPermission> subset = IFlowUtils.getSources(subtype);
+                PermissionSet superset = IFlowUtils.getSourceSet(supertype);
+                PermissionSet subset = IFlowUtils.getSourceSet(subtype);
                 return isSuperSet(superset, subset);
             } else if (isPolySinkQualifier(supertype) && isPolySinkQualifier(subtype)) {
                 return true;
             } else if (isPolySinkQualifier(supertype) && isSinkQualifier(subtype)) {
                 // If super is poly, only bottom is a subtype
-                return IFlowUtils.getSinks(subtype).contains(PFPermission.ANY);
+                return IFlowUtils.getSinkSet(subtype).contains(PFPermission.ANY);
             } else if (isSinkQualifier(supertype) && isPolySinkQualifier(subtype)) {
                 // if sub is poly, only top is a supertype
-                return IFlowUtils.getSinks(supertype).isEmpty();
+                return IFlowUtils.getSinkSet(supertype).isEmpty();
             } else if (isSinkQualifier(supertype) && isSinkQualifier(subtype)) {
                 // Check the set (sinks are backward)
-                Set<PFPermission> subset = IFlowUtils.getSinks(supertype);
-                Set<PFPermission> superset = IFlowUtils.getSinks(subtype);
+                PermissionSet subset = IFlowUtils.getSinkSet(supertype);
+                PermissionSet superset = IFlowUtils.getSinkSet(subtype);
                 return isSuperSet(superset, subset);
             } else {
                 // annotations should either both be sources or sinks.
@@ -377,12 +379,12 @@ public class SimpleFlowAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
             }
         }
 
-        private boolean isSuperSet(Set<PFPermission> superset, Set<PFPermission> subset) {
+        private boolean isSuperSet(PermissionSet superset, PermissionSet subset) {
             if (superset.containsAll(subset) || superset.contains(PFPermission.ANY)) {
                 return true;
             }
-            for (PFPermission flow : subset) {
-                if (!IFlowUtils.isMatchInSet(flow, superset)) {
+            for (PFPermission flow : subset.getPermissions()) {
+                if (!IFlowUtils.isMatchInSet(flow, superset.getPermissions())) {
                     return false;
                 }
             }
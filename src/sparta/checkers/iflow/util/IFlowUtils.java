@@ -1,14 +1,15 @@
 package sparta.checkers.iflow.util;
 
 import org.checkerframework.framework.type.AnnotatedTypeMirror;
-import org.checkerframework.framework.util.AnnotationBuilder;
 import org.checkerframework.javacutil.AnnotationUtils;
 
-import java.util.ArrayList;
+import java.lang.ref.WeakReference;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
@@ -20,6 +21,37 @@ import sparta.checkers.qual.Source;
 public class IFlowUtils {
     private static PFPermission ANY = new PFPermission(FlowPermission.ANY);
 
+    private static volatile Caches caches = new Caches(null);
+
+    /**
+     * The caches of one ProcessingEnvironment, so a JVM that runs several compilations (see
+     * InferenceDaemon) does not keep the values of the earlier ones.
+     */
+    private static class Caches {
+        private final WeakReference<ProcessingEnvironment> processingEnv;
+
+        // The permissions of @Source and @Sink values, parsed once per distinct value
+        private final ConcurrentHashMap<List<String>, PermissionSet> parsedSources = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<List<String>, PermissionSet> parsedSinks = new ConcurrentHashMap<>();
+
+        // wildcardMatch patterns, by parent parameter
+        private final ConcurrentHashMap<String, Pattern> wildcardPatterns = new ConcurrentHashMap<>();
+
+        Caches(ProcessingEnvironment processingEnv) {
+            this.processingEnv = new WeakReference<>(processingEnv);
+        }
+    }
+
+    /**
+     * Drop the caches unless they were created for processingEnv.  Called when a type factory
+     * is created, before any permission is parsed for processingEnv.
+     */
+    public static synchronized void useProcessingEnvironment(ProcessingEnvironment processingEnv) {
+        if (caches.processingEnv.get() != processingEnv) {
+            caches = new Caches(processingEnv);
+        }
+    }
+
     Set<PFPermission> sources;
     Set<PFPermission> sinks;
 
@@ -150,33 +182,63 @@ public class IFlowUtils {
         return new TreeSet<PFPermission>();
     }
 
+    /**
+     * @return a new, modifiable set of the sinks of am, see getSinkSet
+     */
     public static Set<PFPermission> getSinks(final AnnotationMirror am) {
+        return new TreeSet<PFPermission>(getSinkSet(am).getPermissions());
+    }
+
+    /**
+     * @return a new, modifiable set of the sources of am, see getSourceSet
+     */
+    public static Set<PFPermission> getSources(final AnnotationMirror am) {
+        return new TreeSet<PFPermission>(getSourceSet(am).getPermissions());
+    }
+
+    /**
+     * @return the sinks of am, {ANY} if they include ANY or every sink
+     */
+    public static PermissionSet getSinkSet(final AnnotationMirror am) {
         if (am == null) {
-            return new TreeSet<PFPermission>();
+            return PermissionSet.EMPTY;
         }
         List<String> sinks = AnnotationUtils.getElementValueArray(am, "value",
                 String.class, true);
-        Set<PFPermission> sinkFlowPermissions = new TreeSet<PFPermission>();
-        for (String permissionString : sinks) {
-            sinkFlowPermissions.add(PFPermission.convertStringToPFPermission(permissionString));
+        final ConcurrentHashMap<List<String>, PermissionSet> parsedSinks = caches.parsedSinks;
+        PermissionSet sinkSet = parsedSinks.get(sinks);
+        if (sinkSet == null) {
+            Set<PFPermission> sinkFlowPermissions = new TreeSet<PFPermission>();
+            for (String permissionString : sinks) {
+                sinkFlowPermissions.add(PFPermission.convertStringToPFPermission(permissionString));
+            }
+            sinkSet = PermissionSet.of(convertToAnySink(sinkFlowPermissions, true));
+            parsedSinks.put(sinks, sinkSet);
         }
-
-        return convertToAnySink(sinkFlowPermissions, false);
+        return sinkSet;
     }
 
-    public static Set<PFPermission> getSources(final AnnotationMirror am) {
+    /**
+     * @return the sources of am, {ANY} if they include ANY or every source
+     */
+    public static PermissionSet getSourceSet(final AnnotationMirror am) {
         if (am == null) {
-            return new TreeSet<PFPermission>();
+            return PermissionSet.EMPTY;
         }
 
         List<String> sources = AnnotationUtils.getElementValueArray(am,
                 "value", String.class, true);
-        Set<PFPermission> sourceFlowPermissions = new TreeSet<PFPermission>();
-        for (String permissionString : sources) {
-            sourceFlowPermissions.add(PFPermission.convertStringToPFPermission(permissionString));
+        final ConcurrentHashMap<List<String>, PermissionSet> parsedSources = caches.parsedSources;
+        PermissionSet sourceSet = parsedSources.get(sources);
+        if (sourceSet == null) {
+            Set<PFPermission> sourceFlowPermissions = new TreeSet<PFPermission>();
+            for (String permissionString : sources) {
+                sourceFlowPermissions.add(PFPermission.convertStringToPFPermission(permissionString));
+            }
+            sourceSet = PermissionSet.of(convertToAnySource(sourceFlowPermissions, true));
+            parsedSources.put(sources, sourceSet);
         }
-
-        return convertToAnySource(sourceFlowPermissions, false);
+        return sourceSet;
     }
 
     /**
@@ -371,7 +433,10 @@ public class IFlowUtils {
      * @return
      */
     public static Set<PFPermission> unionSources(AnnotationMirror a1, AnnotationMirror a2){
-        return unionSources(getSources(a1), getSources(a2));
+        return new TreeSet<PFPermission>(unionSources(getSourceSet(a1), getSourceSet(a2)).getPermissions());
+    }
+    public static PermissionSet unionSources(PermissionSet a1, PermissionSet a2) {
+        return convertToAny(a1.union(a2), getSetOfAllSources());
     }
     public static Set<PFPermission> unionSources(Set<PFPermission> a1, Set<PFPermission> a2){
         a1.addAll(a2);
@@ -388,7 +453,20 @@ public class IFlowUtils {
      * @return
      */
     public static Set<PFPermission> unionSinks(AnnotationMirror a1, AnnotationMirror a2){
-        return unionSinks(getSinks(a1), getSinks(a2));
+        return new TreeSet<PFPermission>(unionSinks(getSinkSet(a1), getSinkSet(a2)).getPermissions());
+    }
+    public static PermissionSet unionSinks(PermissionSet a1, PermissionSet a2) {
+        return convertToAny(a1.union(a2), getSetOfAllSinks());
+    }
+
+    /**
+     * @return {ANY} if permissions contains ANY or all permissions, otherwise permissions
+     */
+    private static PermissionSet convertToAny(PermissionSet permissions, Set<PFPermission> all) {
+        if (permissions.contains(ANY) || permissions.getPermissions().equals(all)) {
+            return PermissionSet.ANY;
+        }
+        return permissions;
     }
     /**
      * Returns the union of a1 and a2.
@@ -449,32 +527,29 @@ public class IFlowUtils {
     }
 
     public static boolean wildcardMatch(String child, String parent) {
-        String regex = parent.replaceAll("\\*", "(.*)");
-        return child.matches(regex);
+        final ConcurrentHashMap<String, Pattern> wildcardPatterns = caches.wildcardPatterns;
+        Pattern pattern = wildcardPatterns.get(parent);
+        if (pattern == null) {
+            pattern = Pattern.compile(parent.replaceAll("\\*", "(.*)"));
+            wildcardPatterns.put(parent, pattern);
+        }
+        return pattern.matcher(child).matches();
     }
 
+    /**
+     * @return the @Sink annotation of sinks, built once per set of sinks and ProcessingEnvironment (see PermissionSet)
+     */
     public static AnnotationMirror createAnnoFromSink(final Set<PFPermission> sinks,
             ProcessingEnvironment processingEnv) {
-        final AnnotationBuilder builder = new AnnotationBuilder(processingEnv,
-                Sink.class);
-        return createIFlowAnnotation(sinks, builder);
+        return PermissionSet.of(sinks).getSinkAnnotation(processingEnv);
     }
 
+    /**
+     * @return the @Source annotation of sources, built once per set of sources and ProcessingEnvironment (see PermissionSet)
+     */
     public static AnnotationMirror createAnnoFromSource(Set<PFPermission> sources,
             ProcessingEnvironment processingEnv) {
-        final AnnotationBuilder builder = new AnnotationBuilder(processingEnv,
-                Source.class);
-        return createIFlowAnnotation(sources, builder);
-    }
-
-    private static AnnotationMirror createIFlowAnnotation(
-            final Set<PFPermission> permObjects, final AnnotationBuilder builder) {
-        List<String> permStrings = new ArrayList<>();
-        for (PFPermission p : permObjects) {
-            permStrings.add(p.toString());
-        }
-        builder.setValue("value", permStrings);
-        return builder.build();
+        return PermissionSet.of(sources).getSourceAnnotation(processingEnv);
     }
 
 }
@@ -17,6 +17,10 @@ public class PFPermission implements Comparable<PFPermission> {
     private final FlowPermission permission;
     private final List<String> parameters;
 
+    // Computed on first use, reset when the parameters change
+    private String string;
+    private int hash;
+
     public PFPermission(FlowPermission permission) {
         this( permission, new ArrayList<String>());
     }
@@ -42,6 +46,13 @@ public class PFPermission implements Comparable<PFPermission> {
 
     @Override
     public String toString() {
+        if (string == null) {
+            string = computeString();
+        }
+        return string;
+    }
+
+    private String computeString() {
         // Easy case, not parameterized
         if (getParameters() == null || getParameters().size() == 0) {
             return getPermission().toString();
@@ -61,6 +72,13 @@ public class PFPermission implements Comparable<PFPermission> {
 
     @Override
     public int hashCode() {
+        if (hash == 0) {
+            hash = computeHashCode();
+        }
+        return hash;
+    }
+
+    private int computeHashCode() {
         final int prime = 31;
         int result = 1;
         result = prime * result
@@ -134,11 +152,18 @@ public class PFPermission implements Comparable<PFPermission> {
 
     public void removeStar() {
         this.parameters.remove("*");
+        parametersChanged();
     }
 
 
     public void addParameters(List<String> params) {
         this.parameters.addAll(params);
+        parametersChanged();
+    }
+
+    private void parametersChanged() {
+        string = null;
+        hash = 0;
     }
 
     public static boolean isValidPFPermission(String perm) {
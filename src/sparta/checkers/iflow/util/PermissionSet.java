@@ -0,0 +1,239 @@
+package sparta.checkers.iflow.util;
+
+import org.checkerframework.framework.util.AnnotationBuilder;
+
+import java.lang.annotation.Annotation;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import sparta.checkers.qual.Sink;
+import sparta.checkers.qual.Source;
+
+/**
+ * An immutable set of PFPermissions.
+ *
+ * Every distinct PFPermission (parameters included) is interned as a small int, and a set is a
+ * bitset over these ints.  Sets are interned as well: two PermissionSets with the same
+ * permissions are the same object, so the @Source and @Sink AnnotationMirrors of a set are
+ * built once per ProcessingEnvironment.  Membership, subset and union checks are bitset operations.
+ *
+ * The interning tables are shared by every checker and solver thread.  They hold no javac
+ * objects:  annotations are cached per ProcessingEnvironment, and are dropped with it.  Sets are
+ * interned weakly, so a set nobody uses any more (e.g. one parsed during an earlier compilation
+ * in the same JVM, see IFlowUtils.useProcessingEnvironment) is collected.  Permission indices
+ * are kept, so the bitsets of live sets stay valid.
+ */
+public final class PermissionSet {
+
+    private static final Map<PFPermission, Integer> indices = new ConcurrentHashMap<>();
+    // Guarded by PermissionSet.class
+    private static final List<PFPermission> permissionsByIndex = new ArrayList<>();
+    private static final Map<BitSet, SetReference> internedSets = new HashMap<>();
+    private static final ReferenceQueue<PermissionSet> collectedSets = new ReferenceQueue<>();
+
+    // Guarded by themselves
+    private static final Map<ProcessingEnvironment, Map<PermissionSet, AnnotationMirror>> sourceAnnotations =
+            new WeakHashMap<>();
+    private static final Map<ProcessingEnvironment, Map<PermissionSet, AnnotationMirror>> sinkAnnotations =
+            new WeakHashMap<>();
+
+    public static final PermissionSet EMPTY = of(Collections.<PFPermission>emptySet());
+    public static final PermissionSet ANY = of(Collections.singleton(PFPermission.ANY));
+
+    private final BitSet bits;
+
+    /** The permissions of this set, sorted like a TreeSet<PFPermission> */
+    private final Set<PFPermission> permissions;
+
+    private PermissionSet(BitSet bits) {
+        this.bits = bits;
+
+        final Set<PFPermission> sorted = new TreeSet<>();
+        for (int index = bits.nextSetBit(0); index >= 0; index = bits.nextSetBit(index + 1)) {
+            sorted.add(permissionsByIndex.get(index));
+        }
+        this.permissions = Collections.unmodifiableSet(sorted);
+    }
+
+    /**
+     * @return the interned index of permission
+     */
+    public static int indexOf(PFPermission permission) {
+        final Integer index = indices.get(permission);
+        if (index != null) {
+            return index;
+        }
+        return addIndex(permission);
+    }
+
+    private static synchronized int addIndex(PFPermission permission) {
+        Integer index = indices.get(permission);
+        if (index == null) {
+            // PFPermissions are mutable, keep a copy that nobody else can change
+            final PFPermission copy =
+                    new PFPermission(permission.getPermission(), new ArrayList<>(permission.getParameters()));
+            index = permissionsByIndex.size();
+            permissionsByIndex.add(copy);
+            indices.put(copy, index);
+        }
+        return index;
+    }
+
+    public static PermissionSet of(Collection<PFPermission> permissions) {
+        final BitSet bits = new BitSet();
+        for (PFPermission permission : permissions) {
+            bits.set(indexOf(permission));
+        }
+        return intern(bits);
+    }
+
+    /**
+     * @param bits indices returned by indexOf, bits is not modified and may be reused by the caller
+     */
+    public static PermissionSet of(BitSet bits) {
+        return intern(bits);
+    }
+
+    private static synchronized PermissionSet intern(BitSet bits) {
+        removeCollectedSets();
+
+        final SetReference reference = internedSets.get(bits);
+        PermissionSet set = reference != null ? reference.get() : null;
+        if (set == null) {
+            final BitSet copy = (BitSet) bits.clone();
+            set = new PermissionSet(copy);
+            internedSets.put(copy, new SetReference(set, collectedSets));
+        }
+        return set;
+    }
+
+    // Guarded by PermissionSet.class
+    private static void removeCollectedSets() {
+        Reference<? extends PermissionSet> collected;
+        while ((collected = collectedSets.poll()) != null) {
+            final BitSet bits = ((SetReference) collected).bits;
+            // The set may have been interned again since it was collected
+            if (internedSets.get(bits) == collected) {
+                internedSets.remove(bits);
+            }
+        }
+    }
+
+    /**
+     * A weak reference to an interned set, with the set's bits to find its entry once the set is
+     * collected.
+     */
+    private static class SetReference extends WeakReference<PermissionSet> {
+        private final BitSet bits;
+
+        SetReference(PermissionSet set, ReferenceQueue<PermissionSet> queue) {
+            super(set, queue);
+            this.bits = set.bits;
+        }
+    }
+
+    public boolean contains(PFPermission permission) {
+        final Integer index = indices.get(permission);
+        return index != null && bits.get(index);
+    }
+
+    /**
+     * @return true if every permission of other is in this set (without matching parameters)
+     */
+    public boolean containsAll(PermissionSet other) {
+        if (this == other) {
+            return true;
+        }
+        for (int index = other.bits.nextSetBit(0); index >= 0; index = other.bits.nextSetBit(index + 1)) {
+            if (!bits.get(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public PermissionSet union(PermissionSet other) {
+        if (this.containsAll(other)) {
+            return this;
+        }
+        if (other.containsAll(this)) {
+            return other;
+        }
+        final BitSet union = (BitSet) bits.clone();
+        union.or(other.bits);
+        return intern(union);
+    }
+
+    public boolean isEmpty() {
+        return bits.isEmpty();
+    }
+
+    public int size() {
+        return permissions.size();
+    }
+
+    /**
+     * @return the permissions of this set, in the order of a TreeSet<PFPermission>
+     */
+    public Set<PFPermission> getPermissions() {
+        return permissions;
+    }
+
+    public AnnotationMirror getSourceAnnotation(ProcessingEnvironment processingEnv) {
+        return getAnnotation(sourceAnnotations, Source.class, processingEnv);
+    }
+
+    public AnnotationMirror getSinkAnnotation(ProcessingEnvironment processingEnv) {
+        return getAnnotation(sinkAnnotations, Sink.class, processingEnv);
+    }
+
+    private AnnotationMirror getAnnotation(Map<ProcessingEnvironment, Map<PermissionSet, AnnotationMirror>> cache,
+                                           Class<? extends Annotation> clazz, ProcessingEnvironment processingEnv) {
+        Map<PermissionSet, AnnotationMirror> annotations;
+        synchronized (cache) {
+            annotations = cache.get(processingEnv);
+            if (annotations == null) {
+                annotations = new ConcurrentHashMap<>();
+                cache.put(processingEnv, annotations);
+            }
+        }
+
+        AnnotationMirror annotation = annotations.get(this);
+        if (annotation == null) {
+            // Two threads may build the same annotation, either one is fine
+            annotation = createAnnotation(clazz, processingEnv);
+            annotations.put(this, annotation);
+        }
+        return annotation;
+    }
+
+    private AnnotationMirror createAnnotation(Class<? extends Annotation> clazz, ProcessingEnvironment processingEnv) {
+        final AnnotationBuilder builder = new AnnotationBuilder(processingEnv, clazz);
+        List<String> permStrings = new ArrayList<>(permissions.size());
+        for (PFPermission p : permissions) {
+            permStrings.add(p.toString());
+        }
+        builder.setValue("value", permStrings);
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        return permissions.toString();
+    }
+}
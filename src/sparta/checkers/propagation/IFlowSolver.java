@@ -4,14 +4,14 @@ import org.checkerframework.framework.type.QualifierHierarchy;
 import org.checkerframework.framework.util.AnnotationBuilder;
 
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 import java.util.logging.Logger;
 
 import javax.annotation.processing.ProcessingEnvironment;
@@ -29,6 +29,7 @@ import checkers.inference.model.Slot;
 import checkers.inference.model.Slot.Kind;
 import checkers.inference.model.SubtypeConstraint;
 import checkers.inference.model.VariableSlot;
+import sparta.checkers.qual.FlowPermission;
 import sparta.checkers.qual.Sink;
 import sparta.checkers.qual.Source;
 
@@ -51,9 +52,10 @@ import sparta.checkers.qual.Source;
  * For both modes, an equality constraint causes the Sets for both involved Slots
  * to be equal and include all Strings from either set.
  *
- * The algorithm processes list of constraints, adding the Strings to the inferredValues
- * map as needed. The entire list of constraints is processed repeatedly until the inferredValues map
- * no longer changes.
+ * The constraints are turned into a graph over slot ids, with an edge from each slot to the
+ * variables that must include its Strings.  Sets of Strings are BitSets over a PermissionIndex.
+ * The sets of constants are computed once and added to the variables they flow to, then a
+ * worklist propagates the sets along the edges, revisiting only the variables whose sets grow.
  *
  * @author mcarthur
  */
@@ -67,10 +69,18 @@ public abstract class IFlowSolver implements InferenceSolver {
     private ProcessingEnvironment processingEnvironment;
     private Map<String, String> configuration;
 
+    private final PermissionIndex permissionIndex = new PermissionIndex();
+
+    /**
+     * Inferred Strings of each VariableSlot, indexed by id.  Null for slots that are in no
+     * subtype or equality constraint, and for constants.
+     */
+    private BitSet[] inferredValues;
+
     /**
-     * Map of inferred Strings for an VariableSlot's id.
+     * Strings of each ConstantSlot, indexed by id.
      */
-    private final Map<Integer, Set<String>> inferredValues = new HashMap<>();
+    private BitSet[] constantValues;
 
     // private final Map<String, Set<String>> flowPolicy = new HashMap<>();
 
@@ -78,80 +88,104 @@ public abstract class IFlowSolver implements InferenceSolver {
     public InferenceSolution solve(
             Map<String, String> configuration,
             Collection<Slot> slots,
-            Collection<Constraint> constraints,
+            Iterable<Constraint> constraints,
             QualifierHierarchy qualHierarchy,
             ProcessingEnvironment processingEnvironment) {
 
         this.processingEnvironment = processingEnvironment;
         this.configuration = configuration;
 
-        // Fixed point
-        boolean changed = true;
-        while (changed) {
-            changed = false;
-
-            for (Constraint constraint : constraints) {
-                if (constraint instanceof SubtypeConstraint) {
-                    Slot subtype = ((SubtypeConstraint)constraint).getSubtype();
-                    Slot supertype = ((SubtypeConstraint)constraint).getSupertype();
-
-                    Set<String> subtypePerms = getInferredSlotPermissions(subtype);
-                    Set<String> supertypePerms = getInferredSlotPermissions(supertype);
-
-                    if (isSinkSolver()) {
-                        if (subtype.isVariable()) {
-                            changed |= subtypePerms.addAll(supertypePerms);
-                        }
-                    } else {
-                        if (supertype.isVariable()) {
-                            changed |= supertypePerms.addAll(subtypePerms);
-                        }
-                    }
-                } else if (constraint instanceof EqualityConstraint) {
-                    Slot first = ((EqualityConstraint)constraint).getFirst();
-                    Slot second = ((EqualityConstraint)constraint).getSecond();
-
-                    Set<String> firstPerms = getInferredSlotPermissions(first);
-                    Set<String> secondPerms = getInferredSlotPermissions(second);
+        int maxId = 0;
+        for (Constraint constraint : constraints) {
+            if (constraint instanceof SubtypeConstraint || constraint instanceof EqualityConstraint) {
+                for (Slot slot : constraint.getSlots()) {
+                    maxId = Math.max(maxId, ((VariableSlot) slot).getId());
+                }
+            }
+        }
+        inferredValues = new BitSet[maxId + 1];
+        constantValues = new BitSet[maxId + 1];
 
-                    if (first.isVariable()) {
-                        changed |= firstPerms.addAll(secondPerms);
-                    }
+        FlowGraph flowGraph = new FlowGraph(maxId);
+        for (Constraint constraint : constraints) {
+            if (constraint instanceof SubtypeConstraint) {
+                Slot subtype = ((SubtypeConstraint)constraint).getSubtype();
+                Slot supertype = ((SubtypeConstraint)constraint).getSupertype();
+                register(subtype);
+                register(supertype);
 
-                    if (second.isVariable()) {
-                        changed |= secondPerms.addAll(firstPerms);
-                    }
+                if (isSinkSolver()) {
+                    flowGraph.addFlow(supertype, subtype);
                 } else {
-                    logger.info("Ignoring constraint type: " + constraint.getClass());
+                    flowGraph.addFlow(subtype, supertype);
                 }
+            } else if (constraint instanceof EqualityConstraint) {
+                Slot first = ((EqualityConstraint)constraint).getFirst();
+                Slot second = ((EqualityConstraint)constraint).getSecond();
+                register(first);
+                register(second);
+
+                flowGraph.addFlow(second, first);
+                flowGraph.addFlow(first, second);
+            } else {
+                logger.info("Ignoring constraint type: " + constraint.getClass());
             }
         }
 
+        flowGraph.propagate();
+
         Map<Integer, AnnotationMirror> result = createAnnotations();
 
         return new DefaultInferenceSolution(result);
     }
 
+    /**
+     * Create the set of a slot that appears in a subtype or equality constraint.
+     */
+    private void register(Slot slot) {
+        if (slot.isVariable()) {
+            if (slot.getKind() == Kind.EXISTENTIAL_VARIABLE) {
+                throw new IllegalArgumentException("Unexpected variable type:" + slot);
+            }
+            int id = ((VariableSlot) slot).getId();
+            if (inferredValues[id] == null) {
+                inferredValues[id] = new BitSet();
+            }
+
+        } else if (slot.isConstant()) {
+            int id = ((VariableSlot) slot).getId();
+            if (constantValues[id] == null) {
+                constantValues[id] = getConstantPermissions((ConstantSlot) slot);
+            }
+        }
+    }
+
     private Map<Integer, AnnotationMirror> createAnnotations() {
         // Create annotations of the inferred sets.
         Map<Integer, AnnotationMirror> result = new HashMap<>();
-        for (Entry<Integer, Set<String>> inferredEntry : inferredValues.entrySet()) {
-            Set<String> strings = inferredEntry.getValue();
-            if (!(strings.size() == 1 && strings.contains("ANY"))) {
-                strings.remove("ANY");
-                AnnotationMirror atm;
-                if (isSinkSolver()) {
-                    if (strings.size() == 0 && "false".equalsIgnoreCase(configuration.get(PRINT_EMPTY_SINKS_KEY))) {
-                        continue;
-                    }
-                    atm = createAnnotationMirror(strings, Sink.class);
-                } else {
-                    if (strings.size() == 0 && "false".equalsIgnoreCase(configuration.get(PRINT_EMPTY_SOURCES_KEY))) {
+        Map<BitSet, AnnotationMirror> annotations = new HashMap<>();
+        int any = permissionIndex.intern("ANY");
+        for (int id = 0; id < inferredValues.length; id++) {
+            BitSet permissions = inferredValues[id];
+            if (permissions == null) {
+                continue;
+            }
+            if (!(permissions.cardinality() == 1 && permissions.get(any))) {
+                permissions.clear(any);
+                if (permissions.isEmpty()) {
+                    String printEmptyKey = isSinkSolver() ? PRINT_EMPTY_SINKS_KEY : PRINT_EMPTY_SOURCES_KEY;
+                    if ("false".equalsIgnoreCase(configuration.get(printEmptyKey))) {
                         continue;
                     }
-                    atm = createAnnotationMirror(strings, Source.class);
                 }
-                result.put(inferredEntry.getKey(), atm);
+
+                AnnotationMirror atm = annotations.get(permissions);
+                if (atm == null) {
+                    atm = createAnnotationMirror(permissionIndex.getPermissions(permissions),
+                                                 isSinkSolver() ? Sink.class : Source.class);
+                    annotations.put(permissions, atm);
+                }
+                result.put(id, atm);
             }
         }
         return result;
@@ -159,73 +193,161 @@ public abstract class IFlowSolver implements InferenceSolver {
 
 
     /**
-     * Look up the set of inferred Strings for a Slot.
-     *
-     * If the Slot is a VariableSlot, return its entry in inferredValues.
-     *
-     * If the Slot is a ConstantSlot, return an unmodifiable set based
-     * on the Strings used in the constant slots value.
+     * Compute the set of Strings used in a constant slot's value.
      *
      * @param slot The slot to lookup
-     * @return The slots current Set of Strings.
+     * @return The Strings of the constant
      */
-    private Set<String> getInferredSlotPermissions(Slot slot) {
-        if (slot.isVariable()) {
-            if (slot.getKind() == Kind.EXISTENTIAL_VARIABLE) {
-                throw new IllegalArgumentException("Unexpected variable type:" + slot);
-            }
-            return getFlowSet(((VariableSlot) slot).getId());
-
-        } else if (slot.isConstant()) {
-            Set<String> constantSet = new HashSet<>();
-            for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
-                    ((ConstantSlot) slot).getValue().getElementValues().entrySet()) {
-                if (entry.getKey().getSimpleName().toString().equals("value")) {
-                    List<?> values = (List<?>) entry.getValue().getValue();
-                    for (Object elem : values) {
-                        String flowPermString = elem.toString();
-                        flowPermString = flowPermString.substring(flowPermString.lastIndexOf(".") + 1);
-                        flowPermString = flowPermString.replace("\"", "");
-                        constantSet.add(String.valueOf(flowPermString).intern());
-                    }
+    private BitSet getConstantPermissions(ConstantSlot slot) {
+        BitSet constantSet = new BitSet();
+        for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+                slot.getValue().getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().toString().equals("value")) {
+                List<?> values = (List<?>) entry.getValue().getValue();
+                for (Object elem : values) {
+                    String flowPermString = elem.toString();
+                    flowPermString = flowPermString.substring(flowPermString.lastIndexOf(".") + 1);
+                    flowPermString = flowPermString.replace("\"", "");
+                    constantSet.set(permissionIndex.intern(flowPermString));
                 }
             }
-            //The set of constants should not be modified
-            return Collections.unmodifiableSet(constantSet);
-        } else {
-            return new HashSet<>();
-//            ErrorReporter.errorAbort("Found slot that was neither a variable or a constant: " + slot);
-//            return null; // Dead code
         }
+        return constantSet;
     }
 
-    private AnnotationMirror createAnnotationMirror(Set<String> strings, Class<? extends Annotation> clazz) {
+    private AnnotationMirror createAnnotationMirror(List<String> strings, Class<? extends Annotation> clazz) {
         AnnotationBuilder builder = new AnnotationBuilder( processingEnvironment, clazz);
         builder.setValue("value", strings.toArray());
         return builder.build();
     }
 
     /**
-     * Get the Set of Strings in aggregatedValues map for the given id.
-     * Create the Set and add it to the map if it does not already exist.
+     * Configure the mode of the solver.
      *
-     * @param id The id of the VariableSlot
-     * @return The set of Strings for the id
+     * @return true if solving @Sink annotations, false if solving @Source.
+     */
+    public abstract boolean isSinkSolver();
+
+    /**
+     * Edges from each slot to the variables that must include its Strings, as a compressed
+     * sparse row adjacency over slot ids.
      */
-    private Set<String> getFlowSet(int id) {
-        if (inferredValues.containsKey(id)) {
-            return inferredValues.get(id);
-        } else {
-            Set<String> newSet = new HashSet<>();
-            inferredValues.put(id, newSet);
-            return newSet;
+    private class FlowGraph {
+        private final int maxId;
+        private int[] sources = new int[16];
+        private int[] destinations = new int[16];
+        private int edgeCount = 0;
+
+        FlowGraph(int maxId) {
+            this.maxId = maxId;
+        }
+
+        /**
+         * Record that to must include the Strings of from.  Nothing flows into constants.
+         */
+        void addFlow(Slot from, Slot to) {
+            if (!to.isVariable()) {
+                return;
+            }
+            if (edgeCount == sources.length) {
+                sources = Arrays.copyOf(sources, edgeCount * 2);
+                destinations = Arrays.copyOf(destinations, edgeCount * 2);
+            }
+            sources[edgeCount] = ((VariableSlot) from).getId();
+            destinations[edgeCount] = ((VariableSlot) to).getId();
+            edgeCount++;
+        }
+
+        void propagate() {
+            int[] edgeStart = new int[maxId + 2];
+            for (int i = 0; i < edgeCount; i++) {
+                edgeStart[sources[i] + 1]++;
+            }
+            for (int id = 0; id <= maxId; id++) {
+                edgeStart[id + 1] += edgeStart[id];
+            }
+            int[] targets = new int[edgeCount];
+            int[] next = Arrays.copyOf(edgeStart, maxId + 1);
+            for (int i = 0; i < edgeCount; i++) {
+                targets[next[sources[i]]++] = destinations[i];
+            }
+
+            // Circular queue of variables whose sets grew, each variable is queued at most once
+            int[] queue = new int[maxId + 1];
+            BitSet queued = new BitSet(maxId + 1);
+            int head = 0;
+            int size = 0;
+
+            // Constants flow into their targets once
+            for (int id = 0; id <= maxId; id++) {
+                if (constantValues[id] == null) {
+                    continue;
+                }
+                for (int edge = edgeStart[id]; edge < edgeStart[id + 1]; edge++) {
+                    int target = targets[edge];
+                    if (addAll(inferredValues[target], constantValues[id]) && !queued.get(target)) {
+                        queued.set(target);
+                        queue[(head + size++) % queue.length] = target;
+                    }
+                }
+            }
+
+            while (size > 0) {
+                int variable = queue[head];
+                head = (head + 1) % queue.length;
+                size--;
+                queued.clear(variable);
+
+                for (int edge = edgeStart[variable]; edge < edgeStart[variable + 1]; edge++) {
+                    int target = targets[edge];
+                    if (addAll(inferredValues[target], inferredValues[variable]) && !queued.get(target)) {
+                        queued.set(target);
+                        queue[(head + size++) % queue.length] = target;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return true if set changed
+         */
+        private boolean addAll(BitSet set, BitSet added) {
+            int before = set.cardinality();
+            set.or(added);
+            return set.cardinality() != before;
         }
     }
 
     /**
-     * Configure the mode of the solver.
-     *
-     * @return true if solving @Sink annotations, false if solving @Source.
+     * Interns permission Strings as small ints.  The names of the FlowPermissions get the first
+     * indices, other Strings (e.g. parameterized permissions) are added as they are found.
      */
-    public abstract boolean isSinkSolver();
+    private static class PermissionIndex {
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final List<String> permissions = new ArrayList<>();
+
+        PermissionIndex() {
+            for (FlowPermission permission : FlowPermission.values()) {
+                intern(permission.toString());
+            }
+        }
+
+        int intern(String permission) {
+            Integer index = indices.get(permission);
+            if (index == null) {
+                index = permissions.size();
+                permissions.add(permission);
+                indices.put(permission, index);
+            }
+            return index;
+        }
+
+        List<String> getPermissions(BitSet set) {
+            List<String> result = new ArrayList<>(set.cardinality());
+            for (int index = set.nextSetBit(0); index >= 0; index = set.nextSetBit(index + 1)) {
+                result.add(permissions.get(index));
+            }
+            return result;
+        }
+    }
 }
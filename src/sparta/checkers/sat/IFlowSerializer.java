@@ -11,7 +11,7 @@ public abstract class IFlowSerializer extends CnfVecIntSerializer {
     protected PFPermission permission;
 
     public IFlowSerializer(PFPermission permission) {
-        super(InferenceMain.getInstance().getSlotManager());
+        super(InferenceMain.getInstance().getSlotManager(), InferenceMain.getInstance().getSlotCompactor());
         this.permission = permission;
     }
 }
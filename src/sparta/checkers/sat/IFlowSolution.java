@@ -1,10 +1,9 @@
 package sparta.checkers.sat;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.logging.Level;
 
 import javax.annotation.processing.ProcessingEnvironment;
@@ -13,12 +12,17 @@ import javax.lang.model.element.AnnotationMirror;
 import checkers.inference.InferenceMain;
 import checkers.inference.InferenceSolution;
 import sparta.checkers.iflow.util.PFPermission;
+import sparta.checkers.iflow.util.PermissionSet;
 
 /**
  * Created by smillst on 9/21/15.
+ *
+ * The permissions of each slot are collected as a bitset over the indices of
+ * PermissionSet.indexOf, then turned into an interned PermissionSet, whose annotation is only
+ * built once however many slots have the same permissions.
  */
 public abstract class IFlowSolution implements InferenceSolution {
-    protected final Map<Integer, Set<PFPermission>> results;
+    protected final Map<Integer, BitSet> results;
     protected final Map<Integer, Boolean> idToExistance;
     protected final Map<Integer, AnnotationMirror> annotationResults;
 
@@ -39,23 +43,18 @@ public abstract class IFlowSolution implements InferenceSolution {
     }
 
     private void mergeResults(PermissionSolution solution) {
+        int permission = PermissionSet.indexOf(solution.getPermission());
         for (Map.Entry<Integer, Boolean> entry : solution.getResult().entrySet()) {
             boolean shouldContainPermission = shouldContainPermission(entry);
-            PFPermission permission = solution.getPermission();
 
-            Set<PFPermission> permissions = results.get(entry.getKey());
+            BitSet permissions = results.get(entry.getKey());
             if (permissions == null) {
-                permissions = new TreeSet<>();
+                permissions = new BitSet();
                 results.put(entry.getKey(), permissions);
             }
 
             if (shouldContainPermission) {
-                permissions.add(permission);
-            }
-
-            if (permissions.contains(PFPermission.ANY) && permissions.size() > 1) {
-                permissions.clear();
-                permissions.add(PFPermission.ANY);
+                permissions.set(permission);
             }
         }
     }
@@ -63,15 +62,17 @@ public abstract class IFlowSolution implements InferenceSolution {
     protected abstract boolean shouldContainPermission(Map.Entry<Integer, Boolean> entry);
 
     private void createAnnotations(ProcessingEnvironment processingEnv) {
-        for (Map.Entry<Integer, Set<PFPermission>> entry : results.entrySet()) {
+        int any = PermissionSet.indexOf(PFPermission.ANY);
+        for (Map.Entry<Integer, BitSet> entry : results.entrySet()) {
             int id = entry.getKey();
-            Set<PFPermission> permissions = entry.getValue();
+            BitSet bits = entry.getValue();
+            PermissionSet permissions = bits.get(any) ? PermissionSet.ANY : PermissionSet.of(bits);
             AnnotationMirror anno = createAnnotationFromPermissions(processingEnv, permissions);
             annotationResults.put(id, anno);
         }
     }
 
-    protected abstract AnnotationMirror createAnnotationFromPermissions(ProcessingEnvironment processingEnv, Set<PFPermission> permissions);
+    protected abstract AnnotationMirror createAnnotationFromPermissions(ProcessingEnvironment processingEnv, PermissionSet permissions);
 
     private void mergeIdToExistance(PermissionSolution solution) {
         for (Map.Entry<Integer, Boolean> entry : solution.getResult().entrySet()) {
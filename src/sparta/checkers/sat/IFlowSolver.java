@@ -2,44 +2,141 @@ package sparta.checkers.sat;
 
 import checkers.inference.InferenceSolution;
 import checkers.inference.InferenceSolver;
+import checkers.inference.SoftConstraintSolver;
 import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.Slot;
 import org.checkerframework.framework.type.QualifierHierarchy;
+import org.checkerframework.javacutil.ErrorReporter;
 import sparta.checkers.iflow.util.PFPermission;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Created by smillst on 9/17/15.
+ *
+ * Each permission is serialized by its own PermissionSolver.  Clauses between variables are the same
+ * for every permission and are serialized once (see SharedClauses), the constraints on constants
+ * are serialized for every permission in turn.  The permissions are then solved concurrently on
+ * a fixed pool of threads.  Each thread adds the shared clauses to a single SharedClausesSolver
+ * and solves its permissions one after the other, so the shared clauses are copied once per thread
+ * rather than once per permission.  Permissions are dealt to the threads round robin in permission
+ * order and solutions are collected in permission order, so the merged solution does not depend on
+ * which thread finishes first.
+ *
+ * Solver args:
+ *   threads=n  the number of permissions solved at once, the number of processors by default
  */
-public abstract class IFlowSolver implements InferenceSolver {
+public abstract class IFlowSolver implements InferenceSolver, SoftConstraintSolver {
 
+    private static final String THREADS_KEY = "threads";
 
     public InferenceSolution solve(Map<String, String> configuration,
                                    Collection<Slot> slots,
-                                   Collection<Constraint> constraints,
+                                   Iterable<Constraint> constraints,
                                    QualifierHierarchy qualHierarchy,
                                    ProcessingEnvironment processingEnvironment) {
         Collection<PFPermission> permissionsUsed = getPermissionsUsed(slots);
         List<PermissionSolver> permissionSolvers = new ArrayList<>();
 
+        //Encode the constraints between variables once, for every permission
+        SharedClauses sharedClauses = new SharedClauses(constraints, getSerializer(PFPermission.ANY));
+
         //Configure permission solvers
         for (PFPermission permission : permissionsUsed) {
             PermissionSolver solver = new PermissionSolver(permission);
-            solver.configure(constraints, getSerializer(permission));
+            solver.configure(sharedClauses, getSerializer(permission));
             permissionSolvers.add(solver);
         }
 
         //Solve
-        List<PermissionSolution> solutions = new ArrayList<>();
+        int threads = configuration.containsKey(THREADS_KEY) ? Integer.parseInt(configuration.get(THREADS_KEY))
+                                                             : Runtime.getRuntime().availableProcessors();
+        List<PermissionSolution> solutions = solveAll(sharedClauses, permissionSolvers, threads);
+
+        return getMergedSolution(processingEnvironment, solutions);
+    }
+
+    /**
+     * Solve each permission on a pool of at most threads threads, thread i solves the permissions
+     * whose index is i modulo the number of threads.
+     * @return the solutions, in the order of permissionSolvers
+     */
+    private List<PermissionSolution> solveAll(final SharedClauses sharedClauses,
+                                              final List<PermissionSolver> permissionSolvers, int threads) {
+        int numberOfVariables = 0;
         for (PermissionSolver solver : permissionSolvers) {
-            solutions.add(solver.solve());
+            numberOfVariables = Math.max(numberOfVariables, solver.getNumberOfVariables());
         }
 
-        return getMergedSolution(processingEnvironment, solutions);
+        final int workers = Math.max(1, Math.min(threads, permissionSolvers.size()));
+        if (workers == 1) {
+            return solveInTurn(sharedClauses, numberOfVariables, permissionSolvers);
+        }
+
+        List<List<PermissionSolver>> partitions = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            partitions.add(new ArrayList<PermissionSolver>());
+        }
+        for (int i = 0; i < permissionSolvers.size(); i++) {
+            partitions.get(i % workers).add(permissionSolvers.get(i));
+        }
+
+        PermissionSolution[] solutions = new PermissionSolution[permissionSolvers.size()];
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<List<PermissionSolution>>> futures = new ArrayList<>();
+            for (final List<PermissionSolver> partition : partitions) {
+                final int variables = numberOfVariables;
+                futures.add(executor.submit(new Callable<List<PermissionSolution>>() {
+                    @Override
+                    public List<PermissionSolution> call() {
+                        return solveInTurn(sharedClauses, variables, partition);
+                    }
+                }));
+            }
+
+            for (int worker = 0; worker < workers; worker++) {
+                List<PermissionSolution> partitionSolutions = futures.get(worker).get();
+                for (int j = 0; j < partitionSolutions.size(); j++) {
+                    solutions[worker + j * workers] = partitionSolutions.get(j);
+                }
+            }
+        } catch (InterruptedException e) {
+            ErrorReporter.errorAbort("Interrupted while solving permissions", e);
+            return null; // Dead
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            ErrorReporter.errorAbort("Error solving permissions", e.getCause());
+            return null; // Dead
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return Arrays.asList(solutions);
+    }
+
+    /**
+     * Solve permissionSolvers one after the other with a single SharedClausesSolver.
+     */
+    private static List<PermissionSolution> solveInTurn(SharedClauses sharedClauses, int numberOfVariables,
+                                                        List<PermissionSolver> permissionSolvers) {
+        SharedClausesSolver solver = new SharedClausesSolver(sharedClauses.getClauses(), numberOfVariables,
+                                                             permissionSolvers.size());
+        List<PermissionSolution> solutions = new ArrayList<>();
+        for (PermissionSolver permissionSolver : permissionSolvers) {
+            solutions.add(solver.solve(permissionSolver));
+        }
+        return solutions;
     }
 
     private Collection<PFPermission> getPermissionsUsed(Collection<Slot> solts) {
@@ -3,10 +3,10 @@ package sparta.checkers.sat;
 import checkers.inference.*;
 import checkers.inference.model.Constraint;
 import org.sat4j.core.VecInt;
-import org.sat4j.maxsat.WeightedMaxSatDecorator;
 import sparta.checkers.iflow.util.PFPermission;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,6 +17,8 @@ public class PermissionSolver {
     private PFPermission permission;
     private IFlowSerializer serializer;
     List<VecInt> clauses;
+    // Clauses shared with the solvers of other permissions, see SharedClauses
+    List<VecInt> sharedClauses = Collections.emptyList();
 
     public PermissionSolver(PFPermission permission) {
         this.permission = permission;
@@ -28,61 +30,70 @@ public class PermissionSolver {
         this.clauses = convertToCNF(constraints);
     }
 
+    /**
+     * Use the shared clauses and only serialize the constraints that depend on the permission.
+     */
+    public void configure(SharedClauses sharedClauses, IFlowSerializer serializer) {
+        configure(sharedClauses.getPermissionConstraints(), serializer);
+        this.sharedClauses = sharedClauses.getClauses();
+    }
+
     private List<VecInt> convertToCNF(Collection<Constraint> constraints) {
         return serializer.convertAll(constraints);
     }
 
+    /**
+     * Solve this permission on its own, see SharedClausesSolver for solving several in turn.
+     */
     public PermissionSolution solve() {
+        return new SharedClausesSolver(sharedClauses, getNumberOfVariables(), 1).solve(this);
+    }
 
-        Map<Integer, Boolean> idToExistence = new HashMap<>();
-        Map<Integer, Boolean> result = new HashMap<>();
-
-
-        final int totalVars = slotManager.getNumberOfSlots();
-        final int totalClauses = clauses.size();
-
-        try {
-            //**** Prep Solver ****
-            //org.sat4j.pb.SolverFactory.newBoth() Runs both of sat4j solves and uses the result of the first to finish
-            final WeightedMaxSatDecorator solver = new WeightedMaxSatDecorator(org.sat4j.pb.SolverFactory.newBoth());
-
-            solver.newVar(totalVars);
-            solver.setExpectedNumberOfClauses(totalClauses);
-            //Arbitrary timeout
-            solver.setTimeoutMs(1000000);
-            for (VecInt clause : clauses) {
-                solver.addSoftClause(clause);
-            }
+    public PFPermission getPermission() {
+        return permission;
+    }
 
-            //**** Solve ****
-            boolean hasSolution = solver.isSatisfiable();
+    /**
+     * @return the clauses of the constraints serialized for this permission
+     */
+    List<VecInt> getClauses() {
+        return clauses;
+    }
 
-            if (hasSolution) {
+    /**
+     * @return the number of SAT variables of the slots plus the existence variables of this permission
+     */
+    public int getNumberOfVariables() {
+        return serializer.getNumberOfVariables() + serializer.getExistentialToPotentialVar().size();
+    }
 
-                //**** Remove exatential vars from solution
-                final Map<Integer, Integer> existentialToPotentialIds = serializer.getExistentialToPotentialVar();
-                int[] solution = solver.model();
+    /**
+     * @param model a model of a SAT problem that contains the clauses of this permission, variables
+     *              other than the ones of this permission are ignored
+     */
+    PermissionSolution toSolution(int[] model) {
+        Map<Integer, Boolean> idToExistence = new HashMap<>();
+        Map<Integer, Boolean> result = new HashMap<>();
 
-                for (Integer var : solution) {
-                    boolean varIsTrue = !(var < 0);
-                    //Need postive var
-                    var = Math.abs(var);
+        //**** Remove exatential vars from solution
+        final Map<Integer, Integer> existentialToPotentialIds = serializer.getExistentialToPotentialVar();
+        final int totalVars = getNumberOfVariables();
 
-                    Integer potential = existentialToPotentialIds.get(var);
-                    if (potential != null) {
-                        idToExistence.put(potential, varIsTrue);
-                    } else {
-                        result.put(var, varIsTrue);
-                    }
-                }
-                return new PermissionSolution(result, idToExistence, permission);
+        for (Integer var : model) {
+            boolean varIsTrue = !(var < 0);
+            //Need postive var
+            var = Math.abs(var);
+            if (var > totalVars) {
+                continue;
             }
 
-        } catch (Throwable th) {
-            VecInt lastClause = clauses.get(clauses.size() - 1);
-            throw new RuntimeException("Error MAX-SAT solving! " + lastClause, th);
+            Integer potential = existentialToPotentialIds.get(var);
+            if (potential != null) {
+                idToExistence.put(potential, varIsTrue);
+            } else {
+                result.put(serializer.getSlotId(var), varIsTrue);
+            }
         }
-
-        return PermissionSolution.noSolution(permission);
+        return new PermissionSolution(result, idToExistence, permission);
     }
-}
\ No newline at end of file
+}
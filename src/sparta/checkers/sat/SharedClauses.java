@@ -0,0 +1,71 @@
+package sparta.checkers.sat;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ExistentialConstraint;
+import checkers.inference.model.Slot;
+import org.sat4j.core.VecInt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The part of the CNF encoding that is the same for every permission.
+ *
+ * Permissions only change how ConstantSlots are encoded (see IFlowSerializer.isTop), so the
+ * clauses of constraints between variables are built once here and shared by every
+ * PermissionSolver.  Constraints that mention a constant are kept aside, each PermissionSolver
+ * serializes them for its own permission.  ExistentialConstraints are also kept aside, because
+ * the serializer numbers their existence variables as it encounters them.
+ *
+ * The shared clauses are read by several solvers at once and must not be modified.
+ */
+public class SharedClauses {
+    private final List<VecInt> clauses;
+    private final List<Constraint> permissionConstraints;
+
+    /**
+     * @param serializer a serializer for any permission, only used for constraints between variables
+     */
+    public SharedClauses(Iterable<Constraint> constraints, IFlowSerializer serializer) {
+        List<Constraint> variableConstraints = new ArrayList<>();
+        List<Constraint> permissionConstraints = new ArrayList<>();
+        for (Constraint constraint : constraints) {
+            if (dependsOnPermission(constraint)) {
+                permissionConstraints.add(constraint);
+            } else {
+                variableConstraints.add(constraint);
+            }
+        }
+
+        this.clauses = Collections.unmodifiableList(serializer.convertAll(variableConstraints, new ArrayList<VecInt>()));
+        this.permissionConstraints = Collections.unmodifiableList(permissionConstraints);
+    }
+
+    private static boolean dependsOnPermission(Constraint constraint) {
+        if (constraint instanceof ExistentialConstraint) {
+            return true;
+        }
+        for (Slot slot : constraint.getSlots()) {
+            if (slot instanceof ConstantSlot) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the clauses of the constraints that do not depend on the permission
+     */
+    public List<VecInt> getClauses() {
+        return clauses;
+    }
+
+    /**
+     * @return the constraints each permission must serialize itself
+     */
+    public List<Constraint> getPermissionConstraints() {
+        return permissionConstraints;
+    }
+}
@@ -0,0 +1,92 @@
+package sparta.checkers.sat;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.maxsat.WeightedMaxSatDecorator;
+import org.sat4j.specs.ContradictionException;
+
+import java.util.List;
+
+/**
+ * A MAX-SAT solver that solves several permissions in turn, see IFlowSolver.
+ *
+ * The SharedClauses are added once, when the solver is created.  The clauses of a permission are
+ * added when it is solved, each extended with the negation of a selector variable of the
+ * permission, and the permission is solved under the assumption that its selector is true.  The
+ * clauses of the permissions solved earlier are satisfied by setting their selectors to false, so
+ * they do not constrain the solution.  SAT4J 2.3.4 cannot remove soft clauses, the selectors take
+ * the place of removing them.
+ *
+ * Variables are numbered like this:  the SAT variables of the slots and the existence variables of
+ * the permissions come first, up to numberOfVariables, then one selector per permission, then the
+ * variables WeightedMaxSatDecorator adds for its soft clauses.  Permissions number their existence
+ * variables from the same start, which is safe since the clauses of only one permission are
+ * selected at a time.
+ *
+ * Not thread safe, each thread that solves permissions uses its own SharedClausesSolver.
+ */
+public class SharedClausesSolver {
+
+    private final WeightedMaxSatDecorator solver;
+    private final int numberOfVariables;
+    private final int numberOfPermissions;
+    private int permissionsSolved = 0;
+
+    /**
+     * @param sharedClauses the clauses shared by every permission, copied since addSoftClause
+     *                      appends a literal to the clause it is given
+     * @param numberOfVariables the largest PermissionSolver.getNumberOfVariables() of the permissions
+     * @param numberOfPermissions how many permissions this solver will solve
+     */
+    public SharedClausesSolver(List<VecInt> sharedClauses, int numberOfVariables, int numberOfPermissions) {
+        this.numberOfVariables = numberOfVariables;
+        this.numberOfPermissions = numberOfPermissions;
+
+        // Not org.sat4j.pb.SolverFactory.newBoth(), which races the resolution and cutting planes
+        // solvers but cannot solve under assumptions.  The clauses are plain CNF, on which the
+        // resolution solver of newDefault() is the one that finishes first anyway.
+        solver = new WeightedMaxSatDecorator(org.sat4j.pb.SolverFactory.newDefault());
+        solver.newVar(numberOfVariables + numberOfPermissions);
+        solver.setExpectedNumberOfClauses(sharedClauses.size());
+        //Arbitrary timeout
+        solver.setTimeoutMs(1000000);
+
+        try {
+            for (VecInt clause : sharedClauses) {
+                VecInt copy = new VecInt(clause.size());
+                clause.copyTo(copy);
+                solver.addSoftClause(copy);
+            }
+        } catch (ContradictionException e) {
+            // Soft clauses get a fresh relaxation variable, they cannot contradict
+            throw new RuntimeException("Error adding the shared clauses!", e);
+        }
+    }
+
+    public PermissionSolution solve(PermissionSolver permissionSolver) {
+        if (permissionsSolved == numberOfPermissions) {
+            throw new IllegalStateException("All " + numberOfPermissions + " selectors are used, "
+                    + "cannot solve " + permissionSolver.getPermission());
+        }
+        permissionsSolved += 1;
+        final int selector = numberOfVariables + permissionsSolved;
+
+        final List<VecInt> clauses = permissionSolver.getClauses();
+        try {
+            for (VecInt clause : clauses) {
+                clause.push(-selector);
+                solver.addSoftClause(clause);
+            }
+
+            //**** Solve ****
+            if (solver.isSatisfiable(new VecInt(new int[] { selector }))) {
+                return permissionSolver.toSolution(solver.model());
+            }
+
+        } catch (Throwable th) {
+            VecInt lastClause = clauses.isEmpty() ? null : clauses.get(clauses.size() - 1);
+            throw new RuntimeException("Error MAX-SAT solving! " + lastClause, th);
+        }
+
+        return PermissionSolution.noSolution(permissionSolver.getPermission());
+    }
+}
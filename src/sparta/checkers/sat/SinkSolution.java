@@ -1,13 +1,11 @@
 package sparta.checkers.sat;
 
-import sparta.checkers.iflow.util.IFlowUtils;
-import sparta.checkers.iflow.util.PFPermission;
+import sparta.checkers.iflow.util.PermissionSet;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
 import java.util.Collection;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Created by smillst on 9/21/15.
@@ -24,7 +22,7 @@ public class SinkSolution extends IFlowSolution {
     }
 
     @Override
-    protected AnnotationMirror createAnnotationFromPermissions(ProcessingEnvironment processingEnv, Set<PFPermission> permissions) {
-        return IFlowUtils.createAnnoFromSink(permissions, processingEnv);
+    protected AnnotationMirror createAnnotationFromPermissions(ProcessingEnvironment processingEnv, PermissionSet permissions) {
+        return permissions.getSinkAnnotation(processingEnv);
     }
 }
@@ -1,7 +1,6 @@
 package sparta.checkers.sat;
 
-import sparta.checkers.iflow.util.IFlowUtils;
-import sparta.checkers.iflow.util.PFPermission;
+import sparta.checkers.iflow.util.PermissionSet;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
@@ -23,7 +22,7 @@ public class SourceSolution extends IFlowSolution {
     }
 
     @Override
-    protected AnnotationMirror createAnnotationFromPermissions(ProcessingEnvironment processingEnv, Set<PFPermission> permissions) {
-        return IFlowUtils.createAnnoFromSource(permissions, processingEnv);
+    protected AnnotationMirror createAnnotationFromPermissions(ProcessingEnvironment processingEnv, PermissionSet permissions) {
+        return permissions.getSourceAnnotation(processingEnv);
     }
 }
@@ -0,0 +1,82 @@
+package checkers.inference;
+
+import static checkers.inference.InferenceTestEnvironment.createConstant;
+import static checkers.inference.InferenceTestEnvironment.createVariable;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.ConstraintComponents;
+import ostrusted.qual.OsTrusted;
+
+public class ConstraintComponentsTest {
+
+    private SlotManager slotManager;
+    private ConstraintManager constraintManager;
+    private ConstantSlot constant;
+
+    @Before
+    public void setUp() {
+        final InferenceMain inferenceMain = InferenceTestEnvironment.resetInferenceMain();
+        slotManager = inferenceMain.getSlotManager();
+        constraintManager = inferenceMain.getConstraintManager();
+        constant = createConstant(OsTrusted.class);
+    }
+
+    @Test
+    public void constantsDoNotConnectComponents() {
+        final VariableSlot a = createVariable();
+        final VariableSlot b = createVariable();
+        final VariableSlot c = createVariable();
+        final VariableSlot d = createVariable();
+
+        final Constraint ab = constraintManager.createSubtypeConstraint(a, b);
+        final Constraint cd = constraintManager.createEqualityConstraint(c, d);
+        final Constraint bConstant = constraintManager.createSubtypeConstraint(b, constant);
+        final Constraint dConstant = constraintManager.createSubtypeConstraint(d, constant);
+
+        final List<List<Constraint>> components =
+                ConstraintComponents.decompose(Arrays.asList(ab, cd, bConstant, dConstant));
+        Assert.assertEquals(Arrays.asList(Arrays.asList(ab, bConstant), Arrays.asList(cd, dConstant)), components);
+    }
+
+    @Test
+    public void laterConstraintsJoinComponents() {
+        final VariableSlot a = createVariable();
+        final VariableSlot b = createVariable();
+        final VariableSlot c = createVariable();
+        final VariableSlot d = createVariable();
+        final VariableSlot e = createVariable();
+
+        final Constraint cd = constraintManager.createSubtypeConstraint(c, d);
+        final Constraint ab = constraintManager.createSubtypeConstraint(a, b);
+        final Constraint e1 = constraintManager.createSubtypeConstraint(e, constant);
+        final Constraint bc = constraintManager.createInequalityConstraint(b, c);
+
+        final List<List<Constraint>> components = ConstraintComponents.decompose(Arrays.asList(cd, ab, e1, bc));
+        Assert.assertEquals(Arrays.asList(Arrays.asList(cd, ab, bc), Arrays.asList(e1)), components);
+    }
+
+    @Test
+    public void constraintsWithoutVariablesAreInNoComponent() {
+        final VariableSlot a = createVariable();
+        final Constraint constantConstant = constraintManager.restoreBinaryConstraint(SubtypeConstraint.class,
+                constant, constant, AnnotationLocation.MISSING_LOCATION);
+        final Constraint aConstant = constraintManager.createSubtypeConstraint(a, constant);
+
+        final List<List<Constraint>> components =
+                ConstraintComponents.decompose(Arrays.asList(constantConstant, aConstant));
+        Assert.assertEquals(Arrays.asList(Arrays.asList(aConstant)), components);
+        Assert.assertTrue(ConstraintComponents.decompose(Arrays.asList(constantConstant)).isEmpty());
+    }
+}
@@ -1,13 +1,144 @@
 package checkers.inference;
 
+import static checkers.inference.InferenceTestEnvironment.buildAnnotation;
+import static checkers.inference.InferenceTestEnvironment.createVariable;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
 
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import ostrusted.qual.OsTrusted;
+import ostrusted.qual.OsUntrusted;
+
 public class DefaultSlotManagerTest {
 
+    // More slots than the initial capacity of the slot arrays
+    private static final int MANY_SLOTS = 3000;
 
+    private DefaultSlotManager slotManager;
+
+    @Before
+    public void setUp() {
+        slotManager = (DefaultSlotManager) InferenceTestEnvironment.resetInferenceMain().getSlotManager();
+    }
 
     @Test
     public void nextIdTest() {
+        Assert.assertEquals(0, slotManager.getNumberOfSlots());
+        for (int id = 1; id <= MANY_SLOTS; id++) {
+            final VariableSlot slot = createVariable();
+            Assert.assertEquals(id, slot.getId());
+            Assert.assertSame(slot, slotManager.getVariable(id));
+        }
+        Assert.assertEquals(MANY_SLOTS, slotManager.getNumberOfSlots());
+
+        Assert.assertNull(slotManager.getVariable(0));
+        Assert.assertNull(slotManager.getVariable(-1));
+        Assert.assertNull(slotManager.getVariable(MANY_SLOTS + 1));
+        Assert.assertNull(slotManager.getVariable(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void slotsAreListedById() {
+        final ConstantSlot trusted = slotManager.createConstantSlot(buildAnnotation(OsTrusted.class));
+        final List<VariableSlot> variables = new ArrayList<>();
+        for (int i = 0; i < MANY_SLOTS; i++) {
+            variables.add(createVariable());
+        }
+        final ConstantSlot untrusted = slotManager.createConstantSlot(buildAnnotation(OsUntrusted.class));
+
+        final List<Slot> slots = slotManager.getSlots();
+        Assert.assertEquals(MANY_SLOTS + 2, slots.size());
+        for (int i = 0; i < slots.size(); i++) {
+            Assert.assertEquals(i + 1, ((VariableSlot) slots.get(i)).getId());
+        }
+        Assert.assertSame(trusted, slots.get(0));
+        Assert.assertSame(untrusted, slots.get(slots.size() - 1));
+
+        Assert.assertEquals(variables, slotManager.getVariableSlots());
+        Assert.assertEquals(Arrays.asList(trusted, untrusted), slotManager.getConstantSlots());
+
+        // Constants are cached by value
+        Assert.assertSame(trusted, slotManager.createConstantSlot(buildAnnotation(OsTrusted.class)));
+        Assert.assertEquals(MANY_SLOTS + 2, slotManager.getNumberOfSlots());
+    }
+
+    @Test
+    public void viewsKeepTheirSizeWhenSlotsAreAdded() {
+        final VariableSlot first = createVariable();
+        final List<Slot> slots = slotManager.getSlots();
+        final List<VariableSlot> variables = slotManager.getVariableSlots();
+        final List<ConstantSlot> constants = slotManager.getConstantSlots();
+
+        // Grow the arrays the views were created from
+        for (int i = 0; i < MANY_SLOTS; i++) {
+            createVariable();
+        }
+        slotManager.createConstantSlot(buildAnnotation(OsTrusted.class));
+
+        Assert.assertEquals(Collections.<Slot>singletonList(first), slots);
+        Assert.assertEquals(Collections.singletonList(first), variables);
+        Assert.assertTrue(constants.isEmpty());
+        Assert.assertEquals(MANY_SLOTS + 1, slotManager.getVariableSlots().size());
+        Assert.assertEquals(1, slotManager.getConstantSlots().size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void viewsAreBoundedBySize() {
+        createVariable();
+        slotManager.getVariableSlots().get(1);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void viewsAreUnmodifiable() {
+        slotManager.getVariableSlots().add(createVariable());
+    }
+
+    @Test
+    public void mergeVariablesAreReusedForTheSameJoinedSlots() {
+        final VariableSlot a = createVariable();
+        final VariableSlot b = createVariable();
+        final VariableSlot c = createVariable();
+
+        final CombVariableSlot ab = slotManager.createMergeVariableSlot(a, b);
+        Assert.assertSame(ab, slotManager.createMergeVariableSlot(b, a));
+
+        // Nested merges are keyed by the slots they join, whatever the order of the joins
+        final CombVariableSlot abc = slotManager.createMergeVariableSlot(ab, c);
+        Assert.assertSame(abc, slotManager.createMergeVariableSlot(a, slotManager.createMergeVariableSlot(b, c)));
+        Assert.assertSame(abc, slotManager.createMergeVariableSlot(slotManager.createMergeVariableSlot(c, a), b));
+        Assert.assertSame(abc, slotManager.createMergeVariableSlot(abc, a));
+
+        final int numberOfSlots = slotManager.getNumberOfSlots();
+        slotManager.createMergeVariableSlot(c, ab);
+        slotManager.createMergeVariableSlot(b, a);
+        Assert.assertEquals(numberOfSlots, slotManager.getNumberOfSlots());
+    }
+
+    @Test
+    public void mergeVariablesOfDifferentSlotsAreDistinct() {
+        final VariableSlot a = createVariable();
+        final VariableSlot b = createVariable();
+        final VariableSlot c = createVariable();
+
+        final CombVariableSlot ab = slotManager.createMergeVariableSlot(a, b);
+        final CombVariableSlot ac = slotManager.createMergeVariableSlot(a, c);
+        Assert.assertNotSame(ab, ac);
+        Assert.assertNotSame(ab, slotManager.createMergeVariableSlot(ab, c));
+
+        // A merge of a slot with itself joins one slot, it is not the slot itself
+        final CombVariableSlot aa = slotManager.createMergeVariableSlot(a, a);
+        Assert.assertNotSame(a, aa);
+        Assert.assertNotSame(ab, aa);
+        Assert.assertSame(aa, slotManager.createMergeVariableSlot(a, a));
     }
 }
@@ -0,0 +1,148 @@
+package checkers.inference;
+
+import static checkers.inference.InferenceTestEnvironment.createVariable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.model.serialization.CnfVecIntSerializer;
+
+/**
+ * Checks that the linear and the tree encodings of ExistentialVariables have the same solutions.
+ */
+public class ExistentialEncodingTest {
+
+    private SlotManager slotManager;
+    private ConstraintManager constraintManager;
+
+    @Before
+    public void setUp() {
+        final InferenceMain inferenceMain = InferenceTestEnvironment.resetInferenceMain();
+        slotManager = inferenceMain.getSlotManager();
+        constraintManager = inferenceMain.getConstraintManager();
+    }
+
+    /**
+     * The slots of nested generic type variables, e.g. the type argument of a List<T> where T's
+     * bound is itself a type variable:  the constraints are between existential chains, and
+     * potential slot p2 is in two different chains.
+     */
+    @Test
+    public void nestedGenericsHaveTheSameSolutions() throws Exception {
+        final VariableSlot p1 = createVariable();
+        final VariableSlot p2 = createVariable();
+        final VariableSlot p3 = createVariable();
+        final VariableSlot d1 = createVariable();
+        final VariableSlot d2 = createVariable();
+        final VariableSlot d3 = createVariable();
+        final VariableSlot x = createVariable();
+        final List<VariableSlot> variables = Arrays.asList(p1, p2, p3, d1, d2, d3, x);
+
+        final ExistentialVariableSlot outer =
+                slotManager.createExistentialVariableSlot(p1, slotManager.createExistentialVariableSlot(p2, d1));
+        final ExistentialVariableSlot inner = slotManager.createExistentialVariableSlot(p2, d3);
+        final ExistentialVariableSlot other = slotManager.createExistentialVariableSlot(p3, d2);
+
+        final List<Constraint> constraints = new ArrayList<>();
+        constraints.add(constraintManager.createSubtypeConstraint(outer, other));
+        constraints.add(constraintManager.createEqualityConstraint(outer, x));
+        constraints.add(constraintManager.createSubtypeConstraint(inner, other));
+        constraints.add(constraintManager.createInequalityConstraint(inner, d1));
+
+        final Encoding tree = new Encoding(new ConstraintNormalizer(false).normalize(constraints));
+        final Encoding linear = new Encoding(new ConstraintNormalizer(true).normalize(constraints));
+
+        final List<VariableSlot> potentials = Arrays.asList(p1, p2, p3);
+        for (VariableSlot potential : potentials) {
+            Assert.assertNotNull(tree.existenceVar(potential));
+            Assert.assertNotNull(linear.existenceVar(potential));
+        }
+
+        // Compare the solutions projected on the variables and the existence of the potential slots
+        final int projected = variables.size() + potentials.size();
+        int solutions = 0;
+        for (int assignment = 0; assignment < (1 << projected); assignment++) {
+            final boolean treeSatisfiable = tree.isSatisfiable(variables, potentials, assignment);
+            final boolean linearSatisfiable = linear.isSatisfiable(variables, potentials, assignment);
+            Assert.assertEquals("Assignment " + Integer.toBinaryString(assignment), treeSatisfiable, linearSatisfiable);
+            if (treeSatisfiable) {
+                solutions++;
+            }
+        }
+        Assert.assertTrue(solutions > 0);
+    }
+
+    private class Encoding {
+        private final ISolver solver = SolverFactory.newDefault();
+        private final Map<Integer, Integer> potentialToExistenceVar = new HashMap<>();
+        private boolean contradiction = false;
+
+        Encoding(Iterable<Constraint> normalized) {
+            final CnfVecIntSerializer serializer = new CnfVecIntSerializer(slotManager) {
+                @Override
+                protected boolean isTop(ConstantSlot constantSlot) {
+                    return false;
+                }
+            };
+            final List<VecInt> clauses = serializer.convertAll(normalized);
+            for (Map.Entry<Integer, Integer> entry : serializer.getExistentialToPotentialVar().entrySet()) {
+                Assert.assertNull("Two existence variables for slot " + entry.getValue(),
+                        potentialToExistenceVar.put(entry.getValue(), entry.getKey()));
+            }
+
+            solver.newVar(serializer.getNumberOfVariables() + potentialToExistenceVar.size());
+            try {
+                for (VecInt clause : clauses) {
+                    solver.addClause(clause);
+                }
+            } catch (ContradictionException e) {
+                contradiction = true;
+            }
+        }
+
+        Integer existenceVar(VariableSlot potential) {
+            return potentialToExistenceVar.get(potential.getId());
+        }
+
+        /**
+         * @param assignment bit i is the value of variables[i], then of the existence of potentials[i]
+         */
+        boolean isSatisfiable(List<VariableSlot> variables, List<VariableSlot> potentials, int assignment)
+                throws TimeoutException {
+            if (contradiction) {
+                return false;
+            }
+
+            final VecInt assumptions = new VecInt();
+            int bit = 0;
+            for (VariableSlot variable : variables) {
+                assumptions.push(literal(variable.getId(), assignment, bit++));
+            }
+            for (VariableSlot potential : potentials) {
+                assumptions.push(literal(existenceVar(potential), assignment, bit++));
+            }
+            return solver.isSatisfiable(assumptions);
+        }
+
+        private int literal(int var, int assignment, int bit) {
+            return (assignment & (1 << bit)) != 0 ? var : -var;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package checkers.inference;
+
+import static checkers.inference.InferenceTestEnvironment.createVariable;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.ExecutableElement;
+
+import org.checkerframework.framework.util.AnnotationBuilder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.VariableSlot;
+import sparta.checkers.propagation.IFlowSinkSolver;
+import sparta.checkers.propagation.IFlowSolver;
+import sparta.checkers.propagation.IFlowSourceSolver;
+import sparta.checkers.qual.Sink;
+import sparta.checkers.qual.Source;
+
+/**
+ * Tests the sets the propagation IFlowSolvers infer, starting with the constraints of the
+ * testdata/iflowsink and testdata/iflowsource fixtures.
+ */
+public class IFlowSolverTest {
+
+    private static final String PRINT_EMPTY_SINKS_KEY = "print-empty-sinks";
+    private static final String PRINT_EMPTY_SOURCES_KEY = "print-empty-sources";
+
+    private SlotManager slotManager;
+    private ConstraintManager constraintManager;
+
+    @Before
+    public void setUp() {
+        final InferenceMain inferenceMain = InferenceTestEnvironment.resetInferenceMain();
+        slotManager = inferenceMain.getSlotManager();
+        constraintManager = inferenceMain.getConstraintManager();
+    }
+
+    /**
+     * The sink constraints of testdata/iflowsink/PropTest.java: s and x are passed to a parameter
+     * with @Sink("INTERNET"), and "hello" is assigned to s.
+     */
+    @Test
+    public void sinkPropTest() {
+        final VariableSlot s = createVariable();
+        final VariableSlot hello = createVariable();
+        final VariableSlot x = createVariable();
+        final ConstantSlot internet = createConstant(Sink.class, "INTERNET");
+
+        final List<Constraint> constraints = Arrays.<Constraint>asList(
+                constraintManager.createSubtypeConstraint(hello, s),
+                constraintManager.createSubtypeConstraint(s, internet),
+                constraintManager.createSubtypeConstraint(x, internet));
+
+        final InferenceSolution solution = solve(new IFlowSinkSolver(), constraints, true);
+        for (VariableSlot variable : Arrays.asList(s, hello, x)) {
+            Assert.assertEquals(Collections.singleton("INTERNET"),
+                    getPermissions(solution.getAnnotation(variable.getId())));
+        }
+    }
+
+    /**
+     * The source constraints of CompoundAssignment in testdata/iflowsource: i is assigned
+     * getTime() and then i + getSmsInt(), and i is assigned to inferFieldInt.
+     */
+    @Test
+    public void sourcePropTest() {
+        final VariableSlot i = createVariable();
+        final VariableSlot sum = createVariable();
+        final VariableSlot inferFieldInt = createVariable();
+        final VariableSlot unused = createVariable();
+        final ConstantSlot readSms = createConstant(Source.class, "READ_SMS");
+        final ConstantSlot readTime = createConstant(Source.class, "READ_TIME");
+
+        final List<Constraint> constraints = Arrays.<Constraint>asList(
+                constraintManager.createSubtypeConstraint(readTime, i),
+                constraintManager.createSubtypeConstraint(i, sum),
+                constraintManager.createSubtypeConstraint(readSms, sum),
+                constraintManager.createEqualityConstraint(sum, i),
+                constraintManager.createSubtypeConstraint(i, inferFieldInt));
+
+        final InferenceSolution solution = solve(new IFlowSourceSolver(), constraints, true);
+        final Set<String> both = new HashSet<>(Arrays.asList("READ_SMS", "READ_TIME"));
+        for (VariableSlot variable : Arrays.asList(i, sum, inferFieldInt)) {
+            Assert.assertEquals(both, getPermissions(solution.getAnnotation(variable.getId())));
+        }
+        Assert.assertFalse(solution.doesVariableExist(unused.getId()));
+    }
+
+    @Test
+    public void anyAndEmptySets() {
+        final VariableSlot onlyAny = createVariable();
+        final VariableSlot anyAndInternet = createVariable();
+        final VariableSlot empty = createVariable();
+        final ConstantSlot any = createConstant(Sink.class, "ANY");
+        final ConstantSlot internet = createConstant(Sink.class, "INTERNET");
+        final ConstantSlot none = createConstant(Sink.class);
+
+        final List<Constraint> constraints = Arrays.<Constraint>asList(
+                constraintManager.createSubtypeConstraint(onlyAny, any),
+                constraintManager.createSubtypeConstraint(anyAndInternet, any),
+                constraintManager.createSubtypeConstraint(anyAndInternet, internet),
+                constraintManager.createSubtypeConstraint(empty, none));
+
+        InferenceSolution solution = solve(new IFlowSinkSolver(), constraints, true);
+        Assert.assertFalse(solution.doesVariableExist(onlyAny.getId()));
+        Assert.assertEquals(Collections.singleton("INTERNET"),
+                getPermissions(solution.getAnnotation(anyAndInternet.getId())));
+        Assert.assertEquals(Collections.<String>emptySet(), getPermissions(solution.getAnnotation(empty.getId())));
+
+        solution = solve(new IFlowSinkSolver(), constraints, false);
+        Assert.assertFalse(solution.doesVariableExist(empty.getId()));
+    }
+
+    @Test
+    public void cyclesAndEqualities() {
+        final VariableSlot a = createVariable();
+        final VariableSlot b = createVariable();
+        final VariableSlot c = createVariable();
+        final VariableSlot supertype = createVariable();
+        final ConstantSlot internet = createConstant(Sink.class, "INTERNET");
+        final ConstantSlot camera = createConstant(Sink.class, "CAMERA");
+
+        final List<Constraint> constraints = Arrays.<Constraint>asList(
+                constraintManager.createSubtypeConstraint(a, b),
+                constraintManager.createSubtypeConstraint(b, a),
+                constraintManager.createSubtypeConstraint(a, internet),
+                constraintManager.createSubtypeConstraint(b, camera),
+                constraintManager.createEqualityConstraint(c, b),
+                constraintManager.createSubtypeConstraint(b, supertype));
+
+        final InferenceSolution solution = solve(new IFlowSinkSolver(), constraints, true);
+        final Set<String> both = new HashSet<>(Arrays.asList("INTERNET", "CAMERA"));
+        for (VariableSlot variable : Arrays.asList(a, b, c)) {
+            Assert.assertEquals(both, getPermissions(solution.getAnnotation(variable.getId())));
+        }
+        Assert.assertEquals(Collections.<String>emptySet(), getPermissions(solution.getAnnotation(supertype.getId())));
+    }
+
+    /**
+     * Strings that are not FlowPermission names, such as parameterized permissions, are kept as is.
+     */
+    @Test
+    public void parameterizedPermissions() {
+        final VariableSlot a = createVariable();
+        final VariableSlot b = createVariable();
+        final VariableSlot c = createVariable();
+        final ConstantSlot tmpAndSms = createConstant(Source.class, "FILESYSTEM(tmp)", "READ_SMS");
+        final ConstantSlot tmpAndHome = createConstant(Source.class, "FILESYSTEM(tmp)", "FILESYSTEM(home)");
+
+        final List<Constraint> constraints = Arrays.<Constraint>asList(
+                constraintManager.createSubtypeConstraint(tmpAndSms, a),
+                constraintManager.createSubtypeConstraint(tmpAndHome, b),
+                constraintManager.createSubtypeConstraint(a, c),
+                constraintManager.createSubtypeConstraint(b, c));
+
+        final InferenceSolution solution = solve(new IFlowSourceSolver(), constraints, true);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("FILESYSTEM(tmp)", "READ_SMS")),
+                getPermissions(solution.getAnnotation(a.getId())));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("FILESYSTEM(tmp)", "FILESYSTEM(home)")),
+                getPermissions(solution.getAnnotation(b.getId())));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("FILESYSTEM(tmp)", "FILESYSTEM(home)", "READ_SMS")),
+                getPermissions(solution.getAnnotation(c.getId())));
+    }
+
+    private InferenceSolution solve(IFlowSolver solver, List<Constraint> constraints, boolean printEmpty) {
+        return solver.solve(configuration(printEmpty), slotManager.getSlots(), constraints, null,
+                InferenceTestEnvironment.getProcessingEnvironment());
+    }
+
+    /**
+     * @return The Strings of the value of a @Sink or @Source annotation
+     */
+    private static Set<String> getPermissions(AnnotationMirror annotation) {
+        final Set<String> permissions = new HashSet<>();
+        for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+                annotation.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().toString().equals("value")) {
+                for (Object elem : (List<?>) entry.getValue().getValue()) {
+                    String permission = elem.toString();
+                    permission = permission.substring(permission.lastIndexOf(".") + 1);
+                    permissions.add(permission.replace("\"", ""));
+                }
+            }
+        }
+        return permissions;
+    }
+
+    private static Map<String, String> configuration(boolean printEmpty) {
+        final Map<String, String> configuration = new HashMap<>();
+        configuration.put(PRINT_EMPTY_SINKS_KEY, String.valueOf(printEmpty));
+        configuration.put(PRINT_EMPTY_SOURCES_KEY, String.valueOf(printEmpty));
+        return configuration;
+    }
+
+    private ConstantSlot createConstant(Class<? extends Annotation> annotation, String... permissions) {
+        final AnnotationBuilder builder = new AnnotationBuilder(InferenceTestEnvironment.getProcessingEnvironment(), annotation);
+        builder.setValue("value", permissions);
+        return slotManager.createConstantSlot(builder.build());
+    }
+}
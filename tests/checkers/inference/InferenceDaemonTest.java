@@ -0,0 +1,39 @@
+package checkers.inference;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that requests with bad arguments are answered with an exit status instead of stopping
+ * the daemon.
+ */
+public class InferenceDaemonTest {
+
+    @Test
+    public void badArgumentsAreReportedAndServingContinues() throws IOException {
+        final String requests =
+                request("--noSuchOption") + "\n"
+                + request("--checker", "ostrusted.OsTrustedChecker", "--mode", "NO_SUCH_MODE") + "\n"
+                + "\n";
+
+        final StringWriter responses = new StringWriter();
+        new InferenceDaemon().serve(new BufferedReader(new StringReader(requests)), new PrintWriter(responses, true));
+
+        final String [] statuses = responses.toString().trim().split("\\s+");
+        Assert.assertArrayEquals(new String[] { "1", "1" }, statuses);
+    }
+
+    private static String request(String... args) {
+        final StringBuilder request = new StringBuilder(System.getProperty("user.dir"));
+        for (String arg : args) {
+            request.append(InferenceDaemon.ARG_SEPARATOR).append(arg);
+        }
+        return request.toString();
+    }
+}
@@ -0,0 +1,117 @@
+package checkers.inference;
+
+import java.lang.annotation.Annotation;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.ToolProvider;
+
+import org.checkerframework.framework.util.AnnotationBuilder;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.VariableSlot;
+
+import com.sun.source.util.JavacTask;
+
+/**
+ * Sets up an InferenceMain instance for unit tests that create slots and constraints without
+ * running the InferenceChecker.  The ProcessingEnvironment only provides the element and type
+ * utilities of a javac task that compiles nothing, which is all the SlotManager needs to build
+ * its annotations.
+ */
+public class InferenceTestEnvironment {
+
+    // Shared by all tests, so that slots and annotations come from the same javac task
+    private static ProcessingEnvironment processingEnvironment;
+
+    private InferenceTestEnvironment() {
+    }
+
+    /**
+     * @return a fresh InferenceMain instance with a DefaultSlotManager that stores no constants
+     */
+    public static InferenceMain resetInferenceMain() {
+        final InferenceMain inferenceMain = InferenceMain.resetInstance();
+        inferenceMain.setSlotManager(new DefaultSlotManager(getProcessingEnvironment(),
+                Collections.<Class<? extends Annotation>>emptySet(), false));
+        return inferenceMain;
+    }
+
+    /**
+     * @return a new variable slot without location from the SlotManager of the current InferenceMain
+     */
+    public static VariableSlot createVariable() {
+        return InferenceMain.getInstance().getSlotManager().createVariableSlot(AnnotationLocation.MISSING_LOCATION);
+    }
+
+    /**
+     * @return the constant slot of annotation, without element values
+     */
+    public static ConstantSlot createConstant(Class<? extends Annotation> annotation) {
+        return InferenceMain.getInstance().getSlotManager().createConstantSlot(buildAnnotation(annotation));
+    }
+
+    public static AnnotationMirror buildAnnotation(Class<? extends Annotation> annotation) {
+        return new AnnotationBuilder(getProcessingEnvironment(), annotation).build();
+    }
+
+    public static synchronized ProcessingEnvironment getProcessingEnvironment() {
+        if (processingEnvironment == null) {
+            processingEnvironment = createProcessingEnvironment();
+        }
+        return processingEnvironment;
+    }
+
+    private static ProcessingEnvironment createProcessingEnvironment() {
+        final JavacTask task = (JavacTask) ToolProvider.getSystemJavaCompiler()
+                .getTask(null, null, null, null, null, null);
+        final Elements elements = task.getElements();
+        final Types types = task.getTypes();
+
+        return new ProcessingEnvironment() {
+            @Override
+            public Map<String, String> getOptions() {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public Messager getMessager() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Filer getFiler() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Elements getElementUtils() {
+                return elements;
+            }
+
+            @Override
+            public Types getTypeUtils() {
+                return types;
+            }
+
+            @Override
+            public SourceVersion getSourceVersion() {
+                return SourceVersion.latestSupported();
+            }
+
+            @Override
+            public Locale getLocale() {
+                return Locale.getDefault();
+            }
+        };
+    }
+}
@@ -0,0 +1,109 @@
+package checkers.inference;
+
+import static checkers.inference.InferenceTestEnvironment.createVariable;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.VariableSlot;
+
+/**
+ * Tests DefaultSlotManager.isMergedTo, whose answers are memoized while merge edges are added.
+ */
+public class MergedToTest {
+
+    private SlotManager slotManager;
+
+    @Before
+    public void setUp() {
+        slotManager = InferenceTestEnvironment.resetInferenceMain().getSlotManager();
+    }
+
+    @Test
+    public void mergesAreTransitive() {
+        final VariableSlot a = createVariable();
+        final VariableSlot b = createVariable();
+        final CombVariableSlot ab = createMerge(a, b);
+        final CombVariableSlot abc = createMerge(ab, createVariable());
+
+        Assert.assertTrue(slotManager.isMergedTo(a, ab));
+        Assert.assertTrue(slotManager.isMergedTo(a, abc));
+        Assert.assertTrue(slotManager.isMergedTo(b, abc));
+        Assert.assertTrue(slotManager.isMergedTo(ab, abc));
+
+        Assert.assertFalse(slotManager.isMergedTo(abc, a));
+        Assert.assertFalse(slotManager.isMergedTo(ab, a));
+        Assert.assertFalse(slotManager.isMergedTo(a, b));
+
+        // Memoized answers stay the same
+        Assert.assertTrue(slotManager.isMergedTo(a, abc));
+        Assert.assertFalse(slotManager.isMergedTo(a, b));
+    }
+
+    @Test
+    public void negativeAnswersAreInvalidatedByNewEdges() {
+        final VariableSlot a = createVariable();
+        final CombVariableSlot ab = createMerge(a, createVariable());
+        final CombVariableSlot cd = createMerge(createVariable(), createVariable());
+
+        Assert.assertFalse(slotManager.isMergedTo(a, cd));
+        Assert.assertFalse(slotManager.isMergedTo(ab, cd));
+
+        // The new edge is added to another slot than the one that memoized the answer
+        final CombVariableSlot abcd = createMerge(ab, cd);
+        Assert.assertFalse(slotManager.isMergedTo(a, cd));
+        Assert.assertTrue(slotManager.isMergedTo(a, abcd));
+
+        slotManager.addMergedToSlot(ab, cd);
+        Assert.assertTrue(slotManager.isMergedTo(ab, cd));
+        Assert.assertTrue(slotManager.isMergedTo(a, cd));
+    }
+
+    @Test
+    public void positiveAnswersSurviveNewEdges() {
+        final VariableSlot a = createVariable();
+        final CombVariableSlot ab = createMerge(a, createVariable());
+        Assert.assertTrue(slotManager.isMergedTo(a, ab));
+
+        createMerge(ab, createVariable());
+        createMerge(a, createVariable());
+        Assert.assertTrue(slotManager.isMergedTo(a, ab));
+    }
+
+    @Test
+    public void cyclesTerminate() {
+        final VariableSlot a = createVariable();
+        final VariableSlot other = createVariable();
+        final CombVariableSlot m1 = createMerge(a, createVariable());
+        final CombVariableSlot m2 = createMerge(m1, createVariable());
+        slotManager.addMergedToSlot(m2, m1);
+
+        Assert.assertFalse(slotManager.isMergedTo(a, other));
+        Assert.assertTrue(slotManager.isMergedTo(m2, m1));
+        Assert.assertTrue(slotManager.isMergedTo(m1, m1));
+    }
+
+    @Test
+    public void addingAnEdgeTwiceKeepsNegativeAnswers() {
+        final VariableSlot a = createVariable();
+        final VariableSlot other = createVariable();
+        final CombVariableSlot ab = createMerge(a, createVariable());
+
+        Assert.assertFalse(slotManager.isMergedTo(a, other));
+        slotManager.addMergedToSlot(a, ab);
+        Assert.assertEquals(1, a.getMergedToSlots().size());
+        Assert.assertFalse(slotManager.isMergedTo(a, other));
+    }
+
+    /**
+     * Merge left and right into a new merge variable, like VariableAnnotator does for dataflow joins.
+     */
+    private CombVariableSlot createMerge(VariableSlot left, VariableSlot right) {
+        final CombVariableSlot merge = slotManager.createMergeVariableSlot(left, right);
+        slotManager.addMergedToSlot(left, merge);
+        slotManager.addMergedToSlot(right, merge);
+        return merge;
+    }
+}
@@ -0,0 +1,159 @@
+package checkers.inference;
+
+import static checkers.inference.InferenceTestEnvironment.createConstant;
+import static checkers.inference.InferenceTestEnvironment.createVariable;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.checkerframework.framework.type.QualifierHierarchy;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.PropagationSolver;
+import ostrusted.qual.OsTrusted;
+import ostrusted.qual.OsUntrusted;
+
+/**
+ * Tests the values PropagationSolver floods along subtype and equality constraints.  Top is the
+ * default value, so only the variables inferred to be bottom are part of a solution.
+ */
+public class PropagationSolverTest {
+
+    private SlotManager slotManager;
+    private ConstraintManager constraintManager;
+    private QualifierHierarchy qualHierarchy;
+    private ConstantSlot top;
+    private ConstantSlot bottom;
+
+    @Before
+    public void setUp() {
+        final InferenceMain inferenceMain = InferenceTestEnvironment.resetInferenceMain();
+        slotManager = inferenceMain.getSlotManager();
+        constraintManager = inferenceMain.getConstraintManager();
+
+        top = createConstant(OsUntrusted.class);
+        bottom = createConstant(OsTrusted.class);
+        qualHierarchy = Mockito.mock(QualifierHierarchy.class);
+        Mockito.doReturn(Collections.singleton(top.getValue())).when(qualHierarchy).getTopAnnotations();
+        Mockito.doReturn(Collections.singleton(bottom.getValue())).when(qualHierarchy).getBottomAnnotations();
+    }
+
+    @Test
+    public void bottomPropagatesToSubtypes() {
+        final VariableSlot a = createVariable();
+        final VariableSlot b = createVariable();
+        final VariableSlot c = createVariable();
+        final VariableSlot supertype = createVariable();
+
+        final InferenceSolution solution = solve(
+                constraintManager.createSubtypeConstraint(a, b),
+                constraintManager.createSubtypeConstraint(b, c),
+                constraintManager.createSubtypeConstraint(c, bottom),
+                constraintManager.createSubtypeConstraint(c, supertype));
+
+        assertBottom(solution, a, b, c);
+        assertTop(solution, supertype);
+    }
+
+    @Test
+    public void cyclesAreFlooded() {
+        final VariableSlot a = createVariable();
+        final VariableSlot b = createVariable();
+        final VariableSlot c = createVariable();
+        final VariableSlot supertype = createVariable();
+        final VariableSlot unconstrained = createVariable();
+
+        final InferenceSolution solution = solve(
+                constraintManager.createSubtypeConstraint(a, b),
+                constraintManager.createSubtypeConstraint(b, c),
+                constraintManager.createSubtypeConstraint(c, a),
+                constraintManager.createSubtypeConstraint(b, bottom),
+                constraintManager.createSubtypeConstraint(a, supertype));
+
+        assertBottom(solution, a, b, c);
+        assertTop(solution, supertype, unconstrained);
+    }
+
+    @Test
+    public void equalityPropagatesBothWays() {
+        final VariableSlot a = createVariable();
+        final VariableSlot b = createVariable();
+        final VariableSlot c = createVariable();
+        final VariableSlot d = createVariable();
+        final VariableSlot equalToTop = createVariable();
+
+        final InferenceSolution solution = solve(
+                constraintManager.createEqualityConstraint(a, b),
+                constraintManager.createEqualityConstraint(bottom, b),
+                constraintManager.createEqualityConstraint(c, a),
+                constraintManager.createSubtypeConstraint(d, c),
+                constraintManager.createEqualityConstraint(equalToTop, top));
+
+        assertBottom(solution, a, b, c, d);
+        assertTop(solution, equalToTop);
+    }
+
+    /**
+     * Fixed values take precedence over inferred ones, and bottom over top.
+     */
+    @Test
+    public void conflictsArePrioritized() {
+        final VariableSlot fixedTopAndBottom = createVariable();
+        final VariableSlot fixedTopInferredBottom = createVariable();
+        final VariableSlot inferredTopAndBottom = createVariable();
+        final VariableSlot fixedBottom = createVariable();
+
+        final InferenceSolution solution = solve(
+                constraintManager.createSubtypeConstraint(top, fixedTopAndBottom),
+                constraintManager.createSubtypeConstraint(fixedTopAndBottom, bottom),
+                constraintManager.createSubtypeConstraint(top, fixedTopInferredBottom),
+                constraintManager.createSubtypeConstraint(fixedTopInferredBottom, inferredTopAndBottom),
+                constraintManager.createSubtypeConstraint(inferredTopAndBottom, fixedBottom),
+                constraintManager.createSubtypeConstraint(fixedBottom, bottom));
+
+        assertBottom(solution, fixedTopAndBottom, inferredTopAndBottom, fixedBottom);
+        assertTop(solution, fixedTopInferredBottom);
+    }
+
+    @Test
+    public void constantBoundsThatAlwaysHoldFixNothing() {
+        final VariableSlot a = createVariable();
+        final VariableSlot b = createVariable();
+
+        final InferenceSolution solution = solve(
+                constraintManager.createSubtypeConstraint(bottom, a),
+                constraintManager.createSubtypeConstraint(a, top),
+                constraintManager.createSubtypeConstraint(b, a));
+
+        assertTop(solution, a, b);
+    }
+
+    private InferenceSolution solve(Constraint... constraints) {
+        return new PropagationSolver().solve(Collections.<String, String>emptyMap(), slotManager.getSlots(),
+                Arrays.asList(constraints), qualHierarchy,
+                InferenceTestEnvironment.getProcessingEnvironment());
+    }
+
+    private void assertBottom(InferenceSolution solution, VariableSlot... variables) {
+        for (VariableSlot variable : variables) {
+            Assert.assertSame("Variable " + variable.getId(), bottom.getValue(),
+                    solution.getAnnotation(variable.getId()));
+        }
+    }
+
+    /**
+     * Top is the default value, which solutions leave out.
+     */
+    private void assertTop(InferenceSolution solution, VariableSlot... variables) {
+        for (VariableSlot variable : variables) {
+            Assert.assertFalse("Variable " + variable.getId(), solution.doesVariableExist(variable.getId()));
+        }
+    }
+}
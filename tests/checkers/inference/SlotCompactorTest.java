@@ -0,0 +1,93 @@
+package checkers.inference;
+
+import static checkers.inference.InferenceTestEnvironment.createConstant;
+import static checkers.inference.InferenceTestEnvironment.createVariable;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import ostrusted.qual.OsTrusted;
+
+public class SlotCompactorTest {
+
+    private SlotManager slotManager;
+    private ConstraintManager constraintManager;
+
+    @Before
+    public void setUp() {
+        final InferenceMain inferenceMain = InferenceTestEnvironment.resetInferenceMain();
+        slotManager = inferenceMain.getSlotManager();
+        constraintManager = inferenceMain.getConstraintManager();
+    }
+
+    @Test
+    public void compactIdsRoundTrip() {
+        final VariableSlot pruned1 = createVariable();
+        final VariableSlot a = createVariable();
+        final ConstantSlot constant = createConstant(OsTrusted.class);
+        final VariableSlot pruned2 = createVariable();
+        final VariableSlot b = createVariable();
+        final VariableSlot c = createVariable();
+        final VariableSlot pruned3 = createVariable();
+
+        final Constraint cb = constraintManager.createSubtypeConstraint(c, b);
+        final Constraint aConstant = constraintManager.createSubtypeConstraint(a, constant);
+        final Constraint ac = constraintManager.createEqualityConstraint(a, c);
+        final SlotCompactor compactor = new SlotCompactor(Arrays.asList(cb, aConstant, ac));
+
+        // Variables are numbered by original id, constants and pruned variables get no number
+        Assert.assertEquals(3, compactor.getNumberOfVariables());
+        Assert.assertEquals(1, compactor.getCompactId(a));
+        Assert.assertEquals(2, compactor.getCompactId(b));
+        Assert.assertEquals(3, compactor.getCompactId(c));
+
+        for (VariableSlot slot : Arrays.asList(a, b, c)) {
+            Assert.assertEquals(slot.getId(), compactor.getOriginalId(compactor.getCompactId(slot)));
+        }
+        for (int compactId = 1; compactId <= compactor.getNumberOfVariables(); compactId++) {
+            Assert.assertEquals(compactId,
+                    compactor.getCompactId(slotManager.getVariable(compactor.getOriginalId(compactId))));
+        }
+
+        // Live slots are listed in order of first reference
+        Assert.assertEquals(Arrays.<Slot>asList(c, b, a, constant), compactor.getSlots());
+        for (VariableSlot slot : Arrays.asList(pruned1, pruned2, pruned3)) {
+            Assert.assertFalse(compactor.getSlots().contains(slot));
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void prunedSlotsHaveNoCompactId() {
+        final VariableSlot a = createVariable();
+        final VariableSlot b = createVariable();
+        final VariableSlot pruned = createVariable();
+        final SlotCompactor compactor =
+                new SlotCompactor(Arrays.<Constraint>asList(constraintManager.createSubtypeConstraint(a, b)));
+        compactor.getCompactId(pruned);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void idsPastTheLastLiveIdHaveNoCompactId() {
+        final VariableSlot a = createVariable();
+        final VariableSlot b = createVariable();
+        final SlotCompactor compactor =
+                new SlotCompactor(Arrays.<Constraint>asList(constraintManager.createSubtypeConstraint(a, b)));
+        compactor.getCompactId(createVariable());
+    }
+
+    @Test
+    public void noConstraintsNoVariables() {
+        final SlotCompactor compactor = new SlotCompactor(Collections.<Constraint>emptyList());
+        Assert.assertEquals(0, compactor.getNumberOfVariables());
+        Assert.assertTrue(compactor.getSlots().isEmpty());
+    }
+}
@@ -0,0 +1,58 @@
+package checkers.inference;
+
+import static checkers.inference.InferenceTestEnvironment.createVariable;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.model.serialization.SlotTableDeserializer;
+import checkers.inference.model.serialization.SlotTableSerializer;
+
+/**
+ * Writes slots and constraints with SlotTableSerializer and merges them into a fresh SlotManager
+ * with SlotTableDeserializer.
+ */
+public class SlotTableRoundTripTest {
+
+    @Test
+    public void mergesAndViewpointAdaptationsOfTheSamePairStayDistinct() throws Exception {
+        InferenceMain inferenceMain = InferenceTestEnvironment.resetInferenceMain();
+        SlotManager slotManager = inferenceMain.getSlotManager();
+        final VariableSlot a = createVariable();
+        final VariableSlot b = createVariable();
+        final CombVariableSlot merge = slotManager.createMergeVariableSlot(a, b);
+        final CombVariableSlot adaptation = slotManager.createCombVariableSlot(a, b);
+        final Constraint constraint = inferenceMain.getConstraintManager().createSubtypeConstraint(adaptation, merge);
+
+        final StringWriter writer = new StringWriter();
+        new SlotTableSerializer(slotManager).write(slotManager.getSlots(), Arrays.asList(constraint), writer);
+
+        inferenceMain = InferenceTestEnvironment.resetInferenceMain();
+        slotManager = inferenceMain.getSlotManager();
+        final ConstraintManager constraintManager = inferenceMain.getConstraintManager();
+        final SlotTableDeserializer deserializer = new SlotTableDeserializer(slotManager, constraintManager,
+                InferenceTestEnvironment.getProcessingEnvironment());
+        Assert.assertEquals(1, deserializer.merge(new StringReader(writer.toString())).size());
+
+        final VariableSlot restoredA = (VariableSlot) deserializer.getMergedSlot(a.getId());
+        final VariableSlot restoredB = (VariableSlot) deserializer.getMergedSlot(b.getId());
+        final CombVariableSlot restoredMerge = (CombVariableSlot) deserializer.getMergedSlot(merge.getId());
+        final CombVariableSlot restoredAdaptation = (CombVariableSlot) deserializer.getMergedSlot(adaptation.getId());
+        Assert.assertEquals(4, slotManager.getNumberOfSlots());
+        Assert.assertNotSame(restoredMerge, restoredAdaptation);
+        Assert.assertTrue(slotManager.isMergeVariable(restoredMerge));
+        Assert.assertFalse(slotManager.isMergeVariable(restoredAdaptation));
+
+        // Restored slots are cached like the slots they were written from
+        Assert.assertSame(restoredMerge, slotManager.createMergeVariableSlot(restoredB, restoredA));
+        Assert.assertSame(restoredAdaptation, slotManager.createCombVariableSlot(restoredA, restoredB));
+    }
+}
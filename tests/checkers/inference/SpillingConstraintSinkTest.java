@@ -0,0 +1,89 @@
+package checkers.inference;
+
+import static checkers.inference.InferenceTestEnvironment.createVariable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.model.serialization.SpillingConstraintSink;
+
+/**
+ * Tests that SpillingConstraintSink drops duplicates that are too far apart for its cache of recent
+ * keys, whether the spill file is deduplicated as one partition or as several.
+ */
+public class SpillingConstraintSinkTest {
+
+    private static final int CONSTRAINTS = 200;
+
+    private SlotManager slotManager;
+    private ConstraintManager constraintManager;
+    private List<Constraint> constraints;
+
+    @Before
+    public void setUp() {
+        final InferenceMain inferenceMain = InferenceTestEnvironment.resetInferenceMain();
+        slotManager = inferenceMain.getSlotManager();
+        constraintManager = inferenceMain.getConstraintManager();
+
+        final VariableSlot supertype = createVariable();
+        constraints = new ArrayList<>();
+        for (int i = 0; i < CONSTRAINTS; i++) {
+            constraints.add(constraintManager.createSubtypeConstraint(createVariable(), supertype));
+        }
+    }
+
+    @Test
+    public void duplicatesInOnePartition() throws IOException {
+        assertDeduplicated(1 << 30);
+    }
+
+    @Test
+    public void duplicatesInManyPartitions() throws IOException {
+        assertDeduplicated(256);
+    }
+
+    private void assertDeduplicated(long partitionBytes) throws IOException {
+        final File spillFile = File.createTempFile("constraints", ".spill");
+        final SpillingConstraintSink sink =
+                new SpillingConstraintSink(spillFile, slotManager, constraintManager, 1, partitionBytes);
+
+        // Each constraint is added twice, with every other constraint in between
+        for (int i = 0; i < 2; i++) {
+            for (Constraint constraint : constraints) {
+                sink.add(constraint);
+            }
+        }
+        Assert.assertEquals(2 * CONSTRAINTS, sink.size());
+
+        Assert.assertEquals(new HashSet<>(constraints), toSet(sink));
+        Assert.assertEquals(CONSTRAINTS, sink.size());
+        Assert.assertEquals(CONSTRAINTS, sink.getDuplicateCount());
+
+        // Constraints added after iterating are deduplicated against the ones already on disk
+        sink.add(constraints.get(0));
+        Assert.assertEquals(new HashSet<>(constraints), toSet(sink));
+        Assert.assertEquals(CONSTRAINTS + 1, sink.getDuplicateCount());
+    }
+
+    private static Set<Constraint> toSet(Iterable<Constraint> constraints) {
+        final Set<Constraint> set = new HashSet<>();
+        int iterated = 0;
+        for (Constraint constraint : constraints) {
+            set.add(constraint);
+            iterated++;
+        }
+        Assert.assertEquals("Duplicate constraints", set.size(), iterated);
+        return set;
+    }
+}